@@ -0,0 +1,157 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs evaluations on a background thread, so the Event Dispatch Thread is
+ * never blocked by an expensive function. All jobs run one at a time on the
+ * same thread, which is the only thread using the service's Schemer.
+ *
+ * Jobs are submitted on a named channel, and the latest job of a channel
+ * wins: submitting a job cancels the job submitted before it on the same
+ * channel. A cancelled job that has not started is skipped, a running job
+ * stops at its next check of isCancelled(), and the result of a cancelled job
+ * is never published.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class EvaluationService {
+
+	/**
+	 * A job evaluated on the background thread and published on the Event
+	 * Dispatch Thread.
+	 *
+	 * @param <T>
+	 *            Type of the result
+	 */
+	abstract static class Job<T> {
+		private volatile boolean cancelled = false;
+
+		/**
+		 * Evaluates the job on the background thread. Long jobs should check
+		 * isCancelled() regularly and return early when it is true.
+		 *
+		 * @param scm
+		 *            The Schemer of the service
+		 * @return The result to publish.
+		 * @throws Throwable
+		 *             If the evaluation fails, the failure is printed and
+		 *             nothing is published.
+		 */
+		protected abstract T evaluate(Schemer scm) throws Throwable;
+
+		/**
+		 * Publishes the result on the Event Dispatch Thread. Only called if
+		 * the job was not cancelled.
+		 *
+		 * @param result
+		 *            The result of evaluate
+		 */
+		protected abstract void publish(T result);
+
+		/**
+		 * Publishes an intermediate result while the job is still being
+		 * evaluated, like a coarse plot before the fine one. Called from
+		 * evaluate, the result is published on the Event Dispatch Thread
+		 * unless the job is cancelled by then.
+		 *
+		 * @param result
+		 *            The intermediate result
+		 */
+		protected final void publishPartial(final T result) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (!isCancelled()) {
+						publish(result);
+					}
+				}
+			});
+		}
+
+		void cancel() {
+			cancelled = true;
+		}
+
+		boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	private final Schemer scm;
+	private final ExecutorService executor;
+
+	// the latest job of each channel, only used on the Event Dispatch Thread
+	private final Map<String, Job<?>> latest = new HashMap<String, Job<?>>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param scm
+	 *            The Schemer used by the jobs, it must not be used by other
+	 *            threads
+	 */
+	EvaluationService(Schemer scm) {
+		this.scm = scm;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Schemer evaluation");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Submits a job, cancelling the previous job of the same channel. Must be
+	 * called on the Event Dispatch Thread.
+	 *
+	 * @param channel
+	 *            Name of the channel
+	 * @param job
+	 *            The job
+	 */
+	<T> void submit(String channel, final Job<T> job) {
+		Job<?> previous = latest.put(channel, job);
+		if (previous != null) {
+			previous.cancel();
+		}
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (job.isCancelled()) {
+					return;
+				}
+				try {
+					job.publishPartial(job.evaluate(scm));
+				} catch (Throwable e) {
+					System.out.println("Evaluation failed");
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancels the latest job of a channel. Must be called on the Event
+	 * Dispatch Thread.
+	 *
+	 * @param channel
+	 *            Name of the channel
+	 */
+	void cancel(String channel) {
+		Job<?> previous = latest.remove(channel);
+		if (previous != null) {
+			previous.cancel();
+		}
+	}
+}
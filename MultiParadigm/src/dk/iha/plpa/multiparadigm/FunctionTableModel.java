@@ -0,0 +1,250 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * The functions typed in by the user, one row per function, with whether the
+ * function and its derivative are shown and the areas below them. The
+ * function in row i is registered as f + i, like f0 for the first row, so
+ * functions can call the functions of the rows before and after them.
+ *
+ * There can be any number of functions. The table showing them only draws
+ * the rows that are scrolled into view.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public class FunctionTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int COLOUR_COLUMN = 0;
+	public static final int VISIBLE_COLUMN = 1;
+	public static final int EXPRESSION_COLUMN = 2;
+	public static final int DERIVATIVE_COLUMN = 3;
+	public static final int AREA_COLUMN = 4;
+	public static final int DERIVATIVE_AREA_COLUMN = 5;
+
+	private static final String[] COLUMN_NAMES = { "", "Show",
+			"Scheme function", "f'", "Area", "Area f'" };
+	private static final Class<?>[] COLUMN_CLASSES = { Color.class,
+			Boolean.class, String.class, Boolean.class, String.class,
+			String.class };
+
+	/**
+	 * A row of the table.
+	 */
+	private static final class Function {
+		String expression = "";
+		boolean visible = true;
+		boolean derivative = false;
+		String area = Plotter.DEFAULT_NUMBER_STRING;
+		String areaToolTip;
+		String derivativeArea = Plotter.DEFAULT_NUMBER_STRING;
+		String derivativeAreaToolTip;
+	}
+
+	private final List<Function> functions = new ArrayList<Function>();
+
+	/**
+	 * Constructor for a table with one empty function.
+	 */
+	public FunctionTableModel() {
+		functions.add(new Function());
+	}
+
+	@Override
+	public int getRowCount() {
+		return functions.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column) {
+		return COLUMN_CLASSES[column];
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int column) {
+		return column == VISIBLE_COLUMN || column == EXPRESSION_COLUMN
+				|| column == DERIVATIVE_COLUMN;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		Function function = functions.get(row);
+		switch (column) {
+		case COLOUR_COLUMN:
+			return Palette.colour(row);
+		case VISIBLE_COLUMN:
+			return function.visible;
+		case EXPRESSION_COLUMN:
+			return function.expression;
+		case DERIVATIVE_COLUMN:
+			return function.derivative;
+		case AREA_COLUMN:
+			return function.area;
+		case DERIVATIVE_AREA_COLUMN:
+			return function.derivativeArea;
+		default:
+			throw new IllegalArgumentException("No column " + column);
+		}
+	}
+
+	@Override
+	public void setValueAt(Object value, int row, int column) {
+		Function function = functions.get(row);
+		switch (column) {
+		case VISIBLE_COLUMN:
+			function.visible = (Boolean) value;
+			break;
+		case EXPRESSION_COLUMN:
+			function.expression = (String) value;
+			break;
+		case DERIVATIVE_COLUMN:
+			function.derivative = (Boolean) value;
+			break;
+		default:
+			throw new IllegalArgumentException("Column " + column
+					+ " cannot be edited");
+		}
+		fireTableCellUpdated(row, column);
+	}
+
+	/**
+	 * Sets the expression of a function while it is being typed, without
+	 * telling the listeners of the table.
+	 *
+	 * @param row
+	 *            Row of the function
+	 * @param expression
+	 *            String representation of the function
+	 */
+	public void updateExpression(int row, String expression) {
+		if (row >= 0 && row < functions.size()) {
+			functions.get(row).expression = expression;
+		}
+	}
+
+	/**
+	 * Adds an empty function at the end of the table.
+	 *
+	 * @return The row of the new function.
+	 */
+	public int addFunction() {
+		functions.add(new Function());
+		int row = functions.size() - 1;
+		fireTableRowsInserted(row, row);
+		return row;
+	}
+
+	/**
+	 * Removes all functions, leaving one empty function.
+	 */
+	public void clear() {
+		functions.clear();
+		functions.add(new Function());
+		fireTableDataChanged();
+	}
+
+	/**
+	 * @param row
+	 *            Row of the function
+	 * @return String representation of the function, empty if none is typed.
+	 */
+	public String getExpression(int row) {
+		return functions.get(row).expression;
+	}
+
+	/**
+	 * @param row
+	 *            Row of the function
+	 * @return true if the function is plotted.
+	 */
+	public boolean isVisible(int row) {
+		return functions.get(row).visible;
+	}
+
+	/**
+	 * @param row
+	 *            Row of the function
+	 * @return true if the derivative of the function is plotted.
+	 */
+	public boolean showsDerivative(int row) {
+		return functions.get(row).derivative;
+	}
+
+	/**
+	 * Shows the area below a function or its derivative. Rows that were
+	 * removed since the area was calculated are ignored.
+	 *
+	 * @param row
+	 *            Row of the function
+	 * @param derivative
+	 *            If the area is below the derivative
+	 * @param text
+	 *            The area, or the progress of calculating it
+	 * @param toolTip
+	 *            Tool tip with details of the area, or null for none
+	 */
+	public void setArea(int row, boolean derivative, String text,
+			String toolTip) {
+		if (row >= functions.size()) {
+			return;
+		}
+		Function function = functions.get(row);
+		if (derivative) {
+			function.derivativeArea = text;
+			function.derivativeAreaToolTip = toolTip;
+			fireTableCellUpdated(row, DERIVATIVE_AREA_COLUMN);
+		} else {
+			function.area = text;
+			function.areaToolTip = toolTip;
+			fireTableCellUpdated(row, AREA_COLUMN);
+		}
+	}
+
+	/**
+	 * Shows all areas below the functions or below their derivatives as not
+	 * calculated.
+	 *
+	 * @param derivative
+	 *            If the areas below the derivatives are cleared
+	 */
+	public void clearAreas(boolean derivative) {
+		for (int row = 0; row < functions.size(); row++) {
+			setArea(row, derivative, Plotter.DEFAULT_NUMBER_STRING, null);
+		}
+	}
+
+	/**
+	 * @param row
+	 *            Row of the function
+	 * @param column
+	 *            AREA_COLUMN or DERIVATIVE_AREA_COLUMN
+	 * @return The tool tip of an area, or null if it has none.
+	 */
+	public String getAreaToolTip(int row, int column) {
+		Function function = functions.get(row);
+		if (column == AREA_COLUMN) {
+			return function.areaToolTip;
+		}
+		if (column == DERIVATIVE_AREA_COLUMN) {
+			return function.derivativeAreaToolTip;
+		}
+		return null;
+	}
+}
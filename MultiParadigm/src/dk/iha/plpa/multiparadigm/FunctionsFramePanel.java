@@ -1,27 +1,41 @@
 package dk.iha.plpa.multiparadigm;
 
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import javax.swing.BoxLayout;
+import java.awt.event.MouseEvent;
+
+import javax.swing.DefaultCellEditor;
 import javax.swing.JButton;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableColumnModel;
 
 /**
- * Panel which holds functions panels and the button to add more of them.
- * 
+ * Panel which holds the table of functions and the button to add more of
+ * them. The table scrolls, so any number of functions can be typed in.
+ *
  * @author Tommy, Mikkel and lafur
- * 
+ *
  */
 public class FunctionsFramePanel extends JPanel {
 
 	private static final long serialVersionUID = 1L;
-	public static final int MAX_NO_TEXTFIELDS = 5;
-	public static final int MAX_NO_FUNCTIONS = 10;
 
-	private FunctionPanel[] functionsArray = new FunctionPanel[MAX_NO_TEXTFIELDS];
+	private FunctionTableModel model = new FunctionTableModel();
+	private JTable table;
+
+	// the field functions are typed in, shared by all rows of the table
+	private JTextField expressionField = new JTextField();
 
-	private int textFieldCounter = 0;
 	private JButton addEquationTextFieldButton = new JButton(
 			"Add Equation field");
 
@@ -29,66 +43,124 @@ public class FunctionsFramePanel extends JPanel {
 	 * Constructor
 	 */
 	FunctionsFramePanel() {
-		setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
+		setLayout(new BorderLayout());
 		setBorder(new TitledBorder("Functions"));
 
-		// Adding text field
-		for (int i = 0; i < functionsArray.length; i++) {
-			functionsArray[i] = new FunctionPanel();
-		}
-
-		addFuntionPanel();
+		table = new JTable(model) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String getToolTipText(MouseEvent e) {
+				int row = rowAtPoint(e.getPoint());
+				int column = columnAtPoint(e.getPoint());
+				if (row < 0 || column < 0) {
+					return null;
+				}
+				return model.getAreaToolTip(row,
+						convertColumnIndexToModel(column));
+			}
+		};
+		table.setFillsViewportHeight(true);
+		table.getTableHeader().setReorderingAllowed(false);
+		table.setDefaultRenderer(Color.class, new ColourRenderer());
+
+		DefaultCellEditor editor = new DefaultCellEditor(expressionField);
+		editor.setClickCountToStart(1);
+		table.setDefaultEditor(String.class, editor);
+		// the function is plotted live while it is typed
+		expressionField.getDocument().addDocumentListener(
+				new DocumentListener() {
+					@Override
+					public void insertUpdate(DocumentEvent e) {
+						update();
+					}
+
+					@Override
+					public void removeUpdate(DocumentEvent e) {
+						update();
+					}
+
+					@Override
+					public void changedUpdate(DocumentEvent e) {
+						// attributes do not change the function
+					}
+
+					private void update() {
+						model.updateExpression(table.getEditingRow(),
+								expressionField.getText());
+					}
+				});
+
+		TableColumnModel columns = table.getColumnModel();
+		columns.getColumn(FunctionTableModel.COLOUR_COLUMN)
+				.setMaxWidth(16);
+		columns.getColumn(FunctionTableModel.VISIBLE_COLUMN).setMaxWidth(40);
+		columns.getColumn(FunctionTableModel.EXPRESSION_COLUMN)
+				.setPreferredWidth(200);
+		columns.getColumn(FunctionTableModel.DERIVATIVE_COLUMN)
+				.setMaxWidth(30);
+		columns.getColumn(FunctionTableModel.AREA_COLUMN).setPreferredWidth(
+				70);
+		columns.getColumn(FunctionTableModel.DERIVATIVE_AREA_COLUMN)
+				.setPreferredWidth(70);
+
+		add(new JScrollPane(table), BorderLayout.CENTER);
 
 		addEquationTextFieldButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				addNewTextfields();
+				addFunction();
 			}
 		});
-		add(addEquationTextFieldButton);
+		add(addEquationTextFieldButton, BorderLayout.SOUTH);
 	}
 
 	/**
-	 * Add a FuntionsPanel to the panel
+	 * Shows the colour a function is plotted with.
 	 */
-	private void addFuntionPanel() {
-		add(functionsArray[textFieldCounter]);
-		textFieldCounter++;
-
+	private static final class ColourRenderer extends DefaultTableCellRenderer {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Component getTableCellRendererComponent(JTable table,
+				Object value, boolean isSelected, boolean hasFocus, int row,
+				int column) {
+			super.getTableCellRendererComponent(table, "", false, false, row,
+					column);
+			setBackground((Color) value);
+			return this;
+		}
 	}
 
 	/**
-	 * Adds FunctionPanel to the panel above the "add function" button.
+	 * Adds an empty function at the end of the table and starts typing it.
 	 */
-	protected void addNewTextfields() {
-
-		if (textFieldCounter < MAX_NO_TEXTFIELDS) {
-			remove(addEquationTextFieldButton);
-			addFuntionPanel();
-			if (textFieldCounter < MAX_NO_TEXTFIELDS) {
-				add(addEquationTextFieldButton);
-			}
-			updateUI();
+	protected void addFunction() {
+		int row = model.addFunction();
+		table.scrollRectToVisible(table.getCellRect(row,
+				FunctionTableModel.EXPRESSION_COLUMN, true));
+		if (table.editCellAt(row, FunctionTableModel.EXPRESSION_COLUMN)) {
+			expressionField.requestFocusInWindow();
 		}
 	}
 
 	/**
-	 * Removes all the added FuntionsPanels and clears it.
+	 * Removes all the functions, leaving one empty function.
 	 */
-	public void clearFunctionsArray() {
-
-		for (int i = 0; i < functionsArray.length; i++) {
-			remove(functionsArray[i]);
-			functionsArray[i] = new FunctionPanel();
+	public void clearFunctions() {
+		if (table.isEditing()) {
+			table.getCellEditor().cancelCellEditing();
 		}
-		textFieldCounter = 0;
-		addNewTextfields();
+		model.clear();
 	}
 
-	public FunctionPanel[] getFunctionsArray() {
-		return functionsArray;
+	public FunctionTableModel getModel() {
+		return model;
 	}
 
-	public void setFunctionsArray(FunctionPanel[] functionsArray) {
-		this.functionsArray = functionsArray;
+	/**
+	 * @return The field functions are typed in.
+	 */
+	public JTextField getExpressionField() {
+		return expressionField;
 	}
 }
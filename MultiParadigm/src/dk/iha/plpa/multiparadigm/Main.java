@@ -1,6 +1,7 @@
 package dk.iha.plpa.multiparadigm;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  * Class for running the program and displaying error messages.
@@ -12,12 +13,23 @@ public class Main {
 
 	/**
 	 * Pops up a message with an error message if wrong input is used in scheme
-	 * text fields.
+	 * text fields. Can be called from any thread, the message is shown on the
+	 * Event Dispatch Thread.
 	 * 
 	 * @param functionExpression
 	 *            The function typed in the text field
 	 */
-	public static void showFunctionErrorMessage(String functionExpression) {
+	public static void showFunctionErrorMessage(final String functionExpression) {
+
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					showFunctionErrorMessage(functionExpression);
+				}
+			});
+			return;
+		}
 
 		if (functionExpression != null && functionExpression == "") {
 			JOptionPane
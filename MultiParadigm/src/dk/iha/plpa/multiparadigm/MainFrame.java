@@ -26,7 +26,7 @@ public class MainFrame extends JFrame {
 		Plotter plotFrame = new Plotter(plotAreaPanel, ffPanel, ssPanel,
 				rrpanel);
 
-		Dimension size = new Dimension(300, 10);
+		Dimension size = new Dimension(450, 10);
 		ffPanel.setPreferredSize(size);
 		ffPanel.setMaximumSize(size);
 
@@ -0,0 +1,49 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.awt.Color;
+
+/**
+ * Generated colours for any number of functions. The hue of each function is
+ * the golden angle further around the colour wheel than the hue of the
+ * function before it, so neighbouring functions get clearly different colours
+ * and the colours never repeat, however many functions there are. The first
+ * function is blue.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public final class Palette {
+
+	// the golden angle as a fraction of the colour wheel, 1 - 1 / phi
+	private static final double GOLDEN_ANGLE = (3 - Math.sqrt(5)) / 2;
+
+	// hue of the first function
+	private static final double FIRST_HUE = 2.0 / 3;
+
+	private static final float SATURATION = 0.85f;
+	private static final float BRIGHTNESS = 0.85f;
+
+	private Palette() {
+	}
+
+	/**
+	 * @param index
+	 *            Index of the function
+	 * @return The colour of the function.
+	 */
+	public static Color colour(int index) {
+		double hue = FIRST_HUE + index * GOLDEN_ANGLE;
+		return Color.getHSBColor((float) (hue - Math.floor(hue)), SATURATION,
+				BRIGHTNESS);
+	}
+
+	/**
+	 * @param index
+	 *            Index of the function
+	 * @return The colour of the derivative of the function, a darker shade
+	 *         of the function's colour.
+	 */
+	public static Color derivativeColour(int index) {
+		return colour(index).darker();
+	}
+}
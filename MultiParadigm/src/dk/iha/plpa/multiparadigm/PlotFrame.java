@@ -0,0 +1,307 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.awt.Color;
+
+import dk.iha.plpa.multiparadigm.engine.SeriesWriter;
+
+/**
+ * Immutable snapshot of everything the PlotPanel draws: the evaluated series
+ * and the span of the axes. Frames are made by the evaluation thread and
+ * handed to the PlotPanel on the Event Dispatch Thread, where a new frame
+ * replaces the old one as a whole, so the panel never draws a half updated
+ * plot.
+ *
+ * Each series has an id, which stays the same while the series is updated,
+ * and a colour. The arrays of the series are shared with the frame and must
+ * not be modified once the frame is made.
+ *
+ * The last frame of a plot also holds the series with all their samples, for
+ * exporting them.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class PlotFrame {
+
+	/**
+	 * The frame without any series on the default span.
+	 */
+	static final PlotFrame EMPTY = new PlotFrame(new double[0][],
+			new double[0][], Plotter.DEFAULT_XY_MIN, Plotter.DEFAULT_XY_MAX,
+			Plotter.DEFAULT_XY_MIN, Plotter.DEFAULT_XY_MAX);
+
+	private final String[] ids;
+	private final Color[] colours;
+	private final double[][] x;
+	private final double[][] y;
+	private final double xMin;
+	private final double xMax;
+	private final double yMin;
+	private final double yMax;
+	private final double yMinLabel;
+	private final double yMaxLabel;
+	private final SeriesWriter series;
+
+	/**
+	 * Constructor for a frame labelled with its own span.
+	 *
+	 * @param x
+	 *            X values of each series, null for series not drawn
+	 * @param y
+	 *            Y values of each series, null for series not drawn
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param ymin
+	 *            Minimum Y value
+	 * @param ymax
+	 *            Maximum Y value
+	 */
+	PlotFrame(double[][] x, double[][] y, double xmin, double xmax,
+			double ymin, double ymax) {
+		this(x, y, xmin, xmax, ymin, ymax, ymin, ymax);
+	}
+
+	/**
+	 * Constructor for a frame where the series are identified and coloured
+	 * by their index.
+	 *
+	 * @param x
+	 *            X values of each series, null for series not drawn
+	 * @param y
+	 *            Y values of each series, null for series not drawn
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param ymin
+	 *            Minimum Y value
+	 * @param ymax
+	 *            Maximum Y value
+	 * @param yminLabel
+	 *            Label text for the minimum of the Y axis
+	 * @param ymaxLabel
+	 *            Label text for the maximum of the Y axis
+	 */
+	PlotFrame(double[][] x, double[][] y, double xmin, double xmax,
+			double ymin, double ymax, double yminLabel, double ymaxLabel) {
+		this(indexIds(x.length), indexColours(x.length), x, y, xmin, xmax,
+				ymin, ymax, yminLabel, ymaxLabel);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ids
+	 *            Id of each series
+	 * @param colours
+	 *            Colour of each series
+	 * @param x
+	 *            X values of each series, null for series not drawn
+	 * @param y
+	 *            Y values of each series, null for series not drawn
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param ymin
+	 *            Minimum Y value
+	 * @param ymax
+	 *            Maximum Y value
+	 * @param yminLabel
+	 *            Label text for the minimum of the Y axis
+	 * @param ymaxLabel
+	 *            Label text for the maximum of the Y axis
+	 */
+	PlotFrame(String[] ids, Color[] colours, double[][] x, double[][] y,
+			double xmin, double xmax, double ymin, double ymax,
+			double yminLabel, double ymaxLabel) {
+		this(ids, colours, x, y, xmin, xmax, ymin, ymax, yminLabel,
+				ymaxLabel, null);
+	}
+
+	/**
+	 * Constructor for the last frame of a plot.
+	 *
+	 * @param ids
+	 *            Id of each series
+	 * @param colours
+	 *            Colour of each series
+	 * @param x
+	 *            X values of each series, null for series not drawn
+	 * @param y
+	 *            Y values of each series, null for series not drawn
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param ymin
+	 *            Minimum Y value
+	 * @param ymax
+	 *            Maximum Y value
+	 * @param yminLabel
+	 *            Label text for the minimum of the Y axis
+	 * @param ymaxLabel
+	 *            Label text for the maximum of the Y axis
+	 * @param series
+	 *            The plotted series with all their samples, or null if the
+	 *            plot is not done
+	 */
+	PlotFrame(String[] ids, Color[] colours, double[][] x, double[][] y,
+			double xmin, double xmax, double ymin, double ymax,
+			double yminLabel, double ymaxLabel, SeriesWriter series) {
+		if (x.length != y.length || ids.length != x.length
+				|| colours.length != x.length) {
+			throw new IllegalArgumentException("ids, colours, x and y data "
+					+ "arrays must be same length.");
+		}
+		this.ids = ids.clone();
+		this.colours = colours.clone();
+		this.x = x.clone();
+		this.y = y.clone();
+		this.xMin = xmin;
+		this.xMax = xmax;
+		this.yMin = ymin;
+		this.yMax = ymax;
+		this.yMinLabel = yminLabel;
+		this.yMaxLabel = ymaxLabel;
+		this.series = series;
+	}
+
+	/**
+	 * Makes a frame with the same series on another span, like when the plot
+	 * is panned or zoomed. Labels that were the span itself follow the new
+	 * span, other labels are taken to be the powers of ten of the span, as
+	 * on the logarithmic scale.
+	 *
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param ymin
+	 *            Minimum Y value
+	 * @param ymax
+	 *            Maximum Y value
+	 * @return The frame on the new span.
+	 */
+	PlotFrame withSpan(double xmin, double xmax, double ymin, double ymax) {
+		boolean linear = yMinLabel == yMin && yMaxLabel == yMax;
+		return withSpan(xmin, xmax, ymin, ymax, linear ? ymin : Math.pow(10,
+				ymin), linear ? ymax : Math.pow(10, ymax));
+	}
+
+	/**
+	 * Makes a frame with the same series on another span and labels.
+	 *
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param ymin
+	 *            Minimum Y value
+	 * @param ymax
+	 *            Maximum Y value
+	 * @param yminLabel
+	 *            Label text for the minimum of the Y axis
+	 * @param ymaxLabel
+	 *            Label text for the maximum of the Y axis
+	 * @return The frame on the new span.
+	 */
+	PlotFrame withSpan(double xmin, double xmax, double ymin, double ymax,
+			double yminLabel, double ymaxLabel) {
+		return new PlotFrame(ids, colours, x, y, xmin, xmax, ymin, ymax,
+				yminLabel, ymaxLabel, series);
+	}
+
+	private static String[] indexIds(int count) {
+		String[] ids = new String[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = Integer.toString(i);
+		}
+		return ids;
+	}
+
+	private static Color[] indexColours(int count) {
+		Color[] colours = new Color[count];
+		for (int i = 0; i < count; i++) {
+			colours[i] = Palette.colour(i);
+		}
+		return colours;
+	}
+
+	/**
+	 * @return Number of series, including the ones not drawn.
+	 */
+	int getSeriesCount() {
+		return x.length;
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @return The id of the series.
+	 */
+	String getId(int series) {
+		return ids[series];
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @return The colour of the series.
+	 */
+	Color getColour(int series) {
+		return colours[series];
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @return The X values of the series, or null if it is not drawn.
+	 */
+	double[] getX(int series) {
+		return x[series];
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @return The Y values of the series, or null if it is not drawn.
+	 */
+	double[] getY(int series) {
+		return y[series];
+	}
+
+	double getXMin() {
+		return xMin;
+	}
+
+	double getXMax() {
+		return xMax;
+	}
+
+	double getYMin() {
+		return yMin;
+	}
+
+	double getYMax() {
+		return yMax;
+	}
+
+	double getYMinLabel() {
+		return yMinLabel;
+	}
+
+	double getYMaxLabel() {
+		return yMaxLabel;
+	}
+
+	/**
+	 * @return The plotted series with all their samples, or null if this is
+	 *         not the last frame of a plot.
+	 */
+	SeriesWriter getSeries() {
+		return series;
+	}
+}
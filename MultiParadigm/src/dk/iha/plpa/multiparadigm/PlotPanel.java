@@ -1,21 +1,42 @@
 package dk.iha.plpa.multiparadigm;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.font.FontRenderContext;
 import java.awt.font.LineMetrics;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JPanel;
 
 /**
- * Panel which sets up the area where the graphs are drawn.
+ * Panel which sets up the area where the graphs are drawn. The panel draws one
+ * immutable PlotFrame, which is replaced as a whole when new data is set, so
+ * the data is never changed while it is being drawn.
+ * 
+ * The axes, each series and the labels are drawn on layers, which are images
+ * kept between paints and composited on top of each other. A layer is only
+ * drawn again when what is on it changes: all layers when the span or the
+ * size changes, and a single series layer when the values of that series
+ * change. Series layers are kept by the id of the series. When there are too
+ * many series for a layer each, they share one layer.
  * 
  * @author Tommy, Mikkel and lafur
  * 
@@ -23,19 +44,51 @@ import javax.swing.JPanel;
 class PlotPanel extends JPanel {
 
 	private static final long serialVersionUID = 1L;
-	private double[][] x;
-	private double[][] y;
-	private double xMin = 0.0;
-	private double xMax = 0.0;
-	private double yMin = 0.0;
-	private double yMax = 0.0;
-
-	private double yMinLabel = 0.0;
-	private double yMaxLabel = 0.0;
+	private PlotFrame frame = PlotFrame.EMPTY;
 
 	private final int PAD = 20;
+	private int w;
 	private int h;
 
+	// markers are drawn when the points of a series are at least this many
+	// pixels apart on average
+	private static final int MIN_MARKER_SPACING = 8;
+
+	// pixel positions further from the panel than this are moved to it
+	private static final double MAX_PIXEL = 1e6;
+
+	// how much one notch of the mouse wheel zooms out
+	private static final double ZOOM_PER_NOTCH = 1.1;
+
+	// scale dots closer than this many pixels are not drawn
+	private static final int MIN_SCALE_SPACING = 4;
+
+	private ViewportListener viewportListener;
+
+	// mapping of values to pixels, found on each paint
+	private double xScale;
+	private double yScale;
+	private double originX;
+	private double originY;
+	private double offsetX;
+	private double offsetY;
+
+	// cached images of the axes with their scales, of each series by id and
+	// of the labels, composited on paint
+	private final Layer axesLayer = new Layer();
+	private final Map<String, Layer> seriesLayers = new HashMap<String, Layer>();
+	private final Layer labelsLayer = new Layer();
+
+	// with more series than this they are all drawn in the shared layer, as
+	// an image for each would take too much memory
+	private static final int MAX_SERIES_LAYERS = 10;
+	private final Layer sharedLayer = new Layer();
+
+	// shapes reused for every line and dot drawn
+	private final Line2D.Double line = new Line2D.Double();
+	private final Ellipse2D.Double dot = new Ellipse2D.Double();
+	private final Path2D.Double path = new Path2D.Double();
+
 	/**
 	 * Constructor. Sets the values of X and Y.
 	 * 
@@ -52,174 +105,512 @@ class PlotPanel extends JPanel {
 	 * Default constructor.
 	 */
 	public PlotPanel() {
-		this.xMin = Plotter.DEFAULT_XY_MIN;
-		this.xMax = Plotter.DEFAULT_XY_MAX;
-		this.yMax = Plotter.DEFAULT_XY_MAX;
-		this.yMin = Plotter.DEFAULT_XY_MIN;
-
-		this.yMaxLabel = yMax;
-		this.yMinLabel = yMin;
-
 		setSize(1100, 500);
 		Dimension dimension = new Dimension(100, 100);
 		setMaximumSize(dimension);
 		setMinimumSize(dimension);
 		setPreferredSize(dimension);
+
+		MouseAdapter navigation = new Navigation();
+		addMouseListener(navigation);
+		addMouseMotionListener(navigation);
+		addMouseWheelListener(navigation);
+	}
+
+	/**
+	 * Is told when the user pans or zooms the plot.
+	 */
+	public interface ViewportListener {
+		/**
+		 * Called on the Event Dispatch Thread after the panel has moved its
+		 * frame to the new span.
+		 * 
+		 * @param xmin
+		 *            Minimum X value
+		 * @param xmax
+		 *            Maximum X value
+		 * @param ymin
+		 *            Minimum Y value
+		 * @param ymax
+		 *            Maximum Y value
+		 */
+		void viewportChanged(double xmin, double xmax, double ymin,
+				double ymax);
 	}
 
+	/**
+	 * Pans the plot when it is dragged and zooms it around the mouse with the
+	 * mouse wheel. The series already drawn are moved at once, so the panel
+	 * follows the mouse however long the functions take to evaluate.
+	 */
+	private final class Navigation extends MouseAdapter {
+		private int lastX;
+		private int lastY;
+
+		@Override
+		public void mousePressed(MouseEvent e) {
+			lastX = e.getX();
+			lastY = e.getY();
+		}
+
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			double dx = (e.getX() - lastX) / xScale;
+			double dy = (e.getY() - lastY) / yScale;
+			lastX = e.getX();
+			lastY = e.getY();
+			if (xScale > 0 && yScale > 0 && (dx != 0 || dy != 0)) {
+				setViewport(frame.getXMin() - dx, frame.getXMax() - dx,
+						frame.getYMin() + dy, frame.getYMax() + dy);
+			}
+		}
+
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			if (!(xScale > 0 && yScale > 0)) {
+				return;
+			}
+			double factor = Math.pow(ZOOM_PER_NOTCH,
+					e.getPreciseWheelRotation());
+			double x = (e.getX() - offsetX) / xScale;
+			double y = (h - offsetY - e.getY()) / yScale;
+			setViewport(x + (frame.getXMin() - x) * factor, x
+					+ (frame.getXMax() - x) * factor, y
+					+ (frame.getYMin() - y) * factor, y
+					+ (frame.getYMax() - y) * factor);
+		}
+	}
+
+	/**
+	 * Moves the frame to a new span and tells the viewport listener.
+	 */
+	private void setViewport(double xmin, double xmax, double ymin,
+			double ymax) {
+		if (!(xmin < xmax) || !(ymin < ymax) || Double.isInfinite(xmax - xmin)
+				|| Double.isInfinite(ymax - ymin)) {
+			return;
+		}
+		setFrame(frame.withSpan(xmin, xmax, ymin, ymax));
+		if (viewportListener != null) {
+			viewportListener.viewportChanged(xmin, xmax, ymin, ymax);
+		}
+	}
+
+	public void setViewportListener(ViewportListener viewportListener) {
+		this.viewportListener = viewportListener;
+	}
+
+	/**
+	 * Paints the panel by compositing its layers. Only the layers that have
+	 * been invalidated since the last paint are drawn again, so repainting
+	 * a panel that was uncovered, or where one series changed, is mostly
+	 * copying images.
+	 */
 	protected void paintComponent(Graphics g) {
 		super.paintComponent(g);
-		Graphics2D g2 = (Graphics2D) g;
-		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-				RenderingHints.VALUE_ANTIALIAS_ON);
-		int w = getWidth();
-		h = getHeight();
-		double xScale = (w - 2 * PAD) / (xMax - xMin);
-		double yScale = (h - 2 * PAD) / (yMax - yMin);
-
-		Point2D.Double origin = new Point2D.Double(); // Axes origin.
-		Point2D.Double offset = new Point2D.Double(); // Locate data.
+
+		PlotFrame frame = this.frame;
+		if (getWidth() != w || getHeight() != h) {
+			w = getWidth();
+			h = getHeight();
+			invalidateLayers();
+		}
+		if (w <= 0 || h <= 0) {
+			return;
+		}
+		project(frame);
+
+		if (!axesLayer.isValid()) {
+			Graphics2D g2 = axesLayer.begin(this, w, h);
+			drawAxes(g2, frame);
+			g2.dispose();
+		}
+		g.drawImage(axesLayer.getImage(), 0, 0, null);
+
+		if (frame.getSeriesCount() > MAX_SERIES_LAYERS) {
+			if (!sharedLayer.isValid()) {
+				Graphics2D g2 = sharedLayer.begin(this, w, h);
+				// antialiasing hundreds of series costs far more than
+				// drawing them
+				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+						RenderingHints.VALUE_ANTIALIAS_OFF);
+				for (int i = 0; i < frame.getSeriesCount(); i++) {
+					if (frame.getX(i) != null && frame.getY(i) != null) {
+						drawSeries(g2, frame, i);
+					}
+				}
+				g2.dispose();
+			}
+			g.drawImage(sharedLayer.getImage(), 0, 0, null);
+		} else {
+			for (int i = 0; i < frame.getSeriesCount(); i++) {
+				if (frame.getX(i) == null || frame.getY(i) == null) {
+					continue;
+				}
+				Layer layer = seriesLayer(frame.getId(i));
+				if (!layer.isValid()) {
+					Graphics2D g2 = layer.begin(this, w, h);
+					drawSeries(g2, frame, i);
+					g2.dispose();
+				}
+				g.drawImage(layer.getImage(), 0, 0, null);
+			}
+		}
+
+		if (!labelsLayer.isValid()) {
+			Graphics2D g2 = labelsLayer.begin(this, w, h);
+			drawLabels(g2, frame);
+			g2.dispose();
+		}
+		g.drawImage(labelsLayer.getImage(), 0, 0, null);
+	}
+
+	/**
+	 * @return The layer of a series, which is made if there is none yet.
+	 */
+	private Layer seriesLayer(String id) {
+		Layer layer = seriesLayers.get(id);
+		if (layer == null) {
+			layer = new Layer();
+			seriesLayers.put(id, layer);
+		}
+		return layer;
+	}
+
+	/**
+	 * Invalidates all layers, like when the span of the axes or the size of
+	 * the panel changes.
+	 */
+	private void invalidateLayers() {
+		axesLayer.invalidate();
+		labelsLayer.invalidate();
+		sharedLayer.invalidate();
+		for (Layer layer : seriesLayers.values()) {
+			layer.invalidate();
+		}
+	}
+
+	/**
+	 * Finds the scale and offset mapping values to pixels for the span of a
+	 * frame and the size of the panel.
+	 */
+	private void project(PlotFrame frame) {
+		double xMin = frame.getXMin();
+		double xMax = frame.getXMax();
+		double yMin = frame.getYMin();
+		double yMax = frame.getYMax();
+
+		xScale = (w - 2 * PAD) / (xMax - xMin);
+		yScale = (h - 2 * PAD) / (yMax - yMin);
+
 		if (xMax < 0) {
-			origin.x = w - PAD;
-			offset.x = origin.x - xScale * xMax;
+			originX = w - PAD;
+			offsetX = originX - xScale * xMax;
 		} else if (xMin < 0) {
-			origin.x = PAD - xScale * xMin;
-			offset.x = origin.x;
+			originX = PAD - xScale * xMin;
+			offsetX = originX;
 		} else {
-			origin.x = PAD;
-			offset.x = PAD - xScale * xMin;
+			originX = PAD;
+			offsetX = PAD - xScale * xMin;
 		}
 		if (yMax < 0) {
-			origin.y = h - PAD;
-			offset.y = origin.y - yScale * yMax;
+			originY = h - PAD;
+			offsetY = originY - yScale * yMax;
 		} else if (yMin < 0) {
-			origin.y = PAD - yScale * yMin;
-			offset.y = origin.y;
+			originY = PAD - yScale * yMin;
+			offsetY = originY;
 		} else {
-			origin.y = PAD;
-			offset.y = PAD - yScale * yMin;
+			originY = PAD;
+			offsetY = PAD - yScale * yMin;
 		}
+	}
+
+	/**
+	 * Draws the axes and their scales.
+	 */
+	private void drawAxes(Graphics2D g2, PlotFrame frame) {
+		double xMin = frame.getXMin();
+		double xMax = frame.getXMax();
+		double yMin = frame.getYMin();
+		double yMax = frame.getYMax();
+
+		g2.setPaint(Color.black);
 
 		// Draw abscissa (X-axis).
-		g2.draw(new Line2D.Double(PAD, h - origin.y, w - PAD, h - origin.y));
+		line.setLine(PAD, h - originY, w - PAD, h - originY);
+		g2.draw(line);
 		// Draw ordinate (Y-axis).
-		g2.draw(new Line2D.Double(origin.x, PAD, origin.x, h - PAD));
+		line.setLine(originX, PAD, originX, h - PAD);
+		g2.draw(line);
 
 		// Draw axis scales
 		double decimalXDistance = (xMin - Math.floor(xMin));
 		double decimalYDistance = (yMin - Math.floor(yMin));
-		for (int k = 0; k < xMax - xMin + 1; k++) {
+		for (int k = 0; k < xMax - xMin + 1
+				&& xScale >= MIN_SCALE_SPACING; k++) {
 			// x axis scale
-			g2.fill(new Ellipse2D.Double(decimalXDistance + xScale * k + PAD, h
-					- origin.y - 1, 3, 3));
+			dot.setFrame(decimalXDistance + xScale * k + PAD, h - originY - 1,
+					3, 3);
+			g2.fill(dot);
 		}
-		for (int j = 0; j < yMax - yMin + 1; j++) {
+		for (int j = 0; j < yMax - yMin + 1
+				&& yScale >= MIN_SCALE_SPACING; j++) {
 			// y axis scale
-			g2.fill(new Ellipse2D.Double(origin.x - 1, decimalYDistance + h
-					- (yScale * j + PAD), 3, 3));
+			dot.setFrame(originX - 1, decimalYDistance + h
+					- (yScale * j + PAD), 3, 3);
+			g2.fill(dot);
 		}
+	}
 
-		// Plot data, only if data is available
-		if (x != null && y != null && x.length > 0 && y.length > 0) {
-
-			double[][] yPixelPosition = new double[y.length][], xPixelPosition = new double[x.length][];
-
-			for (int i = 0; i < x.length; i++) {
-				// Change colour for the graph
-				Color[] colourArray = { Color.blue, Color.green, Color.cyan,
-						Color.red, Color.yellow, Color.black, Color.magenta,
-						Color.orange, Color.pink, Color.white };
-
-				// Why do we need this if check? oli 14.5.2013
-				// In case an error happens and the array of colours are too
-				// short
-				if (x.length > colourArray.length) {
-					g2.setPaint(Color.blue);
-				} else {
-					g2.setPaint(colourArray[i]);
-				}
-
-				if (x[i] != null && y[i] != null) {
-					xPixelPosition[i] = new double[x[i].length];
-					yPixelPosition[i] = new double[y[i].length];
-
-					if (x[i] != null) {
-						for (int j = 0; j < x[i].length; j++) {
-							// set actual position of points
-
-							double temp = offset.x + xScale * x[i][j];
-							xPixelPosition[i][j] = temp;
-							yPixelPosition[i][j] = h - offset.y + yScale
-									* (-y[i][j]);
-
-							g2.fill(new Ellipse2D.Double(
-									xPixelPosition[i][j] - 2,
-									yPixelPosition[i][j] - 2, 4, 4));
-						}
+	/**
+	 * Draws a series as one path, with markers at the data points if they are
+	 * far enough apart to be told from each other. The path is broken where a
+	 * value is not finite, so no line is drawn across a discontinuity or where
+	 * the function is not defined.
+	 */
+	private void drawSeries(Graphics2D g2, PlotFrame frame, int i) {
+		double[] x = frame.getX(i);
+		double[] y = frame.getY(i);
+
+		path.reset();
+		boolean broken = true;
+		for (int j = 0; j < x.length; j++) {
+			if (!isFinite(y[j])) {
+				broken = true;
+			} else if (broken) {
+				path.moveTo(pixelX(x[j]), pixelY(y[j]));
+				broken = false;
+			} else {
+				path.lineTo(pixelX(x[j]), pixelY(y[j]));
+			}
+		}
 
-					}
+		g2.setPaint(frame.getColour(i));
+		g2.draw(path);
 
-				}
-				// Draw lines between points
-				if (yPixelPosition[i] != null) {
-					for (int k = 1; k < yPixelPosition[i].length; k++) {
-						g2.drawLine((int) xPixelPosition[i][k - 1],
-								(int) yPixelPosition[i][k - 1],
-								(int) xPixelPosition[i][k],
-								(int) yPixelPosition[i][k]);
-					}
+		if (x.length * MIN_MARKER_SPACING <= getPlotWidth()) {
+			for (int j = 0; j < x.length; j++) {
+				if (isFinite(y[j])) {
+					dot.setFrame(pixelX(x[j]) - 2, pixelY(y[j]) - 2, 4, 4);
+					g2.fill(dot);
 				}
 			}
-
 		}
+	}
+
+	/**
+	 * @return The horizontal pixel position of an X value.
+	 */
+	private double pixelX(double x) {
+		return offsetX + xScale * x;
+	}
 
-		// Draw extreme data values.
+	/**
+	 * @return The vertical pixel position of a Y value, kept within a
+	 *         distance of the panel that Java2D draws reliably.
+	 */
+	private double pixelY(double y) {
+		double pixel = h - offsetY + yScale * (-y);
+		return Math.max(-MAX_PIXEL, Math.min(MAX_PIXEL, pixel));
+	}
+
+	/**
+	 * Draws the extreme values of the axes.
+	 */
+	private void drawLabels(Graphics2D g2, PlotFrame frame) {
 		g2.setPaint(Color.black);
 		Font font = g2.getFont();
 		FontRenderContext frc = g2.getFontRenderContext();
 		LineMetrics lm = font.getLineMetrics("0", frc);
 
 		// Draw labels for the X-axis
-		String s = String.format("%.1f", xMin);
-		float width = (float) font.getStringBounds(s, frc).getWidth();
-		double xpos = offset.x + xScale * xMin;
-		g2.drawString(s, (float) xpos, (float) (h - origin.y) + lm.getAscent()); // reversed
-																					// height
+		String s = String.format("%.1f", frame.getXMin());
+		double xpos = offsetX + xScale * frame.getXMin();
+		g2.drawString(s, (float) xpos, (float) (h - originY) + lm.getAscent()); // reversed
+																				// height
 
-		s = String.format("%.1f", xMax);
-		width = (float) font.getStringBounds(s, frc).getWidth();
-		xpos = offset.x + xScale * xMax;
+		s = String.format("%.1f", frame.getXMax());
+		float width = (float) font.getStringBounds(s, frc).getWidth();
+		xpos = offsetX + xScale * frame.getXMax();
 		g2.drawString(s, (float) xpos - width,
-				(float) (h - origin.y) + lm.getAscent()); // reversed height
+				(float) (h - originY) + lm.getAscent()); // reversed height
 
 		// Draw labels for the Y-axis, but reversing the position of them,
 		// because of reversed axis in JPanel
-		s = String.format("%.1f", yMaxLabel);
-		width = (float) font.getStringBounds(s, frc).getWidth();
-		double ypos = offset.y + yScale * yMin;
+		s = String.format("%.1f", frame.getYMaxLabel());
+		double ypos = offsetY + yScale * frame.getYMin();
+		g2.drawString(s, (float) originX + 1, (float) ypos + lm.getAscent());
+
+		s = String.format("%.1f", frame.getYMinLabel());
+		ypos = offsetY + yScale * frame.getYMax();
+		g2.drawString(s, (float) originX + 1, (float) ypos);
+	}
 
-		g2.drawString(s, (float) origin.x + 1, (float) ypos + lm.getAscent());
-		s = String.format("%.1f", yMinLabel);
-		width = (float) font.getStringBounds(s, frc).getWidth();
-		ypos = offset.y + yScale * yMax;
-		g2.drawString(s, (float) origin.x + 1, (float) ypos);
+	/**
+	 * @return Width in pixels of the area the graphs are drawn in, which is
+	 *         the number of pixel columns from the minimum to the maximum X
+	 *         value.
+	 */
+	public int getPlotWidth() {
+		return Math.max(getWidth() - 2 * PAD, 0);
+	}
+
+	/**
+	 * @return Height in pixels of the area the graphs are drawn in.
+	 */
+	public int getPlotHeight() {
+		return Math.max(getHeight() - 2 * PAD, 0);
+	}
 
+	private static boolean isFinite(double value) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
 	}
 
 	public void setxMin(double xMin) {
-		this.xMin = xMin;
+		setFrame(frame.withSpan(xMin, frame.getXMax(), frame.getYMin(),
+				frame.getYMax(), frame.getYMinLabel(), frame.getYMaxLabel()));
 	}
 
 	public void setxMax(double xMax) {
-		this.xMax = xMax;
+		setFrame(frame.withSpan(frame.getXMin(), xMax, frame.getYMin(),
+				frame.getYMax(), frame.getYMinLabel(), frame.getYMaxLabel()));
 	}
 
 	public void setyMin(double yMin) {
-		this.yMin = yMin;
+		setFrame(frame.withSpan(frame.getXMin(), frame.getXMax(), yMin,
+				frame.getYMax(), frame.getYMinLabel(), frame.getYMaxLabel()));
 	}
 
 	public void setyMax(double yMax) {
-		this.yMax = yMax;
+		setFrame(frame.withSpan(frame.getXMin(), frame.getXMax(),
+				frame.getYMin(), yMax, frame.getYMinLabel(),
+				frame.getYMaxLabel()));
+	}
+
+	/**
+	 * Replaces the frame drawn by the panel and repaints it. Must be called
+	 * on the Event Dispatch Thread.
+	 * 
+	 * @param frame
+	 *            The new frame
+	 */
+	public void setFrame(PlotFrame frame) {
+		PlotFrame previous = this.frame;
+		this.frame = frame;
+
+		// the layers of series that are gone are dropped
+		Map<String, Integer> previousIndexes = new HashMap<String, Integer>();
+		for (int i = 0; i < previous.getSeriesCount(); i++) {
+			previousIndexes.put(previous.getId(i), i);
+		}
+		Set<String> ids = new HashSet<String>();
+		for (int i = 0; i < frame.getSeriesCount(); i++) {
+			ids.add(frame.getId(i));
+		}
+		seriesLayers.keySet().retainAll(ids);
+
+		if (!sameSpan(previous, frame)) {
+			invalidateLayers();
+		} else {
+			if (previous.getSeriesCount() != frame.getSeriesCount()) {
+				sharedLayer.invalidate();
+			}
+			for (int i = 0; i < frame.getSeriesCount(); i++) {
+				Integer j = previousIndexes.get(frame.getId(i));
+				if (j == null || !sameSeries(previous, j, frame, i)) {
+					seriesLayer(frame.getId(i)).invalidate();
+					sharedLayer.invalidate();
+				}
+			}
+		}
+		repaint();
+	}
+
+	/**
+	 * @return true if series i of frame a is drawn like series j of frame b.
+	 */
+	private static boolean sameSeries(PlotFrame a, int i, PlotFrame b, int j) {
+		return a.getColour(i).equals(b.getColour(j))
+				&& sameValues(a.getX(i), b.getX(j))
+				&& sameValues(a.getY(i), b.getY(j));
+	}
+
+	/**
+	 * @return true if two frames have the same span and labels of the axes.
+	 */
+	private static boolean sameSpan(PlotFrame a, PlotFrame b) {
+		return a.getXMin() == b.getXMin() && a.getXMax() == b.getXMax()
+				&& a.getYMin() == b.getYMin() && a.getYMax() == b.getYMax()
+				&& a.getYMinLabel() == b.getYMinLabel()
+				&& a.getYMaxLabel() == b.getYMaxLabel();
+	}
+
+	/**
+	 * @return true if two arrays hold the same values, which is checked
+	 *         without looking at the values if they are the same array.
+	 */
+	private static boolean sameValues(double[] a, double[] b) {
+		return a == b || Arrays.equals(a, b);
+	}
+
+	/**
+	 * An image a part of the plot is drawn on, kept until it is invalidated.
+	 */
+	private static final class Layer {
+		private BufferedImage image;
+		private boolean valid = false;
+
+		/**
+		 * Clears the layer for drawing, making a new image if the size has
+		 * changed, and marks it valid.
+		 * 
+		 * @param owner
+		 *            The panel the layer is drawn on
+		 * @param width
+		 *            Width of the panel
+		 * @param height
+		 *            Height of the panel
+		 * @return Graphics drawing on the layer, to be disposed by the caller.
+		 */
+		Graphics2D begin(JPanel owner, int width, int height) {
+			if (image == null || image.getWidth() != width
+					|| image.getHeight() != height) {
+				GraphicsConfiguration configuration = owner
+						.getGraphicsConfiguration();
+				image = configuration != null ? configuration
+						.createCompatibleImage(width, height,
+								Transparency.TRANSLUCENT) : new BufferedImage(
+						width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+			}
+			Graphics2D g2 = image.createGraphics();
+			g2.setComposite(AlphaComposite.Clear);
+			g2.fillRect(0, 0, width, height);
+			g2.setComposite(AlphaComposite.SrcOver);
+			g2.setFont(owner.getFont());
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			valid = true;
+			return g2;
+		}
+
+		BufferedImage getImage() {
+			return image;
+		}
+
+		boolean isValid() {
+			return valid;
+		}
+
+		void invalidate() {
+			valid = false;
+		}
+	}
+
+	/**
+	 * @return The frame drawn by the panel.
+	 */
+	public PlotFrame getFrame() {
+		return frame;
 	}
 
 	/**
@@ -244,13 +635,8 @@ class PlotPanel extends JPanel {
 	 */
 	public void setData(double[][] x, double[][] y, double xmin, double xmax,
 			double ymin, double ymax, double yminLabel, double ymaxLabel) {
-		this.xMin = xmin;
-		this.xMax = xmax;
-		this.yMax = ymax;
-		this.yMin = ymin;
-		this.yMaxLabel = ymaxLabel;
-		this.yMinLabel = yminLabel;
-		this.setData(x, y);
+		setFrame(new PlotFrame(x, y, xmin, xmax, ymin, ymax, yminLabel,
+				ymaxLabel));
 	}
 
 	/**
@@ -271,17 +657,12 @@ class PlotPanel extends JPanel {
 	 */
 	public void setData(double[][] x, double[][] y, double xmin, double xmax,
 			double ymin, double ymax) {
-		this.xMin = xmin;
-		this.xMax = xmax;
-		this.yMax = ymax;
-		this.yMin = ymin;
-		this.yMaxLabel = yMax;
-		this.yMinLabel = yMin;
-		this.setData(x, y);
+		setFrame(new PlotFrame(x, y, xmin, xmax, ymin, ymax));
 	}
 
 	/**
-	 * Sets the data for a plotPanel
+	 * Sets the data for a plotPanel, spanning the axes over the extreme values
+	 * of the data.
 	 * 
 	 * @param x
 	 *            X values for the coordinate system
@@ -293,21 +674,9 @@ class PlotPanel extends JPanel {
 			throw new IllegalArgumentException("x and y data arrays "
 					+ "must be same length.");
 		}
-		this.x = x;
-		this.y = y;
-
-		if (xMin == 0.0 && xMax == 0.0 && yMin == 0.0 && yMax == 0.0) {
-
-			double[] xVals = getExtremeValues(x);
-			xMin = xVals[0];
-			xMax = xVals[1];
-
-			double[] yVals = getExtremeValues(y);
-			yMin = yVals[0];
-			yMax = yVals[1];
-
-		}
-		updateUI();
+		double[] xVals = getExtremeValues(x);
+		double[] yVals = getExtremeValues(y);
+		setFrame(new PlotFrame(x, y, xVals[0], xVals[1], yVals[0], yVals[1]));
 	}
 
 	/**
@@ -321,6 +690,9 @@ class PlotPanel extends JPanel {
 		double min = Double.MAX_VALUE;
 		double max = -min;
 		for (int i = 0; i < d.length; i++) {
+			if (d[i] == null) {
+				continue;
+			}
 			for (int j = 0; j < d[i].length; j++) {
 				if (d[i][j] < min) {
 					min = d[i][j];
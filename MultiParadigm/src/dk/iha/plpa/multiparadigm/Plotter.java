@@ -2,9 +2,22 @@ package dk.iha.plpa.multiparadigm;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import dk.iha.plpa.multiparadigm.engine.SeriesWriter;
 
 /**
  * The Plotter class is the main Panel of the Schemer graphing tool.
@@ -25,6 +38,36 @@ public class Plotter extends JPanel {
 	public final static String DEFAULT_NUMBER_STRING = "N/A";
 	private Schemer scm = new dk.iha.plpa.multiparadigm.Schemer();
 
+	// evaluates the plot and the integrals on a background thread, the
+	// Schemer must only be used through it
+	private EvaluationService evaluationService = new EvaluationService(scm);
+	private static final String PLOT_CHANNEL = "plot";
+	private static final String INTEGRAL_CHANNEL = "integral";
+
+	// milliseconds without typing before the functions are evaluated live
+	private static final int LIVE_EVALUATION_DELAY = 300;
+
+	// size in pixels assumed for the plot before it is shown
+	private static final int DEFAULT_PLOT_WIDTH = 800;
+	private static final int DEFAULT_PLOT_HEIGHT = 500;
+
+	// samples per pixel column when sampling per pixel, so the minimum and
+	// maximum of each column are found
+	private static final int SAMPLES_PER_COLUMN = 4;
+	private Timer liveEvaluationTimer;
+
+	// milliseconds the mouse must rest after panning or zooming before the
+	// functions are evaluated for the new view
+	private static final int VIEWPORT_DELAY = 100;
+	private Timer viewportTimer;
+
+	// rectangle integrations running in the background
+	private List<RectangleIntegrator> runningIntegrators = new ArrayList<RectangleIntegrator>();
+
+	// the series of the latest finished plot before they were reduced for
+	// drawing, only used on the Event Dispatch Thread
+	private SeriesWriter plottedSeries;
+
 	/**
 	 * The constructor of the Plotter class. Takes in the sub-panels in the
 	 * application. Initializes action listeners for controls. Sets the layout.
@@ -32,7 +75,7 @@ public class Plotter extends JPanel {
 	 * @param plotPanelObj
 	 *            The PlotPanel used.
 	 * @param functionPanelObj
-	 *            The FunctionPanel used.
+	 *            The FunctionsFramePanel used.
 	 * @param settingsPanelObj
 	 *            The SettinsPanel used.
 	 * @param rectanglePanelObj
@@ -47,6 +90,25 @@ public class Plotter extends JPanel {
 		settingsPanel = settingsPanelObj;
 		rectanglePanel = rectanglePanelObj;
 
+		// the evaluation thread shows a message for each function that fails
+		scm.setErrorListener(new Schemer.ErrorListener() {
+			@Override
+			public void functionFailed(String functionExpression) {
+				Main.showFunctionErrorMessage(functionExpression);
+			}
+		});
+
+		// evaluate the functions live when the typing pauses, without error
+		// messages for functions that are not finished yet
+		liveEvaluationTimer = new Timer(LIVE_EVALUATION_DELAY,
+				new ActionListener() {
+					public void actionPerformed(ActionEvent e) {
+						drawFunction(false);
+						calculateWithRectangles(false);
+					}
+				});
+		liveEvaluationTimer.setRepeats(false);
+
 		// add drawing action listeners
 		addDrawKeyListenerToJTextField(settingsPanel.getDatapoints());
 		addDrawKeyListenerToJTextField(settingsPanel.getXmax());
@@ -61,7 +123,7 @@ public class Plotter extends JPanel {
 			}
 		});
 
-		addActionListenersToFunctionPanels();
+		addListenersToFunctionTable();
 
 		// add calculating action listener
 		addCalculateActionListenerToRectangleCheckbox(rectanglePanel
@@ -72,6 +134,49 @@ public class Plotter extends JPanel {
 				.getRectangleInputField());
 		addCalculateKeyListenerToJTextField(rectanglePanel.getTxtA());
 		addCalculateKeyListenerToJTextField(rectanglePanel.getTxtB());
+		addCalculateKeyListenerToJTextField(rectanglePanel.getToleranceField());
+		// the samples are reduced to, or chosen for, the pixel columns of the
+		// plot, so a new size needs new samples
+		plotPanel.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				drawFunction(false);
+			}
+		});
+
+		// pan and zoom with the mouse, the panel moves what it has drawn at
+		// once and the functions are evaluated for the new view when the
+		// mouse rests
+		viewportTimer = new Timer(VIEWPORT_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				drawFunction(false, true);
+			}
+		});
+		viewportTimer.setRepeats(false);
+		plotPanel.setViewportListener(new PlotPanel.ViewportListener() {
+			@Override
+			public void viewportChanged(double xmin, double xmax,
+					double ymin, double ymax) {
+				settingsPanel.getXmin().setText(formatBound(xmin));
+				settingsPanel.getXmax().setText(formatBound(xmax));
+				settingsPanel.getYmin().setText(formatBound(ymin));
+				settingsPanel.getYmax().setText(formatBound(ymax));
+				viewportTimer.restart();
+			}
+		});
+
+		settingsPanel.getSamplingComboBox().addActionListener(
+				new ActionListener() {
+					public void actionPerformed(ActionEvent e) {
+						drawFunction();
+					}
+				});
+		rectanglePanel.getMethodComboBox().addActionListener(
+				new ActionListener() {
+					public void actionPerformed(ActionEvent e) {
+						calculateWithRectangles();
+					}
+				});
 
 		setLayout(new GridBagLayout());
 		GridBagConstraints gbc = new GridBagConstraints();
@@ -115,27 +220,113 @@ public class Plotter extends JPanel {
 			}
 		});
 		GridBagConstraints gbc_drawButton = new GridBagConstraints();
-		gbc_drawButton.insets = new Insets(0, 0, 5, 0);
+		gbc_drawButton.insets = new Insets(0, 0, 5, 5);
 		gbc_drawButton.gridx = 2;
 		gbc_drawButton.gridy = 0;
 		add(drawButton, gbc_drawButton);
 
+		JButton exportButton = new JButton("Export");
+		exportButton.setPreferredSize(new Dimension(buttonDimension,
+				buttonDimension));
+		exportButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				exportSeries();
+			}
+		});
+		GridBagConstraints gbc_exportButton = new GridBagConstraints();
+		gbc_exportButton.insets = new Insets(0, 0, 5, 0);
+		gbc_exportButton.gridx = 3;
+		gbc_exportButton.gridy = 0;
+		add(exportButton, gbc_exportButton);
+
 	}
 
 	/**
-	 * Adds action listeners to all FunctionPanel instances found in
-	 * funcFramePanel
+	 * Lets the user choose a file and writes the plotted series to it as
+	 * doubles, in the binary format of SeriesWriter. The series are the ones
+	 * of the latest plot, with all their samples.
 	 */
-	private void addActionListenersToFunctionPanels() {
-		for (FunctionPanel e : funcFramePanel.getFunctionsArray()) {
-			addDrawKeyListenerToJTextField(e.getFunctionTextField());
-			e.getFunctionCheckBox().addActionListener(new ActionListener() {
-				public void actionPerformed(ActionEvent e) {
-					drawFunction();
-				}
-			});
+	private void exportSeries() {
+		SeriesWriter series = plottedSeries;
+		if (series == null || series.isEmpty()) {
+			JOptionPane.showMessageDialog(this, "There are no functions "
+					+ "plotted to export.", "Export",
+					JOptionPane.INFORMATION_MESSAGE);
+			return;
 		}
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("series.bin"));
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		try {
+			series.write(chooser.getSelectedFile(),
+					SeriesWriter.Precision.DOUBLE);
+		} catch (IOException e) {
+			e.printStackTrace();
+			JOptionPane.showMessageDialog(this, "Cannot export to "
+					+ chooser.getSelectedFile() + ":\n" + e.getMessage(),
+					"Attention!", JOptionPane.ERROR_MESSAGE);
+		}
+	}
 
+	/**
+	 * Formats a bound of the view for the settings, rounded to ten
+	 * significant digits.
+	 * 
+	 * @param value
+	 *            The bound
+	 * @return The text of the bound.
+	 */
+	private static String formatBound(double value) {
+		return Double.toString(new BigDecimal(value).round(
+				new MathContext(10)).doubleValue());
+	}
+
+	/**
+	 * Adds listeners to the table of functions in funcFramePanel, so the
+	 * functions are drawn live while they are typed, drawn when a function is
+	 * entered and drawn when a function or its derivative is shown or hidden.
+	 */
+	private void addListenersToFunctionTable() {
+		funcFramePanel.getExpressionField().getDocument()
+				.addDocumentListener(new DocumentListener() {
+					@Override
+					public void insertUpdate(DocumentEvent e) {
+						liveEvaluationTimer.restart();
+					}
+
+					@Override
+					public void removeUpdate(DocumentEvent e) {
+						liveEvaluationTimer.restart();
+					}
+
+					@Override
+					public void changedUpdate(DocumentEvent e) {
+						// attributes do not change the function
+					}
+				});
+		funcFramePanel.getModel().addTableModelListener(
+				new TableModelListener() {
+					@Override
+					public void tableChanged(TableModelEvent e) {
+						if (e.getType() != TableModelEvent.UPDATE) {
+							return;
+						}
+						switch (e.getColumn()) {
+						case FunctionTableModel.EXPRESSION_COLUMN:
+						case FunctionTableModel.VISIBLE_COLUMN:
+							drawFunction();
+							calculateWithRectangles();
+							break;
+						case FunctionTableModel.DERIVATIVE_COLUMN:
+							drawFunction();
+							break;
+						default:
+							// the areas are shown by the table itself
+						}
+					}
+				});
 	}
 
 	/**
@@ -144,10 +335,11 @@ public class Plotter extends JPanel {
 	 * calculations. Clears the graphing plot.
 	 */
 	private void clearAll() {
-		funcFramePanel.clearFunctionsArray();
-		addActionListenersToFunctionPanels();
+		liveEvaluationTimer.stop();
+		funcFramePanel.clearFunctions();
 		settingsPanel.setDefaultValuesToAllFields();
 		rectanglePanel.clearAllFields();
+		cancelRectangleIntegrations();
 		drawFunction();
 
 	}
@@ -169,10 +361,8 @@ public class Plotter extends JPanel {
 				if (arg0.getStateChange() == ItemEvent.DESELECTED
 						&& !rectanglePanel.getFunctionCheckBox().isSelected()) {
 
-					for (FunctionPanel e : funcFramePanel.getFunctionsArray()) {
-						e.getFunctionCalculateareaLabel().setText(
-								DEFAULT_NUMBER_STRING);
-					}
+					cancelRectangleIntegrations();
+					funcFramePanel.getModel().clearAreas(false);
 				} else if (arg0.getStateChange() == ItemEvent.SELECTED
 						&& rectanglePanel.getFunctionCheckBox().isSelected()) {
 
@@ -182,10 +372,8 @@ public class Plotter extends JPanel {
 				if (arg0.getStateChange() == ItemEvent.DESELECTED
 						&& !rectanglePanel.getDerivativeCheckBox().isSelected()) {
 
-					for (FunctionPanel e : funcFramePanel.getFunctionsArray()) {
-						e.getDerivativeCalculateareaLabel().setText(
-								DEFAULT_NUMBER_STRING);
-					}
+					cancelRectangleIntegrations();
+					funcFramePanel.getModel().clearAreas(true);
 				} else if (arg0.getStateChange() == ItemEvent.SELECTED
 						&& rectanglePanel.getDerivativeCheckBox().isSelected()) {
 					calculateWithRectangles();
@@ -251,163 +439,632 @@ public class Plotter extends JPanel {
 
 	/**
 	 * Plots all valid functions specified in the function textboxes in
-	 * funcFramePanel
+	 * funcFramePanel, showing error messages for invalid functions.
 	 */
 	protected void drawFunction() {
+		drawFunction(true);
+	}
+
+	/**
+	 * Plots all valid functions specified in the function textboxes in
+	 * funcFramePanel. The functions and settings are read here, on the Event
+	 * Dispatch Thread, and evaluated by the evaluation service. The functions
+	 * are plotted coarse to fine: the plot is first shown from a few samples,
+	 * whatever the number of datapoints, and then refined each time the
+	 * samples halfway between the samples so far have been evaluated. The plot
+	 * is not updated once the functions have been drawn again.
+	 * 
+	 * @param reportErrors
+	 *            If error messages are shown for invalid functions
+	 */
+	private void drawFunction(final boolean reportErrors) {
+		drawFunction(reportErrors, false);
+	}
+
+	/**
+	 * Plots all valid functions specified in the function textboxes in
+	 * funcFramePanel, see drawFunction(boolean).
+	 * 
+	 * @param reportErrors
+	 *            If error messages are shown for invalid functions
+	 * @param viewport
+	 *            If the plot was panned or zoomed, so the samples of the view
+	 *            before can be used again
+	 */
+	private void drawFunction(final boolean reportErrors, boolean viewport) {
 
-		// NOTE: MAX_NO_FUNCTIONS is twice what MAX_NO_TEXTFIELDS is since we
-		// want to be able to plot the derivative of each function
-		double[][] xValuesCalculated = new double[FunctionsFramePanel.MAX_NO_FUNCTIONS][];
-		double[][] yValuesCalculated = new double[FunctionsFramePanel.MAX_NO_FUNCTIONS][];
+		// the function in row i is registered as f + i, every function is
+		// registered so the others can call it, but only the visible ones are
+		// evaluated
+		FunctionTableModel functions = funcFramePanel.getModel();
+		final String[] expressions = new String[functions.getRowCount()];
+		final boolean[] visible = new boolean[expressions.length];
+		final boolean[] showDerivatives = new boolean[expressions.length];
 
-		double[] x = null;
+		Grid grid = null;
 		try {
-			x = scm.generateXPoints(settingsPanel.getNoOfDataPoints(),
-					settingsPanel.getXMax(), settingsPanel.getXMin());
+			grid = Grid.uniform(settingsPanel.getNoOfDataPoints(),
+					settingsPanel.getXMin(), settingsPanel.getXMax());
 		} catch (Exception e1) {
 			e1.printStackTrace();
 		}
 
-		for (int i = 0; i < funcFramePanel.getFunctionsArray().length; i++) {
+		for (int i = 0; i < expressions.length; i++) {
 
-			FunctionPanel e = funcFramePanel.getFunctionsArray()[i];
+			String text = functions.getExpression(i);
 
-			if (e != null && !e.getFunctionTextField().getText().isEmpty()
-					&& e.getFunctionTextField().getText().startsWith("(")
-					&& e.getFunctionTextField().getText().endsWith(")")) {
+			if (!text.isEmpty() && text.startsWith("(") && text.endsWith(")")) {
+				expressions[i] = text;
+				visible[i] = functions.isVisible(i);
+				showDerivatives[i] = functions.showsDerivative(i);
+			} else if (text.isEmpty()) {
+				// do nothing
+			} else if (reportErrors && functions.isVisible(i)) {
+				Main.showFunctionErrorMessage(text);
+			}
+		}
 
-				// NOTE functions must be registered in the scheme environment
-				// before run
+		PlotJob job = new PlotJob(expressions, visible, showDerivatives,
+				reportErrors);
+		job.viewport = viewport;
+		job.mode = settingsPanel.getSamplingMode();
+		job.budget = Math.max(settingsPanel.getNoOfDataPoints() + 1,
+				AdaptiveSampler.DEFAULT_BUDGET);
+		job.width = plotPanel.getPlotWidth() > 0 ? plotPanel.getPlotWidth()
+				: DEFAULT_PLOT_WIDTH;
+		job.height = plotPanel.getPlotHeight() > 0 ? plotPanel
+				.getPlotHeight() : DEFAULT_PLOT_HEIGHT;
+		if (job.mode == AdaptiveSampler.Mode.PIXEL && grid != null) {
+			// the samples follow the pixel columns, whatever the datapoints
+			grid = Grid.uniform(job.width * SAMPLES_PER_COLUMN,
+					grid.getXMin(), grid.getXMax());
+		}
+		job.grid = grid;
+		job.transform = settingsPanel.getTransform();
+		job.logarithmic = settingsPanel.getLogCheckBox().isSelected();
+		job.xmin = settingsPanel.getXMin();
+		job.xmax = settingsPanel.getXMax();
+		job.ymin = settingsPanel.getYMin();
+		job.ymax = settingsPanel.getYMax();
+		evaluationService.submit(PLOT_CHANNEL, job);
+	}
 
-				if (scm.registerFunction(e.getFunctionTextField().getText(),
-						"f" + i) && x != null) {
+	/**
+	 * Evaluates the functions to plot on the evaluation thread. The settings
+	 * are read on the Event Dispatch Thread before the job is submitted.
+	 * 
+	 * The values are kept per function, where values[i][k] is the k-th
+	 * derivative of the function in row i, and null for functions that are
+	 * not plotted. The series of the frame are identified by the function id,
+	 * with a ' for each derivative, like f0 and f0'.
+	 */
+	private final class PlotJob extends EvaluationService.Job<PlotFrame> {
+		private final String[] expressions;
+		private final boolean[] visible;
+		private final boolean[] showDerivatives;
+		private final boolean reportErrors;
+
+		Grid grid;
+		boolean viewport;
+		AdaptiveSampler.Mode mode;
+		int budget;
+		int width;
+		int height;
+		Transform transform;
+		boolean logarithmic;
+		double xmin;
+		double xmax;
+		double ymin;
+		double ymax;
+
+		PlotJob(String[] expressions, boolean[] visible,
+				boolean[] showDerivatives, boolean reportErrors) {
+			this.expressions = expressions;
+			this.visible = visible;
+			this.showDerivatives = showDerivatives;
+			this.reportErrors = reportErrors;
+		}
+
+		@Override
+		protected PlotFrame evaluate(Schemer scm) throws Throwable {
+			scm.setReportErrors(reportErrors);
+			if (grid == null) {
+				return frame(new double[0][][], new double[0][][], null, true);
+			}
 
-					double[] y = scm.evaluateFunction("f" + i, e
-							.getFunctionTextField().getText(), x, settingsPanel
-							.getLogCheckBox().isSelected());
+			// NOTE functions must be registered in the scheme environment
+			// before run
+			boolean[] plotted = new boolean[expressions.length];
+			for (int i = 0; i < expressions.length; i++) {
+				plotted[i] = expressions[i] != null
+						&& scm.registerFunction(expressions[i], "f" + i) != null
+						&& visible[i];
+			}
+			double[] logExtremes = logarithmic ? scm.getLogExtremes(ymax,
+					ymin) : null;
 
-					xValuesCalculated[i] = x;
-					yValuesCalculated[i] = y;
+			if (mode == AdaptiveSampler.Mode.ADAPTIVE) {
+				return evaluateAdaptively(scm, plotted, logExtremes);
+			}
+			if (viewport) {
+				return evaluateView(scm, plotted, logExtremes);
+			}
+			return evaluateProgressively(scm, plotted, logExtremes);
+		}
 
-					// evaluate derivative
-					if (e.getFunctionCheckBox().isSelected()) {
-						// NOTE functions must be registered in the scheme
-						// environment before run
-						scm.registerFunction(
-								e.getFunctionTextField().getText(), "fd" + i);
+		/**
+		 * Evaluates the functions over the grid coarse to fine: the plot is
+		 * first shown from a few samples, whatever the number of datapoints,
+		 * and then refined each time the samples halfway between the samples
+		 * so far have been evaluated. Functions cached for the grid are
+		 * plotted at once.
+		 */
+		private PlotFrame evaluateProgressively(Schemer scm, boolean[] plotted,
+				double[] logExtremes) {
+			ProgressiveSampler sampler = new ProgressiveSampler(grid,
+					ProgressiveSampler.COARSE_SAMPLES);
+			double[][][] values = new double[expressions.length][][];
+			boolean[] done = new boolean[expressions.length];
+
+			boolean allDone = true;
+			for (int i = 0; i < expressions.length; i++) {
+				done[i] = !plotted[i];
+				if (!done[i] && scm.isCached("f" + i, grid, order(i))) {
+					values[i] = scm.evaluateDerivatives("f" + i,
+							expressions[i], grid, order(i), Transform.IDENTITY);
+					done[i] = true;
+				}
+				allDone = allDone && done[i];
+			}
 
-						double[] yder = scm.evaluateFunctionDerivative(
-								"fd" + i, x, settingsPanel.getLogCheckBox()
-										.isSelected());
+			double[] gridValues = grid.toArray();
+			int levels = allDone ? 1 : sampler.getLevels();
+			for (int level = 0; level < levels; level++) {
+				double[] x = sampler.newValues(level);
+				for (int i = 0; i < expressions.length; i++) {
+					if (isCancelled()) {
+						return null;
+					}
+					if (done[i]) {
+						continue;
+					}
+					double[][] newValues = scm.evaluateDerivatives("f" + i,
+							expressions[i], x, order(i));
+					if (newValues == null) {
+						// not plotted, the error is reported
+						done[i] = true;
+						values[i] = null;
+						continue;
+					}
+					if (level == 0) {
+						values[i] = new double[newValues.length][grid.size()];
+					}
+					for (int k = 0; k < newValues.length; k++) {
+						sampler.scatter(newValues[k], level, values[i][k]);
+					}
+					if (level == sampler.getLevels() - 1) {
+						scm.cacheDerivatives("f" + i, grid, values[i]);
+					}
+				}
 
-						// put coordinates for derivative into calculated values
-						// we put it MAX_NO_TEXTFIELDS after the original
-						// function
-						// so for function at index 0 it is at index 5
-						xValuesCalculated[i
-								+ FunctionsFramePanel.MAX_NO_TEXTFIELDS] = x;
-						yValuesCalculated[i
-								+ FunctionsFramePanel.MAX_NO_TEXTFIELDS] = yder;
+				int shown = allDone ? sampler.getLevels() - 1 : level;
+				double[] shownX = sampler.gather(gridValues, shown);
+				double[][][] xValuesCalculated = new double[values.length][][];
+				double[][][] yValuesCalculated = new double[values.length][][];
+				for (int i = 0; i < values.length; i++) {
+					if (values[i] != null) {
+						xValuesCalculated[i] = new double[values[i].length][];
+						yValuesCalculated[i] = new double[values[i].length][];
+						for (int k = 0; k < values[i].length; k++) {
+							xValuesCalculated[i][k] = shownX;
+							yValuesCalculated[i][k] = sampler.gather(
+									values[i][k], shown);
+						}
 					}
 				}
-			} else if (e == null
-					|| e.getFunctionTextField().getText().isEmpty()) {
-				// do nothing
-			} else {
-				Main.showFunctionErrorMessage(e.getFunctionTextField()
-						.getText());
+				boolean last = level == levels - 1;
+				PlotFrame frame = frame(xValuesCalculated, yValuesCalculated,
+						logExtremes, last);
+				if (last) {
+					return frame;
+				}
+				publishPartial(frame);
+			}
+			return null;
+		}
+
+		/**
+		 * Samples each function adaptively, with more samples where the curve
+		 * bends. Adaptive samples depend on the size of the plot, so they are
+		 * not cached.
+		 */
+		private PlotFrame evaluateAdaptively(final Schemer scm,
+				boolean[] plotted, double[] logExtremes) throws Throwable {
+			AdaptiveSampler sampler = new AdaptiveSampler(xmin, xmax, ymin,
+					ymax, width, height, AdaptiveSampler.DEFAULT_TOLERANCE,
+					budget, Transform.forScale(logarithmic));
+			double[][][] xValuesCalculated = new double[expressions.length][][];
+			double[][][] yValuesCalculated = new double[expressions.length][][];
+
+			for (int i = 0; i < expressions.length; i++) {
+				if (!plotted[i]) {
+					continue;
+				}
+				final String functionId = "f" + i;
+				final String functionExpression = expressions[i];
+				final int order = order(i);
+				AdaptiveSampler.Result result = sampler
+						.sample(new AdaptiveSampler.Function() {
+							@Override
+							public double[][] evaluate(double[] xvalues) {
+								if (isCancelled()) {
+									return null;
+								}
+								return scm.evaluateDerivatives(functionId,
+										functionExpression, xvalues, order);
+							}
+						});
+				if (isCancelled()) {
+					return null;
+				}
+				if (result == null) {
+					// not plotted, the error is reported
+					continue;
+				}
+				store(i, result, xValuesCalculated, yValuesCalculated);
 			}
+			return frame(xValuesCalculated, yValuesCalculated, logExtremes,
+					true);
+		}
 
+		/**
+		 * Evaluates the functions for a panned or zoomed view from the tiles
+		 * of the views before, so only newly shown ranges and ranges zoomed
+		 * in on are evaluated.
+		 */
+		private PlotFrame evaluateView(Schemer scm, boolean[] plotted,
+				double[] logExtremes) {
+			double[][][] xValuesCalculated = new double[expressions.length][][];
+			double[][][] yValuesCalculated = new double[expressions.length][][];
+
+			for (int i = 0; i < expressions.length; i++) {
+				if (isCancelled()) {
+					return null;
+				}
+				if (!plotted[i]) {
+					continue;
+				}
+				AdaptiveSampler.Result result = scm.evaluateView("f" + i,
+						expressions[i], grid.getXMin(), grid.getXMax(),
+						grid.getDatapoints(), order(i));
+				if (result == null) {
+					// not plotted, the error is reported
+					continue;
+				}
+				store(i, result, xValuesCalculated, yValuesCalculated);
+			}
+			return frame(xValuesCalculated, yValuesCalculated, logExtremes,
+					true);
 		}
 
-		if (xValuesCalculated != null && yValuesCalculated != null) {
+		/**
+		 * @return The highest derivative plotted for a function.
+		 */
+		private int order(int i) {
+			return showDerivatives[i] ? 1 : 0;
+		}
+
+		/**
+		 * Keeps the samples of a function and its derivatives, which share
+		 * their x values.
+		 */
+		private void store(int i, AdaptiveSampler.Result result,
+				double[][][] x, double[][][] values) {
+			x[i] = new double[result.getY().length][];
+			for (int k = 0; k < x[i].length; k++) {
+				x[i][k] = result.getX();
+			}
+			values[i] = result.getY();
+		}
+
+		/**
+		 * Makes the frame of the evaluated values, transformed for the plot.
+		 * Series with more points than the plot has pixel columns are
+		 * reduced to the first, min, max and last points of each column, so
+		 * drawing them is bounded by the size of the plot. The last frame of
+		 * the plot keeps the transformed series with all their points for
+		 * exporting.
+		 */
+		private PlotFrame frame(double[][][] x, double[][][] values,
+				double[] logExtremes, boolean last) {
+			M4Decimator decimator = new M4Decimator(xmin, xmax, width);
+			SeriesWriter series = last ? new SeriesWriter(mode
+					+ " sampling of " + grid, logarithmic) : null;
+			List<String> ids = new ArrayList<String>();
+			List<Color> colours = new ArrayList<Color>();
+			List<double[]> xValuesCalculated = new ArrayList<double[]>();
+			List<double[]> yValuesCalculated = new ArrayList<double[]>();
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] == null) {
+					continue;
+				}
+				String id = "f" + i;
+				double[][] transformed = new double[values[i].length][];
+				for (int k = 0; k < values[i].length; k++) {
+					transformed[k] = transform.apply(values[i][k]);
+					double[][] decimated = decimator.decimate(x[i][k],
+							transformed[k]);
+					ids.add(id);
+					colours.add(k == 0 ? Palette.colour(i) : Palette
+							.derivativeColour(i));
+					xValuesCalculated.add(decimated[0]);
+					yValuesCalculated.add(decimated[1]);
+					id += "'";
+				}
+				if (series != null) {
+					series.add("f" + i, expressions[i], x[i][0], transformed);
+				}
+			}
 
 			// manipulate the labels if we want logarithmic scale
-			if (settingsPanel.getLogCheckBox().isSelected()) {
-
-				double[] extremes = scm.getLogExtremes(settingsPanel.getYMax(),
-						settingsPanel.getYMin());
-				plotPanel.setData(xValuesCalculated, yValuesCalculated,
-						settingsPanel.getXMin(), settingsPanel.getXMax(),
-						settingsPanel.getYMin(), settingsPanel.getYMax(),
-						extremes[1], extremes[0]);
-
-			} else {
-				plotPanel.setData(xValuesCalculated, yValuesCalculated,
-						settingsPanel.getXMin(), settingsPanel.getXMax(),
-						settingsPanel.getYMin(), settingsPanel.getYMax());
+			double yminLabel = logExtremes != null ? logExtremes[1] : ymin;
+			double ymaxLabel = logExtremes != null ? logExtremes[0] : ymax;
+			return new PlotFrame(ids.toArray(new String[ids.size()]),
+					colours.toArray(new Color[colours.size()]),
+					xValuesCalculated.toArray(new double[ids.size()][]),
+					yValuesCalculated.toArray(new double[ids.size()][]), xmin,
+					xmax, ymin, ymax, yminLabel, ymaxLabel, series);
+		}
+
+		@Override
+		protected void publish(PlotFrame frame) {
+			if (frame != null) {
+				plotPanel.setFrame(frame);
+				if (frame.getSeries() != null) {
+					plottedSeries = frame.getSeries();
+				}
 			}
+		}
+	}
 
+	/**
+	 * An integral to calculate and the row of the function it is shown in.
+	 */
+	private static final class Integral {
+		final int row;
+		final String functionId;
+		final String functionExpression;
+		final boolean derivative;
+
+		// set by the evaluation thread
+		Quadrature.Result result;
+		RectangleIntegrator integrator;
+
+		Integral(int row, String functionId, String functionExpression,
+				boolean derivative) {
+			this.row = row;
+			this.functionId = functionId;
+			this.functionExpression = functionExpression;
+			this.derivative = derivative;
 		}
 	}
 
 	/**
-	 * Calculates the integral using the rectangle method for all valid
-	 * functions in the textboxes in funcFramePanel
+	 * Calculates the integral using the chosen method for all valid functions
+	 * in the textboxes in funcFramePanel, showing error messages for invalid
+	 * functions.
 	 */
 	protected void calculateWithRectangles() {
+		calculateWithRectangles(true);
+	}
 
-		for (int i = 0; i < funcFramePanel.getFunctionsArray().length; i++) {
+	/**
+	 * Calculates the integral using the chosen method for all valid and
+	 * visible functions in funcFramePanel. The integrals are calculated by the
+	 * evaluation service like the plot. The rectangle method then sums its
+	 * rectangles in the background and shows its progress in the label until
+	 * it is done.
+	 * 
+	 * @param reportErrors
+	 *            If error messages are shown for invalid functions
+	 */
+	private void calculateWithRectangles(final boolean reportErrors) {
+
+		cancelRectangleIntegrations();
+		if (!Main.tryParseInt(rectanglePanel.getTxtA().getText())
+				|| !Main.tryParseInt(rectanglePanel.getTxtB().getText())
+				|| !Main.tryParseInt(rectanglePanel.getRectangleInputField()
+						.getText())
+				|| !Main.tryParseDouble(rectanglePanel.getToleranceField()
+						.getText())) {
+			evaluationService.cancel(INTEGRAL_CHANNEL);
+			return;
+		}
 
-			FunctionPanel e = funcFramePanel.getFunctionsArray()[i];
+		FunctionTableModel functions = funcFramePanel.getModel();
+		final List<Integral> integrals = new ArrayList<Integral>();
+		for (int i = 0; i < functions.getRowCount(); i++) {
 
-			if (e != null
-					&& !e.getFunctionTextField().getText().isEmpty()
-					&& e.getFunctionTextField().getText().startsWith("(")
-					&& e.getFunctionTextField().getText().endsWith(")")
-					&& Main.tryParseInt(rectanglePanel.getTxtA().getText())
-					&& Main.tryParseInt(rectanglePanel.getTxtB().getText())
-					&& Main.tryParseInt(rectanglePanel.getRectangleInputField()
-							.getText())) {
+			String text = functions.getExpression(i);
 
-				scm.registerFunction(e.getFunctionTextField().getText(), "f"
-						+ i);
+			if (!text.isEmpty() && text.startsWith("(") && text.endsWith(")")
+					&& functions.isVisible(i)) {
 
-				// Get the calculated rectangle values for the function
-				DecimalFormat df = new DecimalFormat("0.0000");
-				boolean isDerivative;
+				// Get the calculated integral for the function
 				if (rectanglePanel.getFunctionCheckBox().isSelected()) {
-					isDerivative = false;
-					e.getFunctionCalculateareaLabel()
-							.setText(
-									""
-											+ df.format(fetchRectangleData(i,
-													isDerivative)));
+					integrals.add(new Integral(i, "f" + i, text, false));
 				}
 
 				if (rectanglePanel.getDerivativeCheckBox().isSelected()) {
-					isDerivative = true;
-					e.getDerivativeCalculateareaLabel()
-							.setText(
-									""
-											+ df.format(fetchRectangleData(i,
-													isDerivative)));
-
+					integrals.add(new Integral(i, "f" + i, text, true));
 				}
-			} else {
-				// Do nothing - empty functionPanel
+			} else if (!text.isEmpty()) {
+				// the area of a hidden function is not calculated
+				functions.setArea(i, false, DEFAULT_NUMBER_STRING, null);
+				functions.setArea(i, true, DEFAULT_NUMBER_STRING, null);
 			}
 		}
+		if (integrals.isEmpty()) {
+			evaluationService.cancel(INTEGRAL_CHANNEL);
+			return;
+		}
+
+		final double a = Integer.parseInt(rectanglePanel.getTxtA().getText());
+		final double b = Integer.parseInt(rectanglePanel.getTxtB().getText());
+		final int rectangles = Integer.parseInt(rectanglePanel
+				.getRectangleInputField().getText());
+		final double tolerance = Double.parseDouble(rectanglePanel
+				.getToleranceField().getText());
+		final Quadrature.Method method = rectanglePanel.getMethod();
+		final boolean logarithmic = settingsPanel.getLogCheckBox()
+				.isSelected();
+
+		evaluationService.submit(INTEGRAL_CHANNEL,
+				new EvaluationService.Job<List<Integral>>() {
+					@Override
+					protected List<Integral> evaluate(Schemer scm) {
+						scm.setReportErrors(reportErrors);
+						for (Integral integral : integrals) {
+							if (isCancelled()) {
+								return integrals;
+							}
+							if (scm.registerFunction(
+									integral.functionExpression,
+									integral.functionId) == null) {
+								continue;
+							}
+							if (method == Quadrature.Method.RECTANGLE) {
+								if (rectangles >= 1) {
+									integral.integrator = scm
+											.rectangleIntegrator(
+													integral.functionId, a, b,
+													rectangles,
+													integral.derivative,
+													logarithmic);
+								}
+							} else if (tolerance > 0) {
+								integral.result = scm.integrate(
+										integral.functionId, a, b,
+										integral.derivative, logarithmic,
+										Quadrature.create(method, rectangles),
+										tolerance);
+							}
+						}
+						return integrals;
+					}
+
+					@Override
+					protected void publish(List<Integral> integrals) {
+						for (Integral integral : integrals) {
+							if (integral.integrator != null) {
+								integrate(integral);
+							} else {
+								showIntegral(integral, integral.result);
+							}
+						}
+					}
+				});
 	}
 
 	/**
-	 * Calls Schemer to calculate the rectangle method approximation for the
-	 * given function number (functionId)
+	 * Sums the rectangles of an integrator in the background and shows its
+	 * progress in the function's row until it is done, then shows the
+	 * integral.
 	 * 
-	 * @param functionNo
-	 *            ID of the function in the current scheme environment.
-	 * @param isDerivative
-	 *            Boolean used to determine if we are using a derivative
-	 *            function
-	 * @return The area below the graph.
+	 * @param integral
+	 *            The integral, with an integrator which has not been started
+	 */
+	private void integrate(final Integral integral) {
+		final RectangleIntegrator integrator = integral.integrator;
+		runningIntegrators.add(integrator);
+		funcFramePanel.getModel().setArea(integral.row, integral.derivative,
+				"0%", null);
+
+		new SwingWorker<Quadrature.Result, Integer>() {
+			@Override
+			protected Quadrature.Result doInBackground() throws Exception {
+				integrator
+						.setProgressListener(new RectangleIntegrator.ProgressListener() {
+							private volatile int percent = 0;
+
+							@Override
+							public void progress(long done, long total) {
+								int current = (int) (100 * done / total);
+								if (current != percent) {
+									percent = current;
+									publish(current);
+								}
+							}
+						});
+				try {
+					return integrator.integrate();
+				} catch (Exception e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new ExecutionException(e);
+				}
+			}
+
+			@Override
+			protected void process(List<Integer> percents) {
+				if (!integrator.isCancelled()) {
+					funcFramePanel.getModel().setArea(integral.row,
+							integral.derivative,
+							percents.get(percents.size() - 1) + "%", null);
+				}
+			}
+
+			@Override
+			protected void done() {
+				runningIntegrators.remove(integrator);
+				if (integrator.isCancelled()) {
+					return;
+				}
+				try {
+					showIntegral(integral, get());
+				} catch (InterruptedException | ExecutionException e) {
+					System.out.println("Cannot calculate rectangles");
+					e.printStackTrace();
+					showIntegral(integral, null);
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Cancels all integrals being calculated, including the rectangle
+	 * integrations running in the background. Their labels are left for the
+	 * caller to update.
 	 */
-	private double fetchRectangleData(int functionNo, boolean isDerivative) {
+	private void cancelRectangleIntegrations() {
+		evaluationService.cancel(INTEGRAL_CHANNEL);
+		for (RectangleIntegrator integrator : runningIntegrators) {
+			integrator.cancel();
+		}
+		runningIntegrators.clear();
+	}
 
-		return scm.getRectangleValues("f" + functionNo, Integer
-				.parseInt(rectanglePanel.getTxtA().getText()), Integer
-				.parseInt(rectanglePanel.getTxtB().getText()), Integer
-				.parseInt(rectanglePanel.getRectangleInputField().getText()),
-				isDerivative, settingsPanel.getLogCheckBox().isSelected());
+	/**
+	 * Shows an integral in the function's row, with its error estimate and
+	 * number of evaluations as tool tip.
+	 * 
+	 * @param integral
+	 *            The integral shown
+	 * @param result
+	 *            The integral, or null if it could not be calculated
+	 */
+	private void showIntegral(Integral integral, Quadrature.Result result) {
+		FunctionTableModel functions = funcFramePanel.getModel();
+		if (result == null) {
+			functions.setArea(integral.row, integral.derivative,
+					DEFAULT_NUMBER_STRING, null);
+			return;
+		}
+		DecimalFormat df = new DecimalFormat("0.0000");
+		functions.setArea(integral.row, integral.derivative,
+				"" + df.format(result.getValue()), "Error estimate: "
+						+ result.getError() + ", " + result.getEvaluations()
+						+ " evaluations");
 	}
 
 }
\ No newline at end of file
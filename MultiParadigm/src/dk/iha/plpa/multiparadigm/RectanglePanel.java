@@ -1,5 +1,6 @@
 package dk.iha.plpa.multiparadigm;
 
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -9,8 +10,8 @@ import javax.swing.border.TitledBorder;
 import java.awt.GridLayout;
 
 /**
- * Panel to specify the input for calculating the area below the graph using the
- * rectangle method.
+ * Panel to specify the input for calculating the area below the graph, using the
+ * rectangle method or one of the adaptive quadrature methods.
  * 
  * @author Tommy, Mikkel and lafur
  * 
@@ -26,6 +27,10 @@ public class RectanglePanel extends JPanel {
 	private JTextField txtB = new JTextField("" + initialABValue);
 	private JCheckBox derivativeCheckBox = new JCheckBox("Derivative");
 	private JCheckBox functionCheckBox = new JCheckBox("Function");
+	private JComboBox<Quadrature.Method> methodComboBox = new JComboBox<Quadrature.Method>(
+			Quadrature.Method.values());
+	private JTextField toleranceField = new JTextField(""
+			+ Quadrature.DEFAULT_TOLERANCE);
 
 	/**
 	 * Constructor for setting up the panel.
@@ -36,13 +41,23 @@ public class RectanglePanel extends JPanel {
 		rectangleInputField.setColumns(3);
 
 		setBorder(new TitledBorder("Calculate area below graph"));
-		setLayout(new GridLayout(4, 2, 0, 0));
+		setLayout(new GridLayout(6, 2, 0, 0));
 
 		add(functionCheckBox);
 		add(derivativeCheckBox);
+
+		JLabel methodLabel = new JLabel("Method:");
+		add(methodLabel);
+		add(methodComboBox);
+
 		add(rectangleInputLabel);
 		add(rectangleInputField);
 
+		JLabel toleranceLabel = new JLabel("Tolerance:");
+		add(toleranceLabel);
+		add(toleranceField);
+		toleranceField.setColumns(10);
+
 		JLabel lblFrom = new JLabel("From:");
 		add(lblFrom);
 
@@ -66,7 +81,8 @@ public class RectanglePanel extends JPanel {
 		txtB.setText("" + initialABValue);
 		derivativeCheckBox.setSelected(false);
 		functionCheckBox.setSelected(false);
-
+		methodComboBox.setSelectedItem(Quadrature.Method.RECTANGLE);
+		toleranceField.setText("" + Quadrature.DEFAULT_TOLERANCE);
 	}
 
 	public JTextField getRectangleInputField() {
@@ -109,4 +125,19 @@ public class RectanglePanel extends JPanel {
 		this.functionCheckBox = functionCheckBox;
 	}
 
+	public JComboBox<Quadrature.Method> getMethodComboBox() {
+		return methodComboBox;
+	}
+
+	public JTextField getToleranceField() {
+		return toleranceField;
+	}
+
+	/**
+	 * @return The quadrature method chosen by the user.
+	 */
+	public Quadrature.Method getMethod() {
+		return (Quadrature.Method) methodComboBox.getSelectedItem();
+	}
+
 }
@@ -1,6 +1,7 @@
 package dk.iha.plpa.multiparadigm;
 
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -24,6 +25,8 @@ public class SettingsPanel extends JPanel {
 	private JTextField ymax = new JTextField();
 	private JCheckBox logCheckBox = new JCheckBox("On/Off");
 	private JTextField datapoints = new JTextField();
+	private JComboBox<AdaptiveSampler.Mode> samplingComboBox = new JComboBox<AdaptiveSampler.Mode>(
+			AdaptiveSampler.Mode.values());
 	private int lowScaleValue = -5;
 	private int highScaleValue = 5;
 	private int defaultDatapointsValue = 10;
@@ -38,8 +41,9 @@ public class SettingsPanel extends JPanel {
 		JLabel lblXMax = new JLabel("X max: ", SwingConstants.RIGHT);
 		JLabel lblYMax = new JLabel("Y max: ", SwingConstants.RIGHT);
 		JLabel lblToggleScale = new JLabel("Logarithmic");
+		JLabel lblSampling = new JLabel("Sampling: ");
 		setBorder(new TitledBorder("Settings"));
-		setLayout(new GridLayout(3, 4, 0, 0));
+		setLayout(new GridLayout(4, 4, 0, 0));
 		datapoints.setText("10");
 		add(lblNoOfDatapoints);
 		add(datapoints);
@@ -59,6 +63,9 @@ public class SettingsPanel extends JPanel {
 		add(lblYMin);
 		add(ymin);
 
+		add(lblSampling);
+		add(samplingComboBox);
+
 	}
 
 	/**
@@ -72,6 +79,7 @@ public class SettingsPanel extends JPanel {
 		ymin.setText("" + lowScaleValue);
 		datapoints.setText("" + defaultDatapointsValue);
 		logCheckBox.setSelected(false);
+		samplingComboBox.setSelectedItem(AdaptiveSampler.Mode.UNIFORM);
 	}
 
 	/**
@@ -144,6 +152,32 @@ public class SettingsPanel extends JPanel {
 		}
 	}
 
+	/**
+	 * Maps the settings to the transform applied to the evaluated values.
+	 * 
+	 * @return The 10-base logarithm of the absolute values if the logarithmic
+	 *         scale is on, else the identity.
+	 */
+	public Transform getTransform() {
+		return Transform.forScale(logCheckBox.isSelected());
+	}
+
+	/**
+	 * Method for retrieving how the x values of the plot are chosen. In
+	 * adaptive mode the number of datapoints is the evaluation budget of each
+	 * function, but at least AdaptiveSampler.DEFAULT_BUDGET. Per pixel, the
+	 * number of datapoints follows the width of the plot instead.
+	 * 
+	 * @return The selected sampling mode.
+	 */
+	public AdaptiveSampler.Mode getSamplingMode() {
+		return (AdaptiveSampler.Mode) samplingComboBox.getSelectedItem();
+	}
+
+	public JComboBox<AdaptiveSampler.Mode> getSamplingComboBox() {
+		return samplingComboBox;
+	}
+
 	public JTextField getXmin() {
 		return xmin;
 	}
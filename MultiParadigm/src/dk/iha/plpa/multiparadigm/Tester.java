@@ -1,6 +1,30 @@
 package dk.iha.plpa.multiparadigm;
 
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import dk.iha.plpa.multiparadigm.engine.Engine;
+import dk.iha.plpa.multiparadigm.engine.FunctionResult;
+import dk.iha.plpa.multiparadigm.engine.Job;
+import dk.iha.plpa.multiparadigm.engine.SeriesReader;
+import dk.iha.plpa.multiparadigm.engine.SeriesWriter;
+
+import gnu.lists.Pair;
+import kawa.standard.Scheme;
 
 /**
  * A suite of automatic tests for the graphing tool Schemer.
@@ -20,9 +44,70 @@ public class Tester {
 		Tester run = new Tester();
 		run.oneEnvironmentTest(10000);	
 		run.manyEnvironmentsTest(10000);
+		run.pooledEnvironmentsTest(10000);
+		run.parallelEvaluatorTest(8 * ParallelEvaluator.PARALLEL_THRESHOLD);
 				
 		run.generateXPointsTest(10, -5.0, 5.0);
 		run.generateXPointsTest(1000, -100, 10);
+
+		run.gridTest(Grid.uniform(1000, -100, 10));
+		run.gridTest(Grid.logarithmic(1000, 0.001, 1000));
+		run.gridTest(Grid.chebyshev(1000, -5, 5));
+
+		run.progressiveSamplerTest(Grid.uniform(100000, -5, 5));
+		run.progressiveSamplerTest(Grid.chebyshev(1000, -5, 5));
+
+		run.adaptiveSamplerTest(0.3, 2000);
+		run.adaptiveSamplerTest(-1.7, 200);
+
+		run.m4DecimatorTest(1000000, 800);
+		run.m4DecimatorTest(3000, 800);
+
+		run.tileCacheTest(1000);
+		run.seriesCacheTest(1000);
+		run.fingerprintTest(1000);
+
+		run.paletteTest(300);
+
+		run.jobTest();
+		run.engineTest();
+		run.seriesFileTest(1000000);
+
+		run.transformTest(3);
+		run.transformTest(0);
+
+		run.invokeTest(1e-300, Double.MIN_VALUE, -0.1, Math.PI, Double.NaN,
+				Double.POSITIVE_INFINITY);
+
+		run.compiledFunctionTest("(* x x)");
+		run.compiledFunctionTest("(+ (* 3 (expt x 3)) (- x) (/ x 7) 1/2)");
+		run.compiledFunctionTest("(* (sin x) (exp (/ x 4)) (sqrt (abs x)))");
+		run.compiledFunctionTest("(log (+ 1 (* x x)))");
+		run.compilerNumberTest();
+
+		run.derivativeTest("(* x x)");
+		run.derivativeTest("(/ (sin x) (+ 2 (cos x)))");
+		run.derivativeTest("(* (exp (- (/ (* x x) 8))) (tan (/ x 10)))");
+		run.derivativeTest("(expt (+ 2 (sin x)) (sqrt (+ 1 (abs x))))");
+		run.derivativeTest("(* x (abs x))");
+		run.derivativeTest("(expt x (+ 1 1))");
+
+		run.taylorTest("(/ (sin x) (+ 2 (cos x)))", 3);
+		run.taylorTest("(* (expt x 5) (log (+ 1 (* x x))))", 2);
+		run.taylorTest("(* (abs x) (sin x))", 3);
+		run.taylorTest("(expt x (+ 1 1))", 3);
+		run.negativeBaseTest("(expt x (- 2))", -1, 1);
+		run.negativeBaseTest("(expt x (+ 1 1))", -1.5, 2.25);
+		run.negativeBaseTest("(expt -2 x)", 2, 4);
+
+		run.quadratureTest("(sin x)", 0, Math.PI, 2);
+		run.quadratureTest("(/ 1 (+ 1 (* 100 x x)))", -1, 1, Math.atan(10) / 5);
+
+		run.rectangleIntegratorTest("(sin x)", 0, Math.PI, 100000000L, 2);
+		run.rectangleIntegratorTest("(if (< x 0) 0 (sin x))", 0, Math.PI,
+				1000000L, 2);
+
+		run.evaluationServiceTest(100);
 	}
 
 	/**
@@ -52,6 +137,139 @@ public class Tester {
 
 	}
 
+	/**
+	 * Tests evaluating a Scheme function many times in succession, borrowing
+	 * an isolated environment from a SchemerPool for each evaluation. Also
+	 * tests that functions registered by one borrower are gone for the next.
+	 * 
+	 * @param count
+	 *            No. of times to evaluate
+	 */
+	private void pooledEnvironmentsTest(int count) {
+		System.out.println("Running pooledEnvironmentsTest for " + count
+				+ " borrowed environments and as many executions of generateXPoints");
+		String functionExpression = "(* x x)";
+		SchemerPool pool = new SchemerPool(4, 4);
+		try {
+			for (int i = 0; i <= count; i++) {
+				System.out.println("Running: " + i);
+				Schemer scm = pool.borrow();
+				scm.registerFunction(functionExpression, "f");
+				scm.evaluateFunction("f", functionExpression,
+						scm.generateXPoints(10000, 0.0, 10.0), false);
+				pool.release(scm);
+			}
+
+			Schemer scm = pool.borrow();
+			if (Scheme.eval("f", scm.getEnvironment()) != Boolean.FALSE) {
+				System.out.println("Function f was not reset on release");
+			}
+			pool.release(scm);
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		}
+		System.out.println("PooledEnvironmentsTest complete");
+
+	}
+
+	/**
+	 * Tests that evaluating on all cores gives the same values as evaluating
+	 * on one thread, for a compiled function and for Scheme functions
+	 * evaluated in the environments of the worker threads, also after a
+	 * function called by another is redefined. Prints the speedup.
+	 * 
+	 * @param datapoints
+	 *            No. of x-values, at least PARALLEL_THRESHOLD so they are
+	 *            evaluated in parallel
+	 */
+	private void parallelEvaluatorTest(int datapoints) {
+		System.out.println("Running parallelEvaluatorTest for " + datapoints
+				+ " x-values on " + Runtime.getRuntime().availableProcessors()
+				+ " cores");
+		final double[] xvalues = Grid.uniform(datapoints - 1, -10, 10)
+				.toArray();
+		boolean passed = true;
+		try {
+			final Expr expr = ExpressionCompiler
+					.compile("(* (sin x) (exp (/ x 4)) (sqrt (abs x)))");
+			long start = System.nanoTime();
+			double[] serial = new double[xvalues.length];
+			for (int i = 0; i < xvalues.length; i++) {
+				serial[i] = expr.eval(xvalues[i]);
+			}
+			long serialTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			double[] parallel = new ParallelEvaluator().evaluate(xvalues,
+					new ParallelEvaluator.ChunkEvaluator() {
+						@Override
+						public void evaluate(double[] xvalues,
+								double[] yvalues, int from, int to) {
+							for (int i = from; i < to; i++) {
+								yvalues[i] = expr.eval(xvalues[i]);
+							}
+						}
+					});
+			long parallelTime = System.nanoTime() - start;
+			passed &= sameValues("Compiled", serial, parallel, xvalues);
+			System.out.println("Compiled speedup: "
+					+ new DecimalFormat("0.0").format((double) serialTime
+							/ parallelTime));
+
+			// g1 calls g0 and is not compiled, so it is evaluated by Kawa in
+			// the environments of the worker threads
+			Schemer scm = new Schemer();
+			String[] definitions = { "(if (< x 0) (- x) (sin x))",
+					"(if (< x 0) x (cos x))" };
+			String caller = "(+ 1 (g0 x))";
+			double[] before = null;
+			for (String definition : definitions) {
+				scm.registerFunction(definition, "g0");
+				start = System.nanoTime();
+				serial = scm.evaluateBatch(scm.registerFunction(caller, "g1"),
+						xvalues);
+				serialTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				parallel = scm.evaluateDerivatives("g1", caller, xvalues, 0)[0];
+				parallelTime = System.nanoTime() - start;
+				passed &= sameValues("Scheme", serial, parallel, xvalues);
+				if (before != null && Arrays.equals(before, parallel)) {
+					passed = false;
+					System.out.println("Redefining g0 did not change g1 "
+							+ "on the worker threads");
+				}
+				before = parallel;
+				System.out.println("Scheme speedup: "
+						+ new DecimalFormat("0.0").format((double) serialTime
+								/ parallelTime));
+			}
+		} catch (Throwable e) {
+			passed = false;
+			e.printStackTrace();
+		}
+		if (passed) {
+			System.out.println("Parallel and serial values are equal");
+		}
+	}
+
+	/**
+	 * @return true if the values evaluated in parallel are the same as the
+	 *         values evaluated serially, printing the first difference if
+	 *         not.
+	 */
+	private static boolean sameValues(String path, double[] serial,
+			double[] parallel, double[] xvalues) {
+		for (int i = 0; i < serial.length; i++) {
+			if (Double.doubleToLongBits(serial[i]) != Double
+					.doubleToLongBits(parallel[i])) {
+				System.out.println(path + " value at x = " + xvalues[i]
+						+ " differs. Serial: " + serial[i] + " Parallel: "
+						+ parallel[i]);
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Tests evaluating a Scheme function many times in succession, using one
 	 * environment
@@ -80,7 +298,8 @@ public class Tester {
 	}
 
 	/**
-	 * Tests if the Scheme and Java versions of generateXPoints are equivalent
+	 * Tests if the Scheme version of generateXPoints and the Java version in
+	 * Grid are equivalent
 	 * 
 	 * @param datapoints
 	 *            No. of datapoints used.
@@ -95,8 +314,8 @@ public class Tester {
 				+ " datapoints and with xmin = " + xmin + ", xmax = " + xmax);
 		Boolean equalLength = true;
 		Schemer scm = new Schemer();
-		double[] scmArray = scm.generateXPoints(datapoints, xmax, xmin);
-		double[] javaArray = this.generateXPoints(datapoints, xmax, xmin);
+		double[] scmArray = this.generateXPoints(scm, datapoints, xmax, xmin);
+		double[] javaArray = scm.generateXPoints(datapoints, xmax, xmin);
 		DecimalFormat myFormat = new DecimalFormat("0.000");
 
 		try {
@@ -174,9 +393,1209 @@ public class Tester {
 	}
 
 	/**
-	 * Java version of Schemer.generateXPoints()
+	 * Tests if a function compiled by ExpressionCompiler gives the same values
+	 * as the function evaluated by Kawa.
+	 * 
+	 * @param functionExpression
+	 *            The function to test, must be in the compiled subset
+	 */
+	private void compiledFunctionTest(String functionExpression) {
+		System.out.println("Running compiledFunctionTest for "
+				+ functionExpression);
+		Expr expr = ExpressionCompiler.compile(functionExpression);
+		if (expr == null) {
+			System.out.println("Function could not be compiled");
+			return;
+		}
+
+		Schemer scm = new Schemer();
+		double[] xvalues = Grid.uniform(1000, -10, 10).toArray();
+		try {
+			double[] scmArray = scm.evaluateBatch(
+					scm.registerFunction(functionExpression, "f"), xvalues);
+			boolean equal = true;
+			for (int i = 0; i < xvalues.length; i++) {
+				double value = expr.eval(xvalues[i]);
+				if (!(Math.abs(value - scmArray[i]) <= 1e-9 * Math.max(1,
+						Math.abs(value)))) {
+					equal = false;
+					System.out.println("Compiled and Scheme value at x = "
+							+ xvalues[i] + " not equivalent.\nScheme: "
+							+ scmArray[i] + " Compiled: " + value);
+				}
+			}
+			if (equal) {
+				System.out.println("Compiled and Scheme values are equivalent");
+			}
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Tests that ExpressionCompiler only reads numbers in Scheme syntax, and
+	 * leaves tokens that only Java reads as numbers to Kawa.
+	 */
+	private void compilerNumberTest() {
+		System.out.println("Running compilerNumberTest");
+		String[] numbers = { "2", "-2.5", "+.5", "1.", "1e3", "-1/4" };
+		double[] values = { 2, -2.5, 0.5, 1, 1000, -0.25 };
+		String[] symbols = { "NaN", "Infinity", "-Infinity", "1d", "1f",
+				"0x1p3", "1/0", "1/-2", "1e", "." };
+		boolean passed = true;
+		for (int i = 0; i < numbers.length; i++) {
+			Expr expr = ExpressionCompiler.compile("(+ " + numbers[i] + ")");
+			if (expr == null || expr.eval(0) != values[i]) {
+				passed = false;
+				System.out.println(numbers[i] + " was not read as "
+						+ values[i]);
+			}
+		}
+		for (String symbol : symbols) {
+			if (ExpressionCompiler.compile("(* x " + symbol + ")") != null) {
+				passed = false;
+				System.out.println(symbol + " was compiled as a number");
+			}
+		}
+		if (passed) {
+			System.out.println("Only Scheme numbers are compiled");
+		}
+	}
+
+	/**
+	 * Tests if the symbolic derivative of a compiled function matches a
+	 * central difference approximation of the derivative.
+	 * 
+	 * @param functionExpression
+	 *            The function to test, must be in the compiled subset
+	 */
+	private void derivativeTest(String functionExpression) {
+		System.out.println("Running derivativeTest for " + functionExpression);
+		Expr expr = ExpressionCompiler.compile(functionExpression);
+		if (expr == null) {
+			System.out.println("Function could not be compiled");
+			return;
+		}
+		Expr derivative = Differentiator.derive(expr);
+		System.out.println("Derivative: " + derivative);
+
+		boolean equal = true;
+		double h = 1e-5;
+		for (double x : Grid.uniform(1000, -10, 10).toArray()) {
+			double expected = (expr.eval(x + h) - expr.eval(x - h)) / (2 * h);
+			double value = derivative.eval(x);
+			if (!(Math.abs(value - expected) <= 1e-4 * Math.max(1,
+					Math.abs(expected)))) {
+				equal = false;
+				System.out.println("Derivative at x = " + x
+						+ " not equivalent.\nSymbolic: " + value
+						+ " Difference: " + expected);
+			}
+		}
+		if (equal) {
+			System.out.println("Symbolic and approximated derivatives are equivalent");
+		}
+	}
+
+	/**
+	 * Tests if the derivatives found by the TaylorEvaluator in one pass match
+	 * the symbolic derivatives of a compiled function.
+	 * 
+	 * @param functionExpression
+	 *            The function to test, must be in the compiled subset
+	 * @param order
+	 *            The highest derivative to test
+	 */
+	private void taylorTest(String functionExpression, int order) {
+		System.out.println("Running taylorTest for " + functionExpression
+				+ " up to order " + order);
+		Expr[] derivatives = new Expr[order + 1];
+		derivatives[0] = ExpressionCompiler.compile(functionExpression);
+		if (derivatives[0] == null) {
+			System.out.println("Function could not be compiled");
+			return;
+		}
+		for (int k = 1; k <= order; k++) {
+			derivatives[k] = Differentiator.derive(derivatives[k - 1]);
+		}
+
+		double[] x = Grid.uniform(1000, -10, 10).toArray();
+		double[][] values = new double[order + 1][x.length];
+		new TaylorEvaluator(derivatives[0], order).evaluate(x, values, 0,
+				x.length);
+
+		boolean equal = true;
+		for (int k = 0; k <= order; k++) {
+			for (int i = 0; i < x.length; i++) {
+				double expected = derivatives[k].eval(x[i]);
+				if (!(Math.abs(values[k][i] - expected) <= 1e-9 * Math.max(
+						1, Math.abs(expected)))) {
+					equal = false;
+					System.out.println("Derivative " + k + " at x = " + x[i]
+							+ " not equivalent.\nTaylor: " + values[k][i]
+							+ " Symbolic: " + expected);
+				}
+			}
+		}
+
+		// the plot evaluates the function and its first derivative one at a
+		// time, and both are cached under the same keys as the series of
+		// evaluateDerivatives, so they must be the same values
+		Grid grid = Grid.uniform(1000, -10, 10);
+		Schemer one = new Schemer();
+		Schemer all = new Schemer();
+		one.registerFunction(functionExpression, "f");
+		all.registerFunction(functionExpression, "f");
+		double[][] together = all.evaluateDerivatives("f", functionExpression,
+				grid, order, Transform.IDENTITY);
+		double[][] separate = new double[Math.min(order, 1) + 1][];
+		separate[0] = one.evaluateFunction("f", functionExpression, grid,
+				Transform.IDENTITY);
+		if (order > 0) {
+			separate[1] = one.evaluateFunctionDerivative("f", grid, false);
+		}
+		for (int k = 0; k < separate.length; k++) {
+			for (int i = 0; i < x.length; i++) {
+				if (Double.doubleToLongBits(separate[k][i]) != Double
+						.doubleToLongBits(together[k][i])) {
+					equal = false;
+					System.out.println("Derivative " + k + " at x = " + x[i]
+							+ " evaluated alone: " + separate[k][i]
+							+ " with the others: " + together[k][i]);
+					break;
+				}
+			}
+		}
+		if (equal) {
+			System.out.println("Taylor and symbolic derivatives are equivalent");
+		}
+	}
+
+	/**
+	 * Tests that a power with a negative base has the value Kawa gives it
+	 * when evaluated with its derivatives, also when the exponent is not a
+	 * literal constant.
+	 * 
+	 * @param functionExpression
+	 *            The function to test, must be in the compiled subset
+	 * @param x
+	 *            Where to evaluate the function
+	 * @param expected
+	 *            The value of the function at x
+	 */
+	private void negativeBaseTest(String functionExpression, double x,
+			double expected) {
+		System.out.println("Running negativeBaseTest for "
+				+ functionExpression + " at x = " + x);
+		Expr expr = ExpressionCompiler.compile(functionExpression);
+		if (expr == null) {
+			System.out.println("Function could not be compiled");
+			return;
+		}
+
+		double[] derivatives = new double[3];
+		new TaylorEvaluator(expr, 2).evaluate(x, derivatives);
+		Schemer scm = new Schemer();
+		scm.registerFunction(functionExpression, "f");
+		double plotted = scm.evaluateFunction("f", functionExpression,
+				new double[] { x }, false)[0];
+		if (derivatives[0] == expected && plotted == expected) {
+			System.out.println("The value is " + expected);
+		} else {
+			System.out.println("Expected " + expected + ", Taylor: "
+					+ derivatives[0] + " Plotted: " + plotted);
+		}
+	}
+
+	/**
+	 * Tests that every quadrature method approximates a known integral within
+	 * its error estimate, and prints the number of evaluations each method
+	 * needs.
+	 * 
+	 * @param functionExpression
+	 *            The function to integrate, must be in the compiled subset
+	 * @param a
+	 *            The value to integrate from
+	 * @param b
+	 *            The value to integrate to
+	 * @param expected
+	 *            The exact integral
+	 */
+	private void quadratureTest(String functionExpression, double a, double b,
+			double expected) {
+		System.out.println("Running quadratureTest for " + functionExpression
+				+ " from " + a + " to " + b);
+		final Expr expr = ExpressionCompiler.compile(functionExpression);
+		if (expr == null) {
+			System.out.println("Function could not be compiled");
+			return;
+		}
+		Quadrature.Integrand integrand = new Quadrature.Integrand() {
+			@Override
+			public double evaluate(double x) {
+				return expr.eval(x);
+			}
+		};
+
+		double tolerance = 1e-8;
+		for (Quadrature.Method method : Quadrature.Method.values()) {
+			try {
+				Quadrature.Result result = Quadrature.create(method, 10000)
+						.integrate(integrand, a, b, tolerance);
+				double error = Math.abs(result.getValue() - expected);
+				boolean accurate = method == Quadrature.Method.RECTANGLE ? error <= 10 * result
+						.getError() : error <= 10 * tolerance;
+				System.out.println(method + ": " + result
+						+ (accurate ? "" : " - NOT ACCURATE, error " + error));
+			} catch (Throwable e) {
+				System.out.println(method + " failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Tests how long the rectangle integrator takes for many rectangles and
+	 * how close it gets to the exact integral.
+	 * 
+	 * @param functionExpression
+	 *            The function to integrate
+	 * @param a
+	 *            The value to integrate from
+	 * @param b
+	 *            The value to integrate to
+	 * @param rectangles
+	 *            Number of rectangles
+	 * @param expected
+	 *            The exact integral
+	 */
+	private void rectangleIntegratorTest(String functionExpression, double a,
+			double b, long rectangles, double expected) {
+		System.out.println("Running rectangleIntegratorTest for "
+				+ functionExpression + " with " + rectangles + " rectangles");
+		Schemer scm = new Schemer();
+		scm.registerFunction(functionExpression, "f");
+		RectangleIntegrator integrator = scm.rectangleIntegrator("f", a, b,
+				rectangles, false, false);
+
+		long startTime = System.currentTimeMillis();
+		try {
+			Quadrature.Result result = integrator.integrate();
+			long stopTime = System.currentTimeMillis();
+			System.out.println("Result: " + result + ", error "
+					+ Math.abs(result.getValue() - expected) + ", took "
+					+ (stopTime - startTime) + " ms");
+		} catch (Throwable e) {
+			System.out.println("Integration failed: " + e);
+		}
+	}
+
+	/**
+	 * Tests that doubles are passed to and returned from Scheme procedures
+	 * without losing precision.
+	 * 
+	 * @param values
+	 *            The values to pass through Scheme
+	 */
+	private void invokeTest(double... values) {
+		System.out.println("Running invokeTest");
+		Schemer scm = new Schemer();
+		boolean equal = true;
+		for (double value : values) {
+			try {
+				double result = scm.invokeDouble("*", value, 1);
+				if (Double.doubleToLongBits(result) != Double
+						.doubleToLongBits(value)) {
+					equal = false;
+					System.out.println("Value " + value + " came back as "
+							+ result);
+				}
+			} catch (Throwable e) {
+				equal = false;
+				System.out.println("Value " + value + " failed: " + e);
+			}
+		}
+		if (equal) {
+			System.out.println("All values came back unchanged");
+		}
+	}
+
+	/**
+	 * Tests that the levels of a progressive sampler evaluate every value of
+	 * a grid exactly once, that the first level is small and that the samples
+	 * of each level are the grid values in ascending order.
+	 * 
+	 * @param grid
+	 *            The grid to split into levels
+	 */
+	private void progressiveSamplerTest(Grid grid) {
+		System.out.println("Running progressiveSamplerTest for "
+				+ grid.getDatapoints() + " datapoints");
+		ProgressiveSampler sampler = new ProgressiveSampler(grid,
+				ProgressiveSampler.COARSE_SAMPLES);
+		double[] xvalues = grid.toArray();
+		double[] sampled = new double[xvalues.length];
+		Arrays.fill(sampled, Double.NaN);
+		boolean passed = sampler.size(0) < 2 * ProgressiveSampler.COARSE_SAMPLES
+				+ 2;
+		int evaluations = 0;
+
+		for (int level = 0; level < sampler.getLevels(); level++) {
+			double[] newValues = sampler.newValues(level);
+			evaluations += newValues.length;
+			sampler.scatter(newValues, level, sampled);
+			if (!Arrays.equals(sampler.gather(xvalues, level),
+					sampler.gather(sampled, level))) {
+				passed = false;
+				System.out.println("Samples of level " + level
+						+ " differ from the grid values");
+			}
+		}
+		if (evaluations != xvalues.length) {
+			passed = false;
+			System.out.println("Evaluated " + evaluations + " values, expected "
+					+ xvalues.length);
+		}
+		if (passed) {
+			System.out.println("Levels are valid, the first of "
+					+ sampler.getLevels() + " levels has " + sampler.size(0)
+					+ " samples");
+		}
+	}
+
+	/**
+	 * Tests the adaptive sampler on (/ 1 (- x pole)): the samples must be in
+	 * ascending order, within the budget, and broken by a NaN at the pole so
+	 * that no line is drawn across it.
+	 * 
+	 * @param pole
+	 *            Where the function has its asymptote
+	 * @param budget
+	 *            Maximum number of evaluations
+	 */
+	private void adaptiveSamplerTest(final double pole, int budget) {
+		System.out.println("Running adaptiveSamplerTest with the pole at "
+				+ pole + " and a budget of " + budget);
+		boolean passed = true;
+		try {
+			AdaptiveSampler sampler = new AdaptiveSampler(-5, 5, -5, 5, 800,
+					500, AdaptiveSampler.DEFAULT_TOLERANCE, budget,
+					Transform.IDENTITY);
+			AdaptiveSampler.Result result = sampler
+					.sample(new AdaptiveSampler.Function() {
+						@Override
+						public double[][] evaluate(double[] xvalues) {
+							double[] yvalues = new double[xvalues.length];
+							for (int i = 0; i < xvalues.length; i++) {
+								yvalues[i] = 1 / (xvalues[i] - pole);
+							}
+							return new double[][] { yvalues };
+						}
+					});
+			double[] xvalues = result.getX();
+			double[] yvalues = result.getY()[0];
+
+			if (result.getEvaluations() > budget) {
+				passed = false;
+				System.out.println("Used " + result.getEvaluations()
+						+ " evaluations");
+			}
+			int crossings = 0;
+			for (int i = 1; i < xvalues.length; i++) {
+				if (xvalues[i] <= xvalues[i - 1]) {
+					passed = false;
+					System.out.println("Samples not ascending at index " + i);
+					break;
+				}
+				if (xvalues[i - 1] < pole && xvalues[i] > pole
+						&& !Double.isNaN(yvalues[i - 1])
+						&& !Double.isNaN(yvalues[i])) {
+					crossings++;
+				}
+			}
+			if (crossings > 0) {
+				passed = false;
+				System.out.println("A line is drawn across the pole");
+			}
+			if (passed) {
+				System.out.println("Sampled with " + result.getEvaluations()
+						+ " evaluations and broken at the pole");
+			}
+		} catch (Throwable e) {
+			System.out.println("Error in adaptiveSamplerTest");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Tests that M4 decimation of a dense, fast oscillating series keeps at
+	 * most four points per pixel column, and keeps the first, last, smallest
+	 * and largest value of every column.
 	 * 
 	 * @param datapoints
+	 *            No. of datapoints of the series
+	 * @param columns
+	 *            No. of pixel columns
+	 */
+	private void m4DecimatorTest(int datapoints, int columns) {
+		System.out.println("Running m4DecimatorTest for " + datapoints
+				+ " datapoints on " + columns + " columns");
+		double[] x = Grid.uniform(datapoints, -5, 5).toArray();
+		double[] y = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			y[i] = Math.sin(50 * x[i]) + x[i] / 10;
+		}
+		M4Decimator decimator = new M4Decimator(-5, 5, columns);
+		double[][] decimated = decimator.decimate(x, y);
+		boolean passed = true;
+
+		if (decimated[0].length > M4Decimator.POINTS_PER_COLUMN
+				* (columns + 1)) {
+			passed = false;
+			System.out.println("Kept " + decimated[0].length + " points");
+		}
+		double[] min = new double[columns + 1];
+		double[] max = new double[columns + 1];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		for (int i = 0; i < x.length; i++) {
+			int column = (int) Math.floor((x[i] + 5) * (columns / 10.0));
+			min[column] = Math.min(min[column], y[i]);
+			max[column] = Math.max(max[column], y[i]);
+		}
+		for (int i = 0; i < decimated[0].length; i++) {
+			int column = (int) Math.floor((decimated[0][i] + 5)
+					* (columns / 10.0));
+			min[column] = min[column] == decimated[1][i] ? Double.NaN
+					: min[column];
+			max[column] = max[column] == decimated[1][i] ? Double.NaN
+					: max[column];
+		}
+		for (int column = 0; column <= columns; column++) {
+			if (!Double.isNaN(min[column]) && !Double.isInfinite(min[column])
+					|| !Double.isNaN(max[column])
+					&& !Double.isInfinite(max[column])) {
+				passed = false;
+				System.out.println("Extremes of column " + column
+						+ " not kept");
+				break;
+			}
+		}
+		if (decimated[0][0] != x[0]
+				|| decimated[0][decimated[0].length - 1] != x[x.length - 1]) {
+			passed = false;
+			System.out.println("First or last point not kept");
+		}
+		if (passed) {
+			System.out.println("Kept " + decimated[0].length + " of "
+					+ x.length + " points with the extremes of every column");
+		}
+	}
+
+	/**
+	 * Tests that a TileCache evaluates nothing when a view is revisited or
+	 * zoomed back out of, and only the newly shown range when it is panned,
+	 * and that every returned sample is the function's value.
+	 * 
+	 * @param datapoints
+	 *            No. of datapoints of the view
+	 */
+	private void tileCacheTest(int datapoints) {
+		System.out.println("Running tileCacheTest for " + datapoints
+				+ " datapoints");
+		TileCache cache = new TileCache();
+		AdaptiveSampler.Function square = new AdaptiveSampler.Function() {
+			@Override
+			public double[][] evaluate(double[] xvalues) {
+				double[] yvalues = new double[xvalues.length];
+				for (int i = 0; i < xvalues.length; i++) {
+					yvalues[i] = xvalues[i] * xvalues[i];
+				}
+				return new double[][] { yvalues };
+			}
+		};
+		try {
+			AdaptiveSampler.Result first = cache.sample("(* x x)", 0, -5, 5,
+					datapoints, square);
+			AdaptiveSampler.Result zoomed = cache.sample("(* x x)", 0, -2.5,
+					2.5, datapoints, square);
+			AdaptiveSampler.Result panned = cache.sample("(* x x)", 0, 0, 10,
+					datapoints, square);
+			AdaptiveSampler.Result back = cache.sample("(*  x x)", 0, -5, 5,
+					datapoints, square);
+			AdaptiveSampler.Result out = cache.sample("(* x x)", 0, -1, 1,
+					datapoints / 4, square);
+			boolean passed = true;
+
+			if (first.getEvaluations() == 0
+					|| panned.getEvaluations() > first.getEvaluations() / 2
+							+ 2 * TileCache.TILE_SAMPLES
+					|| back.getEvaluations() != 0 || out.getEvaluations() != 0) {
+				passed = false;
+				System.out.println("Evaluated " + first.getEvaluations()
+						+ ", " + panned.getEvaluations() + ", "
+						+ back.getEvaluations() + " and "
+						+ out.getEvaluations() + " samples");
+			}
+			AdaptiveSampler.Result[] results = { first, zoomed, panned, back,
+					out };
+			for (AdaptiveSampler.Result result : results) {
+				double[] x = result.getX();
+				for (int i = 0; i < x.length; i++) {
+					if (result.getY()[0][i] != x[i] * x[i]
+							|| i > 0 && x[i] <= x[i - 1]) {
+						passed = false;
+						System.out.println("Wrong sample at x = " + x[i]);
+						break;
+					}
+				}
+			}
+			// zooming in to the next level evaluates every other sample of
+			// the tiles, or the view's samples and up to two partly shown
+			// tiles
+			if (zoomed.getX().length <= datapoints
+					|| zoomed.getEvaluations() > zoomed.getX().length / 2 + 1
+							+ TileCache.TILE_SAMPLES) {
+				passed = false;
+				System.out.println("Zooming in gave " + zoomed.getX().length
+						+ " samples with " + zoomed.getEvaluations()
+						+ " evaluations");
+			}
+			if (passed) {
+				System.out.println("Evaluated " + first.getEvaluations()
+						+ " samples, " + zoomed.getEvaluations()
+						+ " when zooming in, " + panned.getEvaluations()
+						+ " when panning and none when going back, "
+						+ cache);
+			}
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Tests that a Schemer takes series it has evaluated from its SeriesCache,
+	 * so re-evaluating evaluates nothing and showing a derivative evaluates
+	 * only that derivative, and that the cache evicts series to stay under its
+	 * byte bound.
+	 * 
+	 * @param datapoints
+	 *            No. of datapoints of the grid
+	 */
+	private void seriesCacheTest(int datapoints) {
+		System.out.println("Running seriesCacheTest for " + datapoints
+				+ " datapoints");
+		try {
+			boolean passed = true;
+			Schemer scm = new Schemer();
+			SeriesCache cache = scm.getSeriesCache();
+			Grid grid = Grid.uniform(datapoints, -5, 5);
+			String[] functions = { "(* x x)", "(sin x)" };
+			for (int i = 0; i < functions.length; i++) {
+				scm.registerFunction(functions[i], "f" + i);
+			}
+
+			long[] misses = new long[3];
+			long[] hits = new long[3];
+			for (int step = 0; step < 3; step++) {
+				long missesBefore = cache.getMisses();
+				long hitsBefore = cache.getHits();
+				for (int i = 0; i < functions.length; i++) {
+					// the last step shows the first derivative of f1
+					int order = step == 2 && i == 1 ? 1 : 0;
+					double[][] values = scm.evaluateDerivatives("f" + i,
+							functions[i], grid, order, Transform.IDENTITY);
+					double x = grid.get(datapoints / 3);
+					double expected = i == 0 ? x * x : order == 0 ? Math
+							.sin(x) : Math.cos(x);
+					if (!(Math.abs(values[order][datapoints / 3] - expected) <= 1e-9)) {
+						passed = false;
+						System.out.println("f" + i + " of order " + order
+								+ " gave " + values[order][datapoints / 3]
+								+ " at x = " + x + ", expected " + expected);
+					}
+				}
+				misses[step] = cache.getMisses() - missesBefore;
+				hits[step] = cache.getHits() - hitsBefore;
+			}
+
+			// the first evaluation misses both functions, the second hits
+			// both, and toggling the derivative of f1 hits f0 and f1 and
+			// misses only the derivative
+			if (misses[0] != 2 || hits[0] != 0 || misses[1] != 0
+					|| hits[1] != 2 || misses[2] != 1 || hits[2] != 2) {
+				passed = false;
+				System.out.println("Expected 2, 0 and 1 misses and 0, 2 and 2"
+						+ " hits, got " + Arrays.toString(misses) + " and "
+						+ Arrays.toString(hits));
+			}
+
+			// room for a little more than three series of the grid
+			long maxBytes = 3L * 8 * datapoints + 1024;
+			SeriesCache small = new SeriesCache(maxBytes);
+			for (int k = 0; k < 10; k++) {
+				small.put(new SeriesCache.Key("(* x x)", grid, k),
+						new double[datapoints]);
+				if (small.getBytes() > maxBytes) {
+					passed = false;
+					System.out.println("Holds " + small.getBytes()
+							+ " bytes, more than " + maxBytes);
+				}
+			}
+			if (small.getSize() != 3
+					|| small.contains(new SeriesCache.Key("(* x x)", grid, 0))
+					|| !small.contains(new SeriesCache.Key("(* x x)", grid, 9))) {
+				passed = false;
+				System.out.println("Kept the wrong series: " + small);
+			}
+
+			if (passed) {
+				System.out.println("Re-evaluating hit the cache, showing a "
+						+ "derivative evaluated only it, " + cache);
+			}
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Tests that changing a function changes the fingerprint of the functions
+	 * calling it, so they are evaluated again, and that registering a
+	 * function with the same text again evaluates nothing.
+	 * 
+	 * @param datapoints
+	 *            No. of datapoints of the grid
+	 */
+	private void fingerprintTest(int datapoints) {
+		System.out.println("Running fingerprintTest for " + datapoints
+				+ " datapoints");
+		try {
+			boolean passed = true;
+			FunctionRegistry registry = new FunctionRegistry();
+			registry.update("f0", "(* x x)");
+			registry.update("f1", "(* 2 (f0 x))");
+			String before = registry.fingerprint("f1");
+			if (registry.update("f0", "(*  x x)")
+					|| !before.equals(registry.fingerprint("f1"))) {
+				passed = false;
+				System.out.println("Changing whitespace changed the "
+						+ "fingerprint of f1 to " + registry.fingerprint("f1"));
+			}
+			if (!registry.update("f0", "(* x x x)")
+					|| before.equals(registry.fingerprint("f1"))) {
+				passed = false;
+				System.out.println("Changing f0 kept the fingerprint of f1 "
+						+ before);
+			}
+
+			// every function calls the two before it, so the texts of the
+			// functions they depend on would double with every function
+			FunctionRegistry chain = new FunctionRegistry();
+			chain.update("f0", "(* x x)");
+			chain.update("f1", "(+ (f0 x) 1)");
+			for (int i = 2; i < 100; i++) {
+				chain.update("f" + i, "(+ (f" + (i - 1) + " x) (f" + (i - 2)
+						+ " x))");
+			}
+			long start = System.nanoTime();
+			String last = chain.fingerprint("f99");
+			chain.update("f0", "(* x x x)");
+			String changed = chain.fingerprint("f99");
+			long time = (System.nanoTime() - start) / 1000000;
+			if (last.length() > 64 || last.equals(changed) || time > 1000) {
+				passed = false;
+				System.out.println("The fingerprint of f99 has "
+						+ last.length() + " characters and took " + time
+						+ " ms, changing f0 changed it: "
+						+ !last.equals(changed));
+			}
+
+			Schemer scm = new Schemer();
+			SeriesCache cache = scm.getSeriesCache();
+			Grid grid = Grid.uniform(datapoints, -5, 5);
+			String[] functions = { "(* x x)", "(* 2 (f0 x))" };
+			for (int i = 0; i < functions.length; i++) {
+				scm.registerFunction(functions[i], "f" + i);
+				scm.evaluateDerivatives("f" + i, functions[i], grid, 0,
+						Transform.IDENTITY);
+			}
+
+			functions[0] = "(* x x x)";
+			long[] misses = new long[2];
+			for (int step = 0; step < 2; step++) {
+				// the first step has f0 changed, the second repeats it
+				for (int i = 0; i < functions.length; i++) {
+					long missesBefore = cache.getMisses();
+					scm.registerFunction(functions[i], "f" + i);
+					double[] values = scm.evaluateDerivatives("f" + i,
+							functions[i], grid, 0, Transform.IDENTITY)[0];
+					long evaluated = cache.getMisses() - missesBefore;
+					if (step == 0 && evaluated == 0) {
+						passed = false;
+						System.out.println("f" + i + " was not evaluated "
+								+ "again after f0 changed");
+					}
+					misses[step] += evaluated;
+
+					double x = grid.get(datapoints / 3);
+					double expected = (i + 1) * x * x * x;
+					if (!(Math.abs(values[datapoints / 3] - expected) <= 1e-9)) {
+						passed = false;
+						System.out.println("f" + i + " gave "
+								+ values[datapoints / 3] + " at x = " + x
+								+ ", expected " + expected);
+					}
+				}
+			}
+			if (misses[1] != 0) {
+				passed = false;
+				System.out.println("Registering the same functions again "
+						+ "evaluated " + misses[1] + " series");
+			}
+
+			if (passed) {
+				System.out.println("Changing f0 evaluated f0 and f1 again, "
+						+ "registering them again evaluated nothing");
+			}
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Tests that the palette gives every function its own colour, that the
+	 * hues of neighbouring functions are far apart, and that derivatives are
+	 * coloured differently from their functions.
+	 * 
+	 * @param functions
+	 *            No. of functions
+	 */
+	private void paletteTest(int functions) {
+		System.out.println("Running paletteTest for " + functions
+				+ " functions");
+		Set<Color> colours = new HashSet<Color>();
+		double closest = 1;
+		boolean passed = true;
+		for (int i = 0; i < functions; i++) {
+			Color colour = Palette.colour(i);
+			colours.add(colour);
+			if (colour.equals(Palette.derivativeColour(i))) {
+				passed = false;
+				System.out.println("Derivative of function " + i
+						+ " has the same colour");
+			}
+			if (i > 0) {
+				float[] hsb = Color.RGBtoHSB(colour.getRed(),
+						colour.getGreen(), colour.getBlue(), null);
+				Color before = Palette.colour(i - 1);
+				float[] hsbBefore = Color.RGBtoHSB(before.getRed(),
+						before.getGreen(), before.getBlue(), null);
+				double distance = Math.abs(hsb[0] - hsbBefore[0]);
+				closest = Math.min(closest, Math.min(distance, 1 - distance));
+			}
+		}
+		if (colours.size() != functions || closest < 0.3) {
+			passed = false;
+			System.out.println(colours.size() + " different colours, "
+					+ "neighbouring hues " + closest + " apart");
+		}
+		if (passed) {
+			System.out.println("All " + functions + " colours differ, "
+					+ "neighbouring hues at least " + closest + " apart");
+		}
+	}
+
+	/**
+	 * Tests reading a job file for the headless engine, and that invalid
+	 * lines are reported with their line number.
+	 */
+	private void jobTest() {
+		System.out.println("Running jobTest");
+		String text = "# a job\n" + "function = (* x x)\n"
+				+ "function = (+ (f0 x) 1)\n" + "xmin = 1\n" + "xmax = 100\n"
+				+ "datapoints = 50\n" + "spacing = logarithmic\n"
+				+ "derivatives = 2\n" + "integrate = 1 2\n"
+				+ "method = rectangle\n";
+		boolean passed = true;
+		try {
+			Job job = Job.read(new BufferedReader(new StringReader(text)));
+			Grid grid = job.createGrid();
+			if (!job.getFunctions().equals(
+					Arrays.asList("(* x x)", "(+ (f0 x) 1)"))
+					|| !grid.equals(Grid.logarithmic(50, 1, 100))
+					|| job.getDerivatives() != 2 || !job.isIntegrated()
+					|| job.getA() != 1 || job.getB() != 2
+					|| job.getMethod() != Quadrature.Method.RECTANGLE) {
+				passed = false;
+				System.out.println("Job read wrong: " + job.getFunctions()
+						+ " over " + grid);
+			}
+		} catch (IOException e) {
+			passed = false;
+			e.printStackTrace();
+		}
+
+		try {
+			Job.read(new BufferedReader(new StringReader(text
+					+ "colour = blue\n")));
+			passed = false;
+			System.out.println("Unknown setting was accepted");
+		} catch (IllegalArgumentException e) {
+			if (!e.getMessage().startsWith("Line 11:")) {
+				passed = false;
+				System.out.println("Wrong error: " + e.getMessage());
+			}
+		} catch (IOException e) {
+			passed = false;
+			e.printStackTrace();
+		}
+
+		if (passed) {
+			System.out.println("Job read correctly");
+		}
+	}
+
+	/**
+	 * Tests that an Engine evaluates and integrates the valid functions of a
+	 * job and their derivatives, including a function calling another one,
+	 * and reports the functions that cannot be registered or evaluated in
+	 * their results without affecting the functions after them. A second job
+	 * on the same Engine must not see the functions of the first job it does
+	 * not have itself.
+	 */
+	private void engineTest() {
+		System.out.println("Running engineTest");
+		Job job = new Job();
+		job.addFunction("(* x x)");
+		job.addFunction("(* x");
+		job.addFunction("(car x)");
+		job.addFunction("(+ (f0 x) 1)");
+		job.setDerivatives(2);
+		job.setIntegration(-1, 1);
+		boolean passed = true;
+		try {
+			Engine engine = new Engine();
+			List<FunctionResult> results = engine.run(job);
+			double[] x = job.createGrid().toArray();
+			String[] errors = { null, "Invalid Scheme function",
+					"Cannot be evaluated", null };
+			// f3 is not compiled, so Kawa approximates its derivatives with
+			// forward differences of step 0.001
+			double tolerance = 1e-2;
+			for (int i = 0; i < Math.min(results.size(), errors.length); i++) {
+				FunctionResult result = results.get(i);
+				if (errors[i] != null ? !errors[i].equals(result.getError())
+						: !result.isValid()) {
+					passed = false;
+					System.out.println(result.getId() + " has error "
+							+ result.getError() + ", expected " + errors[i]);
+					continue;
+				}
+				if (!result.isValid()) {
+					continue;
+				}
+				if (result.getOrder() != 2
+						|| !Arrays.equals(result.getX(), x)) {
+					passed = false;
+					System.out.println(result.getId() + " has order "
+							+ result.getOrder() + " over "
+							+ result.getX().length + " x values");
+					continue;
+				}
+				double constant = i == 3 ? 1 : 0;
+				for (int j = 0; j < x.length; j++) {
+					double[] expected = { x[j] * x[j] + constant, 2 * x[j], 2 };
+					for (int k = 0; k < expected.length; k++) {
+						double value = result.getValues(k)[j];
+						if (!(Math.abs(value - expected[k]) <= tolerance)) {
+							passed = false;
+							System.out.println(result.getId() + " derivative "
+									+ k + " at x = " + x[j] + " is "
+									+ value + ", expected "
+									+ expected[k]);
+						}
+					}
+				}
+				double[] integrals = { 2.0 / 3 + 2 * constant, 0 };
+				for (int k = 0; k < integrals.length; k++) {
+					Quadrature.Result integral = result.getIntegral(k);
+					if (integral == null
+							|| !(Math.abs(integral.getValue()
+									- integrals[k]) <= tolerance)) {
+						passed = false;
+						System.out.println(result.getId() + " integral of "
+								+ "derivative " + k + " is " + integral
+								+ ", expected " + integrals[k]);
+					}
+				}
+			}
+			if (results.size() != errors.length) {
+				passed = false;
+				System.out.println("Got " + results.size() + " results for "
+						+ errors.length + " functions");
+			}
+
+			Job next = new Job();
+			next.addFunction("(* x");
+			next.addFunction("(+ (f0 x) (f3 x))");
+			next.addFunction("(f1 x)");
+			for (FunctionResult result : engine.run(next)) {
+				if (result.isValid()) {
+					passed = false;
+					System.out.println(result.getId() + " of the second job "
+							+ "used a function of the first job");
+				}
+			}
+		} catch (Throwable e) {
+			passed = false;
+			e.printStackTrace();
+		}
+		if (passed) {
+			System.out.println("Valid functions were evaluated and integrated, "
+					+ "failing functions were reported");
+		}
+	}
+
+	/**
+	 * Tests writing series to a binary file and mapping them back, as doubles
+	 * and as floats.
+	 * 
+	 * @param datapoints
+	 *            No. of intervals of the series
+	 */
+	private void seriesFileTest(int datapoints) {
+		System.out.println("Running seriesFileTest for " + datapoints
+				+ " datapoints");
+		double[] x = Grid.uniform(datapoints, -5, 5).toArray();
+		double[][] values = new double[2][x.length];
+		for (int i = 0; i < x.length; i++) {
+			values[0][i] = Math.sin(x[i]);
+			values[1][i] = Math.cos(x[i]);
+		}
+		SeriesWriter writer = new SeriesWriter("uniform", false);
+		writer.add("f0", "(sin x)", x, values);
+		writer.add("f1", "(\u00e6 x)", new double[] { 1, 2 },
+				new double[][] { { 3, 4 } });
+
+		boolean passed = true;
+		for (SeriesWriter.Precision precision : SeriesWriter.Precision
+				.values()) {
+			try {
+				File file = File.createTempFile("series", ".bin");
+				file.deleteOnExit();
+				long start = System.nanoTime();
+				writer.write(file, precision);
+				long written = System.nanoTime();
+				SeriesReader reader = SeriesReader.map(file);
+				double[] cosines = reader.toArray(0, 2);
+				long read = System.nanoTime();
+
+				double tolerance = precision == SeriesWriter.Precision.FLOAT
+						? 1e-6 : 0;
+				double error = 0;
+				for (int i = 0; i < x.length; i++) {
+					error = Math.max(error,
+							Math.abs(cosines[i] - values[1][i]));
+				}
+				if (reader.getSeriesCount() != 2
+						|| reader.getPoints(0) != x.length
+						|| reader.getColumns(0) != 3
+						|| !reader.getExpression(1).equals("(\u00e6 x)")
+						|| reader.indexOf("f1") != 1
+						|| reader.toArray(1, 1)[1] != 4
+						|| reader.toArray(0, 0)[x.length - 1] != 5
+						|| error > tolerance) {
+					passed = false;
+					System.out.println(precision + " series read wrong, "
+							+ "largest error " + error);
+				}
+				System.out.println(precision + ": " + file.length()
+						+ " bytes written in " + (written - start) / 1000000
+						+ " ms and read in " + (read - written) / 1000000
+						+ " ms");
+			} catch (IOException e) {
+				passed = false;
+				e.printStackTrace();
+			}
+		}
+		if (passed) {
+			System.out.println("Series read back correctly");
+		}
+	}
+
+	/**
+	 * Tests the stages of the transform pipeline against straightforward
+	 * versions of them, and that transforming does not change the original
+	 * values.
+	 * 
+	 * @param radius
+	 *            Radius of the moving average to test
+	 */
+	private void transformTest(int radius) {
+		System.out.println("Running transformTest with radius " + radius);
+		double[] values = Grid.uniform(1000, -10, 10).toArray();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = Math.sin(values[i]) * values[i];
+		}
+		double[] original = values.clone();
+
+		double[] log = Transform.forScale(true).apply(values);
+		double[] smooth = Transform.movingAverage(radius).apply(values);
+		double[] normalized = Transform.clamp(-2, 2)
+				.then(Transform.normalize()).apply(values);
+
+		boolean equal = Arrays.equals(values, original);
+		for (int i = 0; i < values.length; i++) {
+			double sum = 0;
+			int count = 0;
+			for (int j = Math.max(0, i - radius); j <= Math.min(
+					values.length - 1, i + radius); j++) {
+				sum += values[j];
+				count++;
+			}
+			double clamped = Math.max(-2, Math.min(2, values[i]));
+			if (Math.abs(log[i] - Math.log10(Math.abs(values[i]))) > 1e-12
+					|| Math.abs(smooth[i] - sum / count) > 1e-9
+					|| Math.abs(normalized[i] - (clamped + 2) / 4) > 1e-12) {
+				equal = false;
+				System.out.println("Transforms at index " + i
+						+ " not equivalent.\nLog: " + log[i] + " Smooth: "
+						+ smooth[i] + " Normalized: " + normalized[i]);
+			}
+		}
+		if (equal) {
+			System.out.println("Transforms are equivalent");
+		}
+	}
+
+	/**
+	 * Tests that a grid is in ascending order, starts at xmin, ends at xmax
+	 * and streams the same values in chunks as it returns in one array.
+	 * 
+	 * @param grid
+	 *            The grid to test
+	 */
+	private void gridTest(Grid grid) {
+		System.out.println("Running gridTest for " + grid.getDatapoints()
+				+ " datapoints and with xmin = " + grid.getXMin()
+				+ ", xmax = " + grid.getXMax());
+		boolean passed = true;
+		double[] xvalues = grid.toArray();
+
+		if (xvalues.length != grid.size()) {
+			passed = false;
+			System.out.println("Grid length is " + xvalues.length
+					+ ", expected " + grid.size());
+		}
+		if (xvalues[0] != grid.getXMin()
+				|| xvalues[xvalues.length - 1] != grid.getXMax()) {
+			passed = false;
+			System.out.println("Grid does not span from xmin to xmax: "
+					+ xvalues[0] + " - " + xvalues[xvalues.length - 1]);
+		}
+		for (int i = 1; i < xvalues.length; i++) {
+			if (xvalues[i] <= xvalues[i - 1]) {
+				passed = false;
+				System.out.println("Grid not ascending at index " + i);
+				break;
+			}
+		}
+
+		int i = 0;
+		Iterator<double[]> chunks = grid.chunks(97);
+		while (chunks.hasNext()) {
+			for (double x : chunks.next()) {
+				if (x != xvalues[i++]) {
+					passed = false;
+					System.out.println("Chunked value at index " + (i - 1)
+							+ " differs from the array value");
+				}
+			}
+		}
+		if (i != xvalues.length) {
+			passed = false;
+			System.out.println("Chunks contain " + i + " values, expected "
+					+ xvalues.length);
+		}
+
+		if (passed) {
+			System.out.println("Grid is valid");
+		}
+	}
+
+	/**
+	 * Tests that only the latest of many jobs submitted on the same channel of
+	 * an evaluation service is published, while a job on another channel is
+	 * not cancelled by them.
+	 * 
+	 * @param jobs
+	 *            No. of jobs to submit
+	 */
+	private void evaluationServiceTest(final int jobs) {
+		System.out.println("Running evaluationServiceTest for " + jobs
+				+ " jobs");
+		final EvaluationService service = new EvaluationService(new Schemer());
+		final List<Integer> published = new ArrayList<Integer>();
+		final CountDownLatch done = new CountDownLatch(1);
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < jobs; i++) {
+						final int job = i;
+						service.submit("plot",
+								new EvaluationService.Job<Integer>() {
+									@Override
+									protected Integer evaluate(Schemer scm)
+											throws Throwable {
+										scm.registerFunction("(* x " + job
+												+ ")", "f");
+										return scm.invokeDouble("f", 1.0) == job ? job
+												: -1;
+									}
+
+									@Override
+									protected void publish(Integer result) {
+										published.add(result);
+									}
+								});
+					}
+					service.submit("other", new EvaluationService.Job<Void>() {
+						@Override
+						protected Void evaluate(Schemer scm) {
+							return null;
+						}
+
+						@Override
+						protected void publish(Void result) {
+							done.countDown();
+						}
+					});
+				}
+			});
+			if (!done.await(10, TimeUnit.SECONDS)) {
+				System.out.println("The job on the other channel was not "
+						+ "published");
+			} else if (published.size() != 1
+					|| published.get(0) != jobs - 1) {
+				System.out.println("Published " + published + ", expected ["
+						+ (jobs - 1) + "]");
+			} else {
+				System.out.println("Only the latest job was published");
+			}
+		} catch (Exception e) {
+			System.out.println("Error in evaluationServiceTest");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * The original Scheme version of Schemer.generateXPoints(). The Scheme
+	 * list is built in reverse, so the values are reversed before they are
+	 * returned.
+	 * 
+	 * @param scm
+	 *            Schemer whose environment is used
+	 * @param datapoints
 	 *            No. of datapoints used.
 	 * @param xmax
 	 *            Maximum X value
@@ -184,20 +1603,31 @@ public class Tester {
 	 *            Minimum X values
 	 * @return The generated X values.
 	 */
-	private double[] generateXPoints(int datapoints, double xmax, double xmin) {
+	private double[] generateXPoints(Schemer scm, int datapoints, double xmax,
+			double xmin) {
+
+		// (define interval (/ (- xmax xmin) datapoints))
+		String intervalExpression = "(define interval (/ (- " + xmax + " "
+				+ xmin + ") " + datapoints + "))";
+
+		String makelistExpression = "(define makelist-iter "
+				+ "(lambda (lst n i max) " + "(if (>= n max)  " + "lst "
+				+ "(makelist-iter (cons (+ n i) lst) (+ n i) i max)))) "
+				+ "(define makelist " + "(lambda (min max i) "
+				+ "(makelist-iter (list min) min i max)))";
 
-		double size = xmax - xmin;
+		Scheme.eval(intervalExpression, scm.getEnvironment());
+		Scheme.eval(makelistExpression, scm.getEnvironment());
+		// (makelist xmin xmax interval)
+		String makelistEval = "(makelist " + xmin + " " + xmax + " interval)";
+		Pair result = (Pair) Scheme.eval(makelistEval, scm.getEnvironment());
+		Object[] arr = result.toArray();
 
-		double interval = size / datapoints;
-		double[] xvalues = new double[datapoints + 1];
-		int j = datapoints;
-		for (int i = 0; i < datapoints + 1; i++) {
-			double newx = xmin + interval * i;
-			// arrays are reversed due to scheme peculiarities, lets reverse the
-			// javaArray
-			xvalues[j--] = newx;
+		double[] xvalues = new double[arr.length];
+		int j = arr.length - 1;
+		for (int i = 0; i < arr.length; i++) {
+			xvalues[j--] = ((Number) arr[i]).doubleValue();
 		}
-		//
 
 		return xvalues;
 	}
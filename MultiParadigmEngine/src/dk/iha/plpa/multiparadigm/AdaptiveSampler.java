@@ -0,0 +1,436 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Samples a function adaptively for plotting. Starting from a few equally
+ * spaced samples, intervals are split in halves where the curve bends: where
+ * the sample in the middle of an interval is further than a tolerance from the
+ * straight line between its ends, or the curve turns sharply, measured in
+ * pixels of the plot. Flat parts of the curve get few samples and sharp
+ * features many, so the curve looks smooth with far fewer evaluations than a
+ * uniform grid.
+ *
+ * Intervals that are still bent when they are too narrow to split any
+ * further, like at the asymptote of (/ 1 x) or the jump of a step, are
+ * discontinuities. A NaN sample is put in them, so no line is drawn across.
+ *
+ * The samples of each round of splitting are evaluated in one batch, and the
+ * number of evaluations never exceeds the budget. When there are more
+ * intervals to split than the budget allows, the most bent ones are split.
+ * A budget too small to narrow an interval down to a discontinuity leaves the
+ * discontinuity unbroken.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public final class AdaptiveSampler {
+
+	/**
+	 * How the x values of a plot are chosen.
+	 */
+	public enum Mode {
+		UNIFORM("Uniform"), ADAPTIVE("Adaptive"), PIXEL("Per pixel");
+
+		private final String name;
+
+		private Mode(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * Evaluates a function, and possibly its derivatives, at many x values at
+	 * once.
+	 */
+	public interface Function {
+		/**
+		 * @param xvalues
+		 *            The x values
+		 * @return Array of series evaluated at the x values, like the function
+		 *         and its derivative, or null to stop sampling.
+		 * @throws Throwable
+		 *             If the function cannot be evaluated.
+		 */
+		double[][] evaluate(double[] xvalues) throws Throwable;
+	}
+
+	/**
+	 * The samples of a function.
+	 */
+	public static final class Result {
+		private final double[] x;
+		private final double[][] y;
+		private final int evaluations;
+
+		Result(double[] x, double[][] y, int evaluations) {
+			this.x = x;
+			this.y = y;
+			this.evaluations = evaluations;
+		}
+
+		/**
+		 * @return The x values in ascending order.
+		 */
+		public double[] getX() {
+			return x;
+		}
+
+		/**
+		 * @return The series at the x values, NaN where a series is
+		 *         discontinuous.
+		 */
+		public double[][] getY() {
+			return y;
+		}
+
+		/**
+		 * @return Number of x values the function was evaluated at.
+		 */
+		public int getEvaluations() {
+			return evaluations;
+		}
+	}
+
+	/**
+	 * Number of equally spaced samples the sampling starts with.
+	 */
+	public static final int INITIAL_SAMPLES = 33;
+
+	/**
+	 * Distance in pixels the curve may be from a straight line.
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.5;
+
+	/**
+	 * Number of evaluations a function may use when no more are asked for.
+	 */
+	public static final int DEFAULT_BUDGET = 2000;
+
+	// angle in radians the curve may turn at a sample before it is refined,
+	// for segments longer than a pixel
+	private static final double MAX_ANGLE = Math.toRadians(10);
+
+	// intervals narrower than this many pixels are not split
+	private static final double MIN_WIDTH = 1.0 / 64;
+
+	// an interval that cannot be split is a discontinuity if the curve jumps
+	// more than this many pixels across it
+	private static final double MIN_JUMP = 4;
+
+	private final double xmin;
+	private final double xmax;
+	private final double xScale;
+	private final double yScale;
+	private final double bottom;
+	private final double top;
+	private final double tolerance;
+	private final int budget;
+	private final Transform scale;
+	private final double[] value = new double[1];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param ymin
+	 *            Minimum Y value shown
+	 * @param ymax
+	 *            Maximum Y value shown
+	 * @param width
+	 *            Width of the plot in pixels
+	 * @param height
+	 *            Height of the plot in pixels
+	 * @param tolerance
+	 *            Distance in pixels the curve may be from a straight line
+	 * @param budget
+	 *            Maximum number of evaluations
+	 * @param scale
+	 *            Transform of each value to the plotted scale, like the
+	 *            logarithm, used when measuring the curve
+	 */
+	public AdaptiveSampler(double xmin, double xmax, double ymin,
+			double ymax, int width, int height, double tolerance, int budget,
+			Transform scale) {
+		if (!(xmin < xmax) || !(ymin < ymax)) {
+			throw new IllegalArgumentException("Empty span [" + xmin + ", "
+					+ xmax + "] x [" + ymin + ", " + ymax + "]");
+		}
+		if (budget < 2) {
+			throw new IllegalArgumentException(
+					"The budget must allow at least two evaluations, got "
+							+ budget);
+		}
+		this.xmin = xmin;
+		this.xmax = xmax;
+		this.xScale = Math.max(width, 1) / (xmax - xmin);
+		this.yScale = Math.max(height, 1) / (ymax - ymin);
+		this.bottom = ymin * yScale;
+		this.top = ymax * yScale;
+		this.tolerance = tolerance;
+		this.budget = budget;
+		this.scale = scale;
+	}
+
+	/**
+	 * Samples a function.
+	 *
+	 * @param function
+	 *            The function
+	 * @return The samples, or null if the function stopped the sampling.
+	 * @throws Throwable
+	 *             If the function cannot be evaluated.
+	 */
+	public Result sample(Function function) throws Throwable {
+		int initial = Math.min(INITIAL_SAMPLES, budget);
+		double[] x = Grid.uniform(initial - 1, xmin, xmax).toArray();
+		double[][] y = function.evaluate(x);
+		if (y == null) {
+			return null;
+		}
+		int evaluations = initial;
+
+		// intervals to split in the next round, by index of their left end,
+		// and how bent each interval is
+		int[] candidates = new int[initial - 1];
+		double[] bends = new double[initial - 1];
+		for (int i = 0; i < candidates.length; i++) {
+			candidates[i] = i;
+			bends[i] = Double.POSITIVE_INFINITY;
+		}
+		int candidateCount = candidates.length;
+
+		// intervals that could not be split although they are bent
+		boolean[] unsplit = new boolean[x.length - 1];
+
+		while (candidateCount > 0 && evaluations < budget) {
+			int count = Math.min(candidateCount, budget - evaluations);
+			int[] split = mostBent(candidates, bends, candidateCount, count);
+
+			double[] middles = new double[count];
+			for (int j = 0; j < count; j++) {
+				middles[j] = (x[split[j]] + x[split[j] + 1]) / 2;
+			}
+			double[][] middleValues = function.evaluate(middles);
+			if (middleValues == null) {
+				return null;
+			}
+			evaluations += count;
+
+			// merge the middles into the samples, the new indices of the
+			// halves of each split interval become the next candidates
+			double[] mergedX = new double[x.length + count];
+			double[][] mergedY = new double[y.length][mergedX.length];
+			boolean[] mergedUnsplit = new boolean[mergedX.length - 1];
+			int[] nextCandidates = new int[2 * count];
+			double[] nextBends = new double[2 * count];
+			int nextCount = 0;
+
+			int j = 0;
+			int m = 0;
+			for (int i = 0; i < x.length; i++) {
+				mergedX[m] = x[i];
+				for (int k = 0; k < y.length; k++) {
+					mergedY[k][m] = y[k][i];
+				}
+				if (j < count && split[j] == i) {
+					m++;
+					mergedX[m] = middles[j];
+					for (int k = 0; k < y.length; k++) {
+						mergedY[k][m] = middleValues[k][j];
+					}
+					double bend = bend(x[i], middles[j], x[i + 1], y, i,
+							middleValues, j);
+					if (bend > 0) {
+						if ((x[i + 1] - x[i]) / 2 * xScale > MIN_WIDTH) {
+							nextCandidates[nextCount] = m - 1;
+							nextBends[nextCount++] = bend;
+							nextCandidates[nextCount] = m;
+							nextBends[nextCount++] = bend;
+						} else {
+							mergedUnsplit[m - 1] = true;
+							mergedUnsplit[m] = true;
+						}
+					}
+					j++;
+				} else if (i < unsplit.length) {
+					mergedUnsplit[m] = unsplit[i];
+				}
+				m++;
+			}
+
+			x = mergedX;
+			y = mergedY;
+			unsplit = mergedUnsplit;
+			candidates = nextCandidates;
+			bends = nextBends;
+			candidateCount = nextCount;
+		}
+
+		return breakDiscontinuities(x, y, unsplit, evaluations);
+	}
+
+	/**
+	 * Picks the given number of the most bent candidates, in ascending order
+	 * of their index.
+	 */
+	private static int[] mostBent(int[] candidates, final double[] bends,
+			int candidateCount, int count) {
+		int[] split;
+		if (count == candidateCount) {
+			split = Arrays.copyOf(candidates, count);
+		} else {
+			Integer[] order = new Integer[candidateCount];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(bends[b], bends[a]);
+				}
+			});
+			split = new int[count];
+			for (int i = 0; i < count; i++) {
+				split[i] = candidates[order[i]];
+			}
+		}
+		Arrays.sort(split);
+		return split;
+	}
+
+	/**
+	 * Measures how bent the curve is over an interval split at its middle.
+	 *
+	 * @return How far the middle is from the line between the ends in pixels,
+	 *         for the most bent series, or 0 if the interval is straight
+	 *         enough.
+	 */
+	private double bend(double a, double middle, double b, double[][] y,
+			int i, double[][] middleValues, int j) {
+		double dx = (middle - a) * xScale;
+		double worst = 0;
+		for (int k = 0; k < y.length; k++) {
+			double ya = pixel(y[k][i]);
+			double ym = pixel(middleValues[k][j]);
+			double yb = pixel(y[k][i + 1]);
+			boolean finiteA = isFinite(ya);
+			boolean finiteM = isFinite(ym);
+			boolean finiteB = isFinite(yb);
+			if (!finiteA && !finiteM && !finiteB) {
+				continue;
+			}
+			if (!finiteA || !finiteM || !finiteB) {
+				// the edge of where the function is defined
+				worst = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			if (outside(ya, ym, yb)) {
+				continue;
+			}
+
+			double deviation = Math.abs(ym - (ya + yb) / 2);
+			double left = ym - ya;
+			double right = yb - ym;
+			double angle = Math.abs(Math.atan2(right, dx)
+					- Math.atan2(left, dx));
+			boolean longSegments = Math.hypot(dx, left) > 1
+					&& Math.hypot(dx, right) > 1;
+			if (deviation > tolerance || (angle > MAX_ANGLE && longSegments)) {
+				worst = Math.max(worst, Math.max(deviation, tolerance));
+			}
+		}
+		return worst;
+	}
+
+	/**
+	 * Puts a NaN sample in the middle of the intervals that could not be
+	 * split and where a series jumps, for the series that jump.
+	 */
+	private Result breakDiscontinuities(double[] x, double[][] y,
+			boolean[] unsplit, int evaluations) {
+		int breaks = 0;
+		for (int i = 0; i < unsplit.length; i++) {
+			if (unsplit[i] && jumps(y, i) != null) {
+				breaks++;
+			}
+		}
+		if (breaks == 0) {
+			return new Result(x, y, evaluations);
+		}
+
+		double[] brokenX = new double[x.length + breaks];
+		double[][] brokenY = new double[y.length][brokenX.length];
+		int m = 0;
+		for (int i = 0; i < x.length; i++) {
+			brokenX[m] = x[i];
+			for (int k = 0; k < y.length; k++) {
+				brokenY[k][m] = y[k][i];
+			}
+			m++;
+			boolean[] jumping = i < unsplit.length && unsplit[i] ? jumps(y, i)
+					: null;
+			if (jumping != null) {
+				brokenX[m] = (x[i] + x[i + 1]) / 2;
+				for (int k = 0; k < y.length; k++) {
+					brokenY[k][m] = jumping[k] ? Double.NaN
+							: (y[k][i] + y[k][i + 1]) / 2;
+				}
+				m++;
+			}
+		}
+		return new Result(brokenX, brokenY, evaluations);
+	}
+
+	/**
+	 * @return Which series jump across the interval starting at index i, or
+	 *         null if none of them do.
+	 */
+	private boolean[] jumps(double[][] y, int i) {
+		boolean[] jumping = null;
+		for (int k = 0; k < y.length; k++) {
+			double ya = pixel(y[k][i]);
+			double yb = pixel(y[k][i + 1]);
+			if (isFinite(ya) && isFinite(yb) && Math.abs(yb - ya) > MIN_JUMP
+					&& !outside(ya, yb, yb)) {
+				if (jumping == null) {
+					jumping = new boolean[y.length];
+				}
+				jumping[k] = true;
+			}
+		}
+		return jumping;
+	}
+
+	/**
+	 * @return true if the positions are all above or all below the plot, so
+	 *         the curve between them is not seen.
+	 */
+	private boolean outside(double ya, double ym, double yb) {
+		return (ya > top && ym > top && yb > top)
+				|| (ya < bottom && ym < bottom && yb < bottom);
+	}
+
+	/**
+	 * @return The vertical position of a value in pixels on the plotted
+	 *         scale, relative to the X axis.
+	 */
+	private double pixel(double y) {
+		value[0] = y;
+		scale.applyInPlace(value, 0, 1);
+		return value[0] * yScale;
+	}
+
+	private static boolean isFinite(double value) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+}
@@ -0,0 +1,204 @@
+package dk.iha.plpa.multiparadigm;
+
+import dk.iha.plpa.multiparadigm.Expr.Binary;
+import dk.iha.plpa.multiparadigm.Expr.Constant;
+import dk.iha.plpa.multiparadigm.Expr.Function;
+import dk.iha.plpa.multiparadigm.Expr.Operator;
+import dk.iha.plpa.multiparadigm.Expr.Unary;
+import dk.iha.plpa.multiparadigm.Expr.Variable;
+
+/**
+ * Differentiates compiled expressions symbolically, using the sum, product,
+ * quotient and chain rules. The resulting expression is simplified by folding
+ * constants and removing additions of zero and multiplications by zero and
+ * one, so it is an ordinary Expr that is evaluated as fast as the function
+ * itself. Every function in the compiled subset can be differentiated, so
+ * only functions that cannot be compiled fall back to the finite difference
+ * approximation in Scheme.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class Differentiator {
+
+	private static final Constant ZERO = new Constant(0);
+	private static final Constant ONE = new Constant(1);
+	private static final Constant TWO = new Constant(2);
+
+	private Differentiator() {
+	}
+
+	/**
+	 * Differentiates an expression with respect to x.
+	 *
+	 * @param expr
+	 *            The expression to differentiate
+	 * @return The simplified derivative.
+	 */
+	static Expr derive(Expr expr) {
+		if (expr instanceof Constant) {
+			return ZERO;
+		} else if (expr instanceof Variable) {
+			return ONE;
+		} else if (expr instanceof Binary) {
+			return deriveBinary((Binary) expr);
+		} else {
+			return deriveUnary((Unary) expr);
+		}
+	}
+
+	private static Expr deriveBinary(Binary expr) {
+		Expr u = expr.left;
+		Expr v = expr.right;
+		Expr du = derive(u);
+		Expr dv = derive(v);
+
+		switch (expr.operator) {
+		case ADD:
+			return add(du, dv);
+		case SUBTRACT:
+			return subtract(du, dv);
+		case MULTIPLY:
+			return add(multiply(du, v), multiply(u, dv));
+		case DIVIDE:
+			if (v instanceof Constant) {
+				return divide(du, v);
+			}
+			return divide(subtract(multiply(du, v), multiply(u, dv)),
+					power(v, TWO));
+		default:
+			if (v instanceof Constant) {
+				// power rule
+				double n = ((Constant) v).value;
+				return multiply(multiply(v, power(u, new Constant(n - 1))),
+						du);
+			} else if (isConstant(dv, 0)) {
+				// an exponent that does not depend on x but is not folded to
+				// a constant, like (+ 1 1), is folded for the power rule
+				Constant n = new Constant(v.eval(0));
+				return multiply(multiply(n, power(u, new Constant(n.value - 1))),
+						du);
+			} else if (u instanceof Constant) {
+				// exponential rule
+				return multiply(multiply(expr, unary(Function.LOG, u)), dv);
+			}
+			// d(u^v) = u^v * (v' * log(u) + v * u' / u)
+			return multiply(
+					expr,
+					add(multiply(dv, unary(Function.LOG, u)),
+							divide(multiply(v, du), u)));
+		}
+	}
+
+	private static Expr deriveUnary(Unary expr) {
+		Expr u = expr.argument;
+		Expr du = derive(u);
+
+		switch (expr.function) {
+		case NEGATE:
+			return negate(du);
+		case SIN:
+			return multiply(unary(Function.COS, u), du);
+		case COS:
+			return multiply(negate(unary(Function.SIN, u)), du);
+		case TAN:
+			return divide(du, power(unary(Function.COS, u), TWO));
+		case EXP:
+			return multiply(expr, du);
+		case LOG:
+			return divide(du, u);
+		case SQRT:
+			return divide(du, multiply(TWO, expr));
+		case SIGNUM:
+			// zero except where u is zero
+			return ZERO;
+		default:
+			// the sign of u, like in TaylorEvaluator
+			return multiply(unary(Function.SIGNUM, u), du);
+		}
+	}
+
+	private static Expr add(Expr a, Expr b) {
+		if (isConstant(a, 0)) {
+			return b;
+		} else if (isConstant(b, 0)) {
+			return a;
+		}
+		return fold(Operator.ADD, a, b);
+	}
+
+	private static Expr subtract(Expr a, Expr b) {
+		if (isConstant(b, 0)) {
+			return a;
+		} else if (isConstant(a, 0)) {
+			return negate(b);
+		}
+		return fold(Operator.SUBTRACT, a, b);
+	}
+
+	private static Expr multiply(Expr a, Expr b) {
+		if (isConstant(a, 0) || isConstant(b, 0)) {
+			return ZERO;
+		} else if (isConstant(a, 1)) {
+			return b;
+		} else if (isConstant(b, 1)) {
+			return a;
+		} else if (isConstant(a, -1)) {
+			return negate(b);
+		} else if (isConstant(b, -1)) {
+			return negate(a);
+		}
+		return fold(Operator.MULTIPLY, a, b);
+	}
+
+	private static Expr divide(Expr a, Expr b) {
+		if (isConstant(a, 0)) {
+			return ZERO;
+		} else if (isConstant(b, 1)) {
+			return a;
+		}
+		return fold(Operator.DIVIDE, a, b);
+	}
+
+	private static Expr power(Expr a, Expr b) {
+		if (isConstant(b, 0)) {
+			return ONE;
+		} else if (isConstant(b, 1)) {
+			return a;
+		}
+		return fold(Operator.POWER, a, b);
+	}
+
+	private static Expr negate(Expr a) {
+		if (a instanceof Constant) {
+			return new Constant(-((Constant) a).value);
+		} else if (a instanceof Unary
+				&& ((Unary) a).function == Function.NEGATE) {
+			return ((Unary) a).argument;
+		}
+		return new Unary(Function.NEGATE, a);
+	}
+
+	private static Expr unary(Function function, Expr a) {
+		Expr result = new Unary(function, a);
+		if (a instanceof Constant) {
+			return new Constant(result.eval(0));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a binary node, or a constant if both sides are constants.
+	 */
+	private static Expr fold(Operator operator, Expr a, Expr b) {
+		Expr result = new Binary(operator, a, b);
+		if (a instanceof Constant && b instanceof Constant) {
+			return new Constant(result.eval(0));
+		}
+		return result;
+	}
+
+	private static boolean isConstant(Expr expr, double value) {
+		return expr instanceof Constant && ((Constant) expr).value == value;
+	}
+}
@@ -0,0 +1,187 @@
+package dk.iha.plpa.multiparadigm;
+
+/**
+ * A compiled arithmetic expression in the variable x. Expressions are trees of
+ * nodes that evaluate on primitive doubles, so evaluating an expression does
+ * not allocate anything. Expressions are created by ExpressionCompiler from
+ * the Scheme source of a function and are immutable, so the same expression
+ * can be evaluated from several threads at once.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+abstract class Expr {
+
+	/**
+	 * The operators of the binary nodes.
+	 */
+	enum Operator {
+		ADD("+"), SUBTRACT("-"), MULTIPLY("*"), DIVIDE("/"), POWER("expt");
+
+		final String symbol;
+
+		Operator(String symbol) {
+			this.symbol = symbol;
+		}
+	}
+
+	/**
+	 * The functions of the unary nodes. SIGNUM is not a Scheme procedure, it
+	 * is only made by Differentiator as the derivative of abs.
+	 */
+	enum Function {
+		NEGATE("-"), SIN("sin"), COS("cos"), TAN("tan"), EXP("exp"), LOG(
+				"log"), SQRT("sqrt"), ABS("abs"), SIGNUM("signum");
+
+		final String symbol;
+
+		Function(String symbol) {
+			this.symbol = symbol;
+		}
+	}
+
+	/**
+	 * Evaluates the expression.
+	 *
+	 * @param x
+	 *            The value of the variable x
+	 * @return The value of the expression.
+	 */
+	abstract double eval(double x);
+
+	/**
+	 * @return The Scheme source of the expression.
+	 */
+	@Override
+	public abstract String toString();
+
+	/**
+	 * A constant number.
+	 */
+	static final class Constant extends Expr {
+		final double value;
+
+		Constant(double value) {
+			this.value = value;
+		}
+
+		@Override
+		double eval(double x) {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			if (value == Math.rint(value) && !Double.isInfinite(value)
+					&& Math.abs(value) < 1e15) {
+				return Long.toString((long) value);
+			}
+			return Double.toString(value);
+		}
+	}
+
+	/**
+	 * The variable x.
+	 */
+	static final class Variable extends Expr {
+		static final Variable X = new Variable();
+
+		private Variable() {
+		}
+
+		@Override
+		double eval(double x) {
+			return x;
+		}
+
+		@Override
+		public String toString() {
+			return "x";
+		}
+	}
+
+	/**
+	 * An operator applied to two expressions.
+	 */
+	static final class Binary extends Expr {
+		final Operator operator;
+		final Expr left;
+		final Expr right;
+
+		Binary(Operator operator, Expr left, Expr right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double eval(double x) {
+			double a = left.eval(x);
+			double b = right.eval(x);
+			switch (operator) {
+			case ADD:
+				return a + b;
+			case SUBTRACT:
+				return a - b;
+			case MULTIPLY:
+				return a * b;
+			case DIVIDE:
+				return a / b;
+			default:
+				return Math.pow(a, b);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "(" + operator.symbol + " " + left + " " + right + ")";
+		}
+	}
+
+	/**
+	 * A function applied to one expression.
+	 */
+	static final class Unary extends Expr {
+		final Function function;
+		final Expr argument;
+
+		Unary(Function function, Expr argument) {
+			this.function = function;
+			this.argument = argument;
+		}
+
+		@Override
+		double eval(double x) {
+			double a = argument.eval(x);
+			switch (function) {
+			case NEGATE:
+				return -a;
+			case SIN:
+				return Math.sin(a);
+			case COS:
+				return Math.cos(a);
+			case TAN:
+				return Math.tan(a);
+			case EXP:
+				return Math.exp(a);
+			case LOG:
+				return Math.log(a);
+			case SQRT:
+				return Math.sqrt(a);
+			case SIGNUM:
+				return Math.signum(a);
+			default:
+				return Math.abs(a);
+			}
+		}
+
+		@Override
+		public String toString() {
+			if (function == Function.SIGNUM) {
+				return "(if (negative? " + argument + ") -1 (if (positive? "
+						+ argument + ") 1 0))";
+			}
+			return "(" + function.symbol + " " + argument + ")";
+		}
+	}
+}
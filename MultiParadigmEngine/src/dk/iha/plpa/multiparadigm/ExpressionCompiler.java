@@ -0,0 +1,203 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the arithmetic subset of Scheme into an Expr that is evaluated on
+ * primitive doubles. The supported subset is numbers, the variable x, the
+ * operators + - * / and expt, and the functions sin, cos, tan, exp, log, sqrt
+ * and abs. Expressions using anything else, for example other registered
+ * functions or special forms, cannot be compiled and must be evaluated by
+ * Kawa instead.
+ *
+ * Where Scheme would give an exact or complex result (like (/ 1 0) or (sqrt
+ * -1)) the compiled expression gives the IEEE double result instead.
+ *
+ * Numbers are only read in the Scheme syntax for decimals, like -1, 2.5, .5
+ * and 1e-3, and for rationals, like 1/3. Anything else Java would read as a
+ * number, like NaN, Infinity, 1d or 0x1p3, is left to Kawa, which reads it as
+ * a symbol.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class ExpressionCompiler {
+
+	// Scheme decimals and rationals, other exponent markers than e are left
+	// to Kawa
+	private static final Pattern DECIMAL = Pattern
+			.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+	private static final Pattern RATIONAL = Pattern
+			.compile("[+-]?\\d+/\\d*[1-9]\\d*");
+
+	private final String source;
+	private int position = 0;
+
+	private ExpressionCompiler(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * Compiles the body of a function in x.
+	 *
+	 * @param functionExpression
+	 *            String representation of the scheme function
+	 * @return The compiled expression, or null if the expression is outside
+	 *         the supported subset.
+	 */
+	static Expr compile(String functionExpression) {
+		if (functionExpression == null) {
+			return null;
+		}
+		try {
+			ExpressionCompiler compiler = new ExpressionCompiler(
+					functionExpression);
+			Expr expr = compiler.parseExpression();
+			compiler.skipWhitespace();
+			if (compiler.position != compiler.source.length()) {
+				return null;
+			}
+			return expr;
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	private Expr parseExpression() {
+		skipWhitespace();
+		if (position >= source.length()) {
+			throw unsupported("unexpected end of expression");
+		}
+		char c = source.charAt(position);
+		if (c == ')') {
+			throw unsupported("unexpected )");
+		} else if (c != '(') {
+			return parseAtom(readToken());
+		}
+
+		position++;
+		skipWhitespace();
+		String operator = readToken();
+		List<Expr> arguments = new ArrayList<Expr>();
+		while (true) {
+			skipWhitespace();
+			if (position >= source.length()) {
+				throw unsupported("missing )");
+			}
+			if (source.charAt(position) == ')') {
+				position++;
+				break;
+			}
+			arguments.add(parseExpression());
+		}
+		return combine(operator, arguments);
+	}
+
+	private Expr parseAtom(String token) {
+		if (token.equals("x")) {
+			return Expr.Variable.X;
+		}
+		try {
+			if (RATIONAL.matcher(token).matches()) {
+				// exact rational like 1/3
+				int slash = token.indexOf('/');
+				return new Expr.Constant(Long.parseLong(token.substring(0,
+						slash))
+						/ (double) Long.parseLong(token.substring(slash + 1)));
+			}
+			if (DECIMAL.matcher(token).matches()) {
+				return new Expr.Constant(Double.parseDouble(token));
+			}
+		} catch (NumberFormatException e) {
+			// too long for a long, Kawa reads it exactly
+		}
+		throw unsupported("unknown symbol " + token);
+	}
+
+	private Expr combine(String operator, List<Expr> arguments) {
+		int count = arguments.size();
+		switch (operator) {
+		case "+":
+			return fold(Expr.Operator.ADD, arguments, 0);
+		case "*":
+			return fold(Expr.Operator.MULTIPLY, arguments, 1);
+		case "-":
+			if (count == 1) {
+				return new Expr.Unary(Expr.Function.NEGATE, arguments.get(0));
+			}
+			return fold(Expr.Operator.SUBTRACT, arguments, Double.NaN);
+		case "/":
+			if (count == 1) {
+				return new Expr.Binary(Expr.Operator.DIVIDE,
+						new Expr.Constant(1), arguments.get(0));
+			}
+			return fold(Expr.Operator.DIVIDE, arguments, Double.NaN);
+		case "expt":
+			if (count != 2) {
+				throw unsupported("expt takes two arguments");
+			}
+			return new Expr.Binary(Expr.Operator.POWER, arguments.get(0),
+					arguments.get(1));
+		default:
+			for (Expr.Function function : Expr.Function.values()) {
+				if (function != Expr.Function.NEGATE
+						&& function != Expr.Function.SIGNUM
+						&& function.symbol.equals(operator)) {
+					if (count != 1) {
+						throw unsupported(operator + " takes one argument");
+					}
+					return new Expr.Unary(function, arguments.get(0));
+				}
+			}
+			throw unsupported("unknown operator " + operator);
+		}
+	}
+
+	/**
+	 * Folds the arguments from the left with the operator, so (- a b c)
+	 * becomes (- (- a b) c).
+	 */
+	private Expr fold(Expr.Operator operator, List<Expr> arguments,
+			double identity) {
+		if (arguments.isEmpty()) {
+			if (Double.isNaN(identity)) {
+				throw unsupported(operator.symbol + " needs arguments");
+			}
+			return new Expr.Constant(identity);
+		}
+		Expr result = arguments.get(0);
+		for (int i = 1; i < arguments.size(); i++) {
+			result = new Expr.Binary(operator, result, arguments.get(i));
+		}
+		return result;
+	}
+
+	private String readToken() {
+		int start = position;
+		while (position < source.length()) {
+			char c = source.charAt(position);
+			if (Character.isWhitespace(c) || c == '(' || c == ')') {
+				break;
+			}
+			position++;
+		}
+		if (start == position) {
+			throw unsupported("expected a symbol or number");
+		}
+		return source.substring(start, position);
+	}
+
+	private void skipWhitespace() {
+		while (position < source.length()
+				&& Character.isWhitespace(source.charAt(position))) {
+			position++;
+		}
+	}
+
+	private UnsupportedOperationException unsupported(String reason) {
+		return new UnsupportedOperationException("Cannot compile "
+				+ source + ": " + reason);
+	}
+}
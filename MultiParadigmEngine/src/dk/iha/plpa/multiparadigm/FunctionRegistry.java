@@ -0,0 +1,229 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps track of the expressions of registered functions and which functions
+ * call which. Every function has a fingerprint made from its own normalized
+ * expression and the fingerprints of the functions it calls, so the
+ * fingerprint of a function changes exactly when its own text or the text of
+ * any function it depends on changes. Evaluated series are cached by
+ * fingerprint, so only functions whose fingerprint changed are evaluated
+ * again.
+ *
+ * A fingerprint is a hash, so it stays short however many functions a
+ * function depends on, and it is kept until the function or a function it
+ * depends on changes.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public class FunctionRegistry {
+
+	// normalized expressions keyed by function id, in registration order
+	private final Map<String, String> expressions = new LinkedHashMap<String, String>();
+
+	// the symbols of the expressions, keyed by function id
+	private final Map<String, Set<String>> tokens = new HashMap<String, Set<String>>();
+
+	// fingerprints made since the functions last changed, keyed by id
+	private final Map<String, String> fingerprints = new HashMap<String, String>();
+
+	/**
+	 * Sets the expression of a function.
+	 *
+	 * @param functionId
+	 *            The id of the function
+	 * @param functionExpression
+	 *            String representation of the function
+	 * @return true if the normalized expression differs from the one
+	 *         registered before.
+	 */
+	public boolean update(String functionId, String functionExpression) {
+		String normalized = SeriesCache.normalize(functionExpression);
+		if (normalized.equals(expressions.put(functionId, normalized))) {
+			return false;
+		}
+		tokens.put(functionId, new HashSet<String>(Arrays.asList(normalized
+				.split("[\\s()]+"))));
+		// also the functions that call the id without it being registered
+		// before, which now depend on it
+		invalidate(functionId);
+		return true;
+	}
+
+	/**
+	 * Removes a function.
+	 *
+	 * @param functionId
+	 *            The id of the function
+	 */
+	public void remove(String functionId) {
+		if (expressions.containsKey(functionId)) {
+			invalidate(functionId);
+			expressions.remove(functionId);
+			tokens.remove(functionId);
+		}
+	}
+
+	/**
+	 * Removes all functions.
+	 */
+	public void clear() {
+		expressions.clear();
+		tokens.clear();
+		fingerprints.clear();
+	}
+
+	/**
+	 * Tells if a function is registered with the given expression.
+	 *
+	 * @param functionId
+	 *            The id of the function
+	 * @param functionExpression
+	 *            String representation of the function
+	 * @return true if the normalized expressions are equal.
+	 */
+	public boolean isRegistered(String functionId, String functionExpression) {
+		String registered = expressions.get(functionId);
+		return registered != null
+				&& registered.equals(SeriesCache
+						.normalize(functionExpression));
+	}
+
+	/**
+	 * @param functionId
+	 *            The id of the function
+	 * @return The normalized expression of the function, or null if it is not
+	 *         registered.
+	 */
+	public String getExpression(String functionId) {
+		return expressions.get(functionId);
+	}
+
+	/**
+	 * Finds the registered functions a function calls directly.
+	 *
+	 * @param functionId
+	 *            The id of the function
+	 * @return The ids of the called functions, sorted.
+	 */
+	public Set<String> getReferences(String functionId) {
+		Set<String> references = new TreeSet<String>();
+		if (tokens.containsKey(functionId)) {
+			for (String token : tokens.get(functionId)) {
+				if (expressions.containsKey(token)) {
+					references.add(token);
+				}
+			}
+		}
+		return references;
+	}
+
+	/**
+	 * Makes the fingerprint of a function from its expression and the
+	 * fingerprints of the functions it calls.
+	 *
+	 * @param functionId
+	 *            The id of the function
+	 * @return The fingerprint, or null if the function is not registered.
+	 */
+	public String fingerprint(String functionId) {
+		if (!expressions.containsKey(functionId)) {
+			return null;
+		}
+		return fingerprint(functionId, new HashSet<String>(), new boolean[1]);
+	}
+
+	/**
+	 * Makes the fingerprint of a function, using the kept fingerprints of the
+	 * functions it calls. A fingerprint made while a recursive call was cut
+	 * short depends on which function it was started from, so it is only kept
+	 * for that function.
+	 *
+	 * @param cut
+	 *            Set to true if a recursive call was cut short
+	 */
+	private String fingerprint(String functionId, Set<String> visiting,
+			boolean[] cut) {
+		String fingerprint = fingerprints.get(functionId);
+		if (fingerprint != null) {
+			return fingerprint;
+		}
+
+		StringBuilder text = new StringBuilder(expressions.get(functionId));
+		visiting.add(functionId);
+		for (String reference : getReferences(functionId)) {
+			text.append(" [").append(reference).append('=');
+			if (visiting.contains(reference)) {
+				// recursive functions only depend on themselves once
+				text.append("...");
+				cut[0] = true;
+			} else {
+				text.append(fingerprint(reference, visiting, cut));
+			}
+			text.append(']');
+		}
+		visiting.remove(functionId);
+
+		fingerprint = hash(text.toString());
+		if (!cut[0] || visiting.isEmpty()) {
+			fingerprints.put(functionId, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Forgets the fingerprints of a function and of every function calling
+	 * it, directly or through other functions.
+	 */
+	private void invalidate(String functionId) {
+		if (fingerprints.isEmpty()) {
+			return;
+		}
+		Set<String> invalidated = new HashSet<String>();
+		List<String> pending = new ArrayList<String>();
+		invalidated.add(functionId);
+		pending.add(functionId);
+		while (!pending.isEmpty()) {
+			String id = pending.remove(pending.size() - 1);
+			fingerprints.remove(id);
+			for (Map.Entry<String, Set<String>> caller : tokens.entrySet()) {
+				if (caller.getValue().contains(id)
+						&& invalidated.add(caller.getKey())) {
+					pending.add(caller.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The SHA-1 hash of the text in hexadecimal.
+	 */
+	private static String hash(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(2 * digest.length);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+						Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
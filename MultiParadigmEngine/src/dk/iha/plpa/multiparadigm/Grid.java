@@ -0,0 +1,260 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A grid of x values on the span from xmin to xmax. The values are computed
+ * on demand from their index, so a grid can be read as one primitive array or
+ * streamed in chunks without keeping all the values in memory. The values of a
+ * grid are always in ascending order and include both xmin and xmax.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public abstract class Grid {
+
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private final String kind;
+	protected final int datapoints;
+	protected final double xmin;
+	protected final double xmax;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param kind
+	 *            Name of the kind of grid, grids of the same kind with the
+	 *            same span and datapoints are equal
+	 * @param datapoints
+	 *            Number of intervals between xmin and xmax
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 */
+	protected Grid(String kind, int datapoints, double xmin, double xmax) {
+		if (datapoints < 1) {
+			throw new IllegalArgumentException(
+					"A grid needs at least one datapoint, got " + datapoints);
+		}
+		if (!(xmin < xmax)) {
+			throw new IllegalArgumentException("xmin (" + xmin
+					+ ") must be less than xmax (" + xmax + ")");
+		}
+		this.kind = kind;
+		this.datapoints = datapoints;
+		this.xmin = xmin;
+		this.xmax = xmax;
+	}
+
+	/**
+	 * Creates a grid with equally spaced values.
+	 *
+	 * @param datapoints
+	 *            Number of intervals between xmin and xmax
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @return The uniform grid.
+	 */
+	public static Grid uniform(int datapoints, double xmin, double xmax) {
+		return new Grid("uniform", datapoints, xmin, xmax) {
+			@Override
+			public double get(int i) {
+				if (i == this.datapoints) {
+					return this.xmax;
+				}
+				return this.xmin + (this.xmax - this.xmin) * i
+						/ this.datapoints;
+			}
+		};
+	}
+
+	/**
+	 * Creates a grid where the values are equally spaced on a logarithmic
+	 * scale. Used with the logarithmic mode, since it places as many values
+	 * in each decade.
+	 *
+	 * @param datapoints
+	 *            Number of intervals between xmin and xmax
+	 * @param xmin
+	 *            Minimum X value, must be positive
+	 * @param xmax
+	 *            Maximum X value
+	 * @return The logarithmic grid.
+	 */
+	public static Grid logarithmic(int datapoints, double xmin, double xmax) {
+		if (xmin <= 0) {
+			throw new IllegalArgumentException(
+					"A logarithmic grid needs a positive xmin, got " + xmin);
+		}
+		return new Grid("logarithmic", datapoints, xmin, xmax) {
+			private final double logMin = Math.log(this.xmin);
+			private final double logSpan = Math.log(this.xmax) - logMin;
+
+			@Override
+			public double get(int i) {
+				if (i == 0) {
+					return this.xmin;
+				} else if (i == this.datapoints) {
+					return this.xmax;
+				}
+				return Math.exp(logMin + logSpan * i / this.datapoints);
+			}
+		};
+	}
+
+	/**
+	 * Creates a grid of Chebyshev points (the extrema of the Chebyshev
+	 * polynomial of degree datapoints). The values are clustered towards the
+	 * ends of the span.
+	 *
+	 * @param datapoints
+	 *            Number of intervals between xmin and xmax
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @return The Chebyshev grid.
+	 */
+	public static Grid chebyshev(int datapoints, double xmin, double xmax) {
+		return new Grid("chebyshev", datapoints, xmin, xmax) {
+			private final double center = (this.xmin + this.xmax) / 2;
+			private final double radius = (this.xmax - this.xmin) / 2;
+
+			@Override
+			public double get(int i) {
+				if (i == 0) {
+					return this.xmin;
+				} else if (i == this.datapoints) {
+					return this.xmax;
+				}
+				return center - radius
+						* Math.cos(Math.PI * i / this.datapoints);
+			}
+		};
+	}
+
+	/**
+	 * Returns the x value at the given index.
+	 *
+	 * @param i
+	 *            Index between 0 and size() - 1
+	 * @return The x value.
+	 */
+	public abstract double get(int i);
+
+	/**
+	 * @return The number of values in the grid, one more than the number of
+	 *         datapoints.
+	 */
+	public int size() {
+		return datapoints + 1;
+	}
+
+	public int getDatapoints() {
+		return datapoints;
+	}
+
+	public double getXMin() {
+		return xmin;
+	}
+
+	public double getXMax() {
+		return xmax;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Grid)) {
+			return false;
+		}
+		Grid other = (Grid) obj;
+		return kind.equals(other.kind) && datapoints == other.datapoints
+				&& Double.compare(xmin, other.xmin) == 0
+				&& Double.compare(xmax, other.xmax) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = kind.hashCode();
+		hash = 31 * hash + datapoints;
+		hash = 31 * hash + Double.valueOf(xmin).hashCode();
+		hash = 31 * hash + Double.valueOf(xmax).hashCode();
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return kind + "[" + xmin + ", " + xmax + "; " + datapoints + "]";
+	}
+
+	/**
+	 * Writes the values with index from (inclusive) to to (exclusive) into
+	 * the beginning of the destination array.
+	 *
+	 * @param destination
+	 *            Array to write the values to
+	 * @param from
+	 *            First index
+	 * @param to
+	 *            Index after the last one
+	 */
+	public void fill(double[] destination, int from, int to) {
+		for (int i = from; i < to; i++) {
+			destination[i - from] = get(i);
+		}
+	}
+
+	/**
+	 * @return All the values of the grid in ascending order.
+	 */
+	public double[] toArray() {
+		double[] xvalues = new double[size()];
+		fill(xvalues, 0, xvalues.length);
+		return xvalues;
+	}
+
+	/**
+	 * Streams the values of the grid in ascending chunks. Each chunk is a new
+	 * array of at most chunkSize values, and a chunk is only computed when it
+	 * is requested.
+	 *
+	 * @param chunkSize
+	 *            Maximum number of values in a chunk
+	 * @return Iterator over the chunks.
+	 */
+	public Iterator<double[]> chunks(final int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		return new Iterator<double[]>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size();
+			}
+
+			@Override
+			public double[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int end = Math.min(next + chunkSize, size());
+				double[] chunk = new double[end - next];
+				fill(chunk, next, end);
+				next = end;
+				return chunk;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
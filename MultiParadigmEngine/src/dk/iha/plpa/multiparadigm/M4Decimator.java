@@ -0,0 +1,137 @@
+package dk.iha.plpa.multiparadigm;
+
+/**
+ * Reduces a dense series to what can be seen on the screen. The series is
+ * split into the pixel columns of the plot, and of the points in a column only
+ * the first, the one with the smallest y value, the one with the largest y
+ * value and the last are kept. Lines through the kept points cover exactly
+ * the same pixels as lines through all the points, so drawing the reduced
+ * series costs at most four points per column however many points there are.
+ *
+ * Points that are not finite break the series. They are kept, and the points
+ * on each side of them are reduced separately.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class M4Decimator {
+
+	/**
+	 * Number of points kept for each column.
+	 */
+	static final int POINTS_PER_COLUMN = 4;
+
+	private final double xmin;
+	private final double columnsPerUnit;
+	private final int columns;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param xmin
+	 *            Minimum X value of the plot
+	 * @param xmax
+	 *            Maximum X value of the plot
+	 * @param columns
+	 *            Number of pixel columns from xmin to xmax
+	 */
+	M4Decimator(double xmin, double xmax, int columns) {
+		if (columns < 1) {
+			throw new IllegalArgumentException(
+					"At least one column is needed, got " + columns);
+		}
+		this.xmin = xmin;
+		this.columnsPerUnit = columns / (xmax - xmin);
+		this.columns = columns;
+	}
+
+	/**
+	 * @param length
+	 *            Number of points in a series
+	 * @return true if decimating a series of that length could make it
+	 *         shorter.
+	 */
+	boolean reduces(int length) {
+		return length > POINTS_PER_COLUMN * (columns + 1);
+	}
+
+	/**
+	 * Reduces a series to the first, min, max and last points of each column.
+	 *
+	 * @param x
+	 *            X values in ascending order
+	 * @param y
+	 *            Y values, as they are plotted
+	 * @return Array of the kept x values and the kept y values, or the series
+	 *         itself if it is not longer than the reduced series could be.
+	 */
+	double[][] decimate(double[] x, double[] y) {
+		if (!reduces(x.length)) {
+			return new double[][] { x, y };
+		}
+
+		int[] kept = new int[x.length];
+		int count = 0;
+		int first = -1;
+		int min = -1;
+		int max = -1;
+		int last = -1;
+		long column = Long.MIN_VALUE;
+
+		for (int i = 0; i < x.length; i++) {
+			boolean finite = !Double.isNaN(y[i]) && !Double.isInfinite(y[i]);
+			long current = (long) Math.floor((x[i] - xmin) * columnsPerUnit);
+			if (first >= 0 && (!finite || current != column)) {
+				count = keep(kept, count, first, min, max, last);
+				first = -1;
+			}
+			if (!finite) {
+				kept[count++] = i;
+				continue;
+			}
+			if (first < 0) {
+				first = i;
+				min = i;
+				max = i;
+				column = current;
+			} else if (y[i] < y[min]) {
+				min = i;
+			} else if (y[i] > y[max]) {
+				max = i;
+			}
+			last = i;
+		}
+		if (first >= 0) {
+			count = keep(kept, count, first, min, max, last);
+		}
+
+		double[] keptX = new double[count];
+		double[] keptY = new double[count];
+		for (int j = 0; j < count; j++) {
+			keptX[j] = x[kept[j]];
+			keptY[j] = y[kept[j]];
+		}
+		return new double[][] { keptX, keptY };
+	}
+
+	/**
+	 * Adds the four points of a column in the order of the series, each
+	 * point once.
+	 */
+	private static int keep(int[] kept, int count, int first, int min,
+			int max, int last) {
+		kept[count++] = first;
+		int low = Math.min(min, max);
+		int high = Math.max(min, max);
+		if (low > first) {
+			kept[count++] = low;
+		}
+		if (high > low && high > first) {
+			kept[count++] = high;
+		}
+		if (last > high && last > first) {
+			kept[count++] = last;
+		}
+		return count;
+	}
+}
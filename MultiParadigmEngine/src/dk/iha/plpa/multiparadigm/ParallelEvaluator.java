@@ -0,0 +1,222 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import gnu.mapping.Procedure;
+
+/**
+ * Evaluates functions over large arrays of x-values on all cores. The array is
+ * split into chunks which are evaluated by a fork-join pool and written into
+ * one shared result array. A Scheme environment can only be used by one thread
+ * at a time, so every worker thread evaluates Scheme functions in its own
+ * isolated Schemer, which has the same functions registered as the Schemer
+ * owning this evaluator.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class ParallelEvaluator {
+
+	/**
+	 * Evaluates part of an array of x-values.
+	 */
+	interface ChunkEvaluator {
+		/**
+		 * Evaluates the x-values with index from (inclusive) to to (exclusive)
+		 * and writes the results into the same indexes of yvalues.
+		 */
+		void evaluate(double[] xvalues, double[] yvalues, int from, int to)
+				throws Throwable;
+	}
+
+	static final int CHUNK_SIZE = 2048;
+
+	// arrays shorter than this are evaluated on the calling thread
+	static final int PARALLEL_THRESHOLD = 4 * CHUNK_SIZE;
+
+	static final ForkJoinPool POOL = new ForkJoinPool();
+
+	// the function definitions of the owning Schemer, in registration order
+	private final Map<String, String> definitions = new LinkedHashMap<String, String>();
+	private int version = 0;
+
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>();
+
+	/**
+	 * An isolated Schemer used by one worker thread, and the version of the
+	 * definitions registered in it.
+	 */
+	private static final class Worker {
+		final Schemer schemer = Schemer.newIsolated();
+		int version = -1;
+	}
+
+	/**
+	 * Records a function registered in the owning Schemer, so it is
+	 * registered in the worker environments before their next evaluation.
+	 *
+	 * @param functionId
+	 *            The id of the function
+	 * @param functionExpression
+	 *            String representation of the function, or null if the
+	 *            function was removed
+	 */
+	synchronized void define(String functionId, String functionExpression) {
+		definitions.remove(functionId);
+		if (functionExpression != null) {
+			definitions.put(functionId, functionExpression);
+		}
+		version++;
+	}
+
+	/**
+	 * Evaluates the x-values in parallel.
+	 *
+	 * @param xvalues
+	 *            Array of X values
+	 * @param evaluator
+	 *            Evaluates the chunks, it is called from several threads at
+	 *            once
+	 * @return An array of evaluated values.
+	 * @throws Throwable
+	 *             The first failure of any of the chunks.
+	 */
+	double[] evaluate(double[] xvalues, ChunkEvaluator evaluator)
+			throws Throwable {
+		double[] yvalues = new double[xvalues.length];
+		evaluateInto(xvalues, yvalues, evaluator);
+		return yvalues;
+	}
+
+	/**
+	 * Evaluates the x-values in parallel into an existing array.
+	 *
+	 * @param xvalues
+	 *            Array of X values
+	 * @param yvalues
+	 *            Array the chunks are evaluated into
+	 * @param evaluator
+	 *            Evaluates the chunks, it is called from several threads at
+	 *            once
+	 * @throws Throwable
+	 *             The first failure of any of the chunks.
+	 */
+	void evaluateInto(double[] xvalues, double[] yvalues,
+			ChunkEvaluator evaluator) throws Throwable {
+		try {
+			POOL.invoke(new ChunkTask(evaluator, xvalues, yvalues, 0,
+					xvalues.length));
+		} catch (ChunkFailure e) {
+			Throwable cause = e.getCause();
+			while (cause instanceof ChunkFailure) {
+				cause = cause.getCause();
+			}
+			throw cause;
+		}
+	}
+
+	/**
+	 * Creates a chunk evaluator for a function registered in Scheme. Each
+	 * chunk is evaluated with one call to the worker thread's own Schemer.
+	 *
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param order
+	 *            The derivative to evaluate, 0 for the function itself
+	 * @return The chunk evaluator.
+	 */
+	ChunkEvaluator scheme(final String functionId, final int order) {
+		final Map<String, String> snapshot;
+		final int snapshotVersion;
+		synchronized (this) {
+			snapshot = new LinkedHashMap<String, String>(definitions);
+			snapshotVersion = version;
+		}
+
+		return new ChunkEvaluator() {
+			@Override
+			public void evaluate(double[] xvalues, double[] yvalues,
+					int from, int to) throws Throwable {
+				Schemer schemer = workerFor(snapshot, snapshotVersion);
+				Procedure function = schemer.curveProcedure(functionId,
+						order);
+				double[] result = schemer.evaluateBatch(function,
+						Arrays.copyOfRange(xvalues, from, to));
+				System.arraycopy(result, 0, yvalues, from, result.length);
+			}
+		};
+	}
+
+	/**
+	 * Returns the Schemer of the current worker thread, registering the
+	 * given definitions first if it has not seen this version of them.
+	 */
+	private Schemer workerFor(Map<String, String> snapshot, int snapshotVersion) {
+		Worker worker = workers.get();
+		if (worker == null) {
+			worker = new Worker();
+			workers.set(worker);
+		}
+		if (worker.version != snapshotVersion) {
+			for (Map.Entry<String, String> definition : snapshot.entrySet()) {
+				worker.schemer.registerFunction(definition.getValue(),
+						definition.getKey());
+			}
+			worker.version = snapshotVersion;
+		}
+		return worker.schemer;
+	}
+
+	/**
+	 * Splits its range in halves until it is no longer than CHUNK_SIZE.
+	 */
+	private static final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ChunkEvaluator evaluator;
+		private final double[] xvalues;
+		private final double[] yvalues;
+		private final int from;
+		private final int to;
+
+		ChunkTask(ChunkEvaluator evaluator, double[] xvalues,
+				double[] yvalues, int from, int to) {
+			this.evaluator = evaluator;
+			this.xvalues = xvalues;
+			this.yvalues = yvalues;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CHUNK_SIZE) {
+				try {
+					evaluator.evaluate(xvalues, yvalues, from, to);
+				} catch (Throwable e) {
+					throw new ChunkFailure(e);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkTask(evaluator, xvalues, yvalues, from,
+						middle), new ChunkTask(evaluator, xvalues, yvalues,
+						middle, to));
+			}
+		}
+	}
+
+	/**
+	 * Carries the failure of a chunk out of the fork-join pool.
+	 */
+	private static final class ChunkFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ChunkFailure(Throwable cause) {
+			super(cause);
+		}
+	}
+}
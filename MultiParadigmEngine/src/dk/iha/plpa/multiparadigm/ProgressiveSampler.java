@@ -0,0 +1,164 @@
+package dk.iha.plpa.multiparadigm;
+
+/**
+ * Splits the values of a grid into levels for plotting coarse to fine. Level
+ * 0 holds every stride-th value of the grid and the last value, which is a
+ * few more than the coarse number of samples however large the grid is. Each
+ * following level halves the stride, so it adds the values halfway between
+ * the values of the levels before it, and the last level completes the grid.
+ * Since the levels never overlap, every value of the grid is evaluated once,
+ * and the values of a level are exactly the values evaluated over the whole
+ * grid.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class ProgressiveSampler {
+
+	/**
+	 * Number of samples evaluated before the first plot is shown.
+	 */
+	static final int COARSE_SAMPLES = 64;
+
+	private final Grid grid;
+	private final int last;
+	private final int levels;
+	private final int coarseStride;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param grid
+	 *            The grid to split
+	 * @param coarseSamples
+	 *            Minimum number of values in level 0, the whole grid is one
+	 *            level if it has no more values than this
+	 */
+	ProgressiveSampler(Grid grid, int coarseSamples) {
+		this.grid = grid;
+		this.last = grid.size() - 1;
+
+		int stride = 1;
+		int count = 1;
+		while (last / (2 * stride) + 1 >= coarseSamples) {
+			stride *= 2;
+			count++;
+		}
+		this.coarseStride = stride;
+		this.levels = count;
+	}
+
+	/**
+	 * @return Number of levels, the last level completes the grid.
+	 */
+	int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * @return The grid being split.
+	 */
+	Grid getGrid() {
+		return grid;
+	}
+
+	private int stride(int level) {
+		return coarseStride >> level;
+	}
+
+	/**
+	 * @param level
+	 *            The level
+	 * @return Number of values of the grid in the level and all levels before
+	 *         it.
+	 */
+	int size(int level) {
+		int stride = stride(level);
+		return last / stride + 1 + (last % stride == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Returns the x values that are new in a level, in ascending order. These
+	 * are the values to evaluate for the level.
+	 *
+	 * @param level
+	 *            The level
+	 * @return The new x values.
+	 */
+	double[] newValues(int level) {
+		if (level == 0) {
+			double[] xvalues = new double[size(0)];
+			int j = 0;
+			for (int i = 0; i <= last; i += coarseStride) {
+				xvalues[j++] = grid.get(i);
+			}
+			if (j < xvalues.length) {
+				xvalues[j] = grid.get(last);
+			}
+			return xvalues;
+		}
+		int stride = stride(level);
+		double[] xvalues = new double[size(level) - size(level - 1)];
+		int j = 0;
+		for (int i = stride; i < last; i += 2 * stride) {
+			xvalues[j++] = grid.get(i);
+		}
+		return xvalues;
+	}
+
+	/**
+	 * Writes the values evaluated for a level into an array over the whole
+	 * grid.
+	 *
+	 * @param newValues
+	 *            The values evaluated at the x values of newValues(level)
+	 * @param level
+	 *            The level
+	 * @param values
+	 *            Array with a value for each value of the grid
+	 */
+	void scatter(double[] newValues, int level, double[] values) {
+		if (level == 0) {
+			int j = 0;
+			for (int i = 0; i <= last; i += coarseStride) {
+				values[i] = newValues[j++];
+			}
+			if (j < newValues.length) {
+				values[last] = newValues[j];
+			}
+			return;
+		}
+		int stride = stride(level);
+		int j = 0;
+		for (int i = stride; i < last; i += 2 * stride) {
+			values[i] = newValues[j++];
+		}
+	}
+
+	/**
+	 * Picks the values of a level and the levels before it out of an array
+	 * over the whole grid.
+	 *
+	 * @param values
+	 *            Array with a value for each value of the grid
+	 * @param level
+	 *            The level
+	 * @return The values of the grid in the level and all levels before it,
+	 *         or the array itself for the last level.
+	 */
+	double[] gather(double[] values, int level) {
+		if (level == levels - 1) {
+			return values;
+		}
+		double[] result = new double[size(level)];
+		int stride = stride(level);
+		int j = 0;
+		for (int i = 0; i <= last; i += stride) {
+			result[j++] = values[i];
+		}
+		if (j < result.length) {
+			result[j] = values[last];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,453 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.PriorityQueue;
+
+/**
+ * Approximates the integral of a function on the span from a to b. The caller
+ * asks for the integral to a given tolerance, and gets the value together with
+ * an estimate of its error and the number of times the function was evaluated.
+ * The adaptive methods only evaluate the function where it is hard to
+ * integrate, so they reach the same accuracy as the rectangle method with
+ * orders of magnitude fewer evaluations.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public abstract class Quadrature {
+
+	// no method evaluates the function more often than this
+	public static final int MAX_EVALUATIONS = 1000000;
+
+	public static final double DEFAULT_TOLERANCE = 1e-6;
+
+	/**
+	 * A function of x that can be integrated.
+	 */
+	public interface Integrand {
+		/**
+		 * @param x
+		 *            The value of the variable x
+		 * @return The value of the function at x.
+		 * @throws Throwable
+		 *             If the function cannot be evaluated.
+		 */
+		double evaluate(double x) throws Throwable;
+	}
+
+	/**
+	 * The methods to choose from.
+	 */
+	public enum Method {
+		RECTANGLE("Rectangles"), SIMPSON("Adaptive Simpson"), GAUSS_LEGENDRE(
+				"Gauss-Legendre"), GAUSS_KRONROD("Adaptive Gauss-Kronrod");
+
+		private final String name;
+
+		private Method(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * An approximated integral.
+	 */
+	public static final class Result {
+		private final double value;
+		private final double error;
+		private final long evaluations;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param value
+		 *            The approximated integral
+		 * @param error
+		 *            Estimate of the absolute error of the value
+		 * @param evaluations
+		 *            Number of times the function was evaluated
+		 */
+		public Result(double value, double error, long evaluations) {
+			this.value = value;
+			this.error = error;
+			this.evaluations = evaluations;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		public double getError() {
+			return error;
+		}
+
+		public long getEvaluations() {
+			return evaluations;
+		}
+
+		@Override
+		public String toString() {
+			return value + " +/- " + error + " (" + evaluations
+					+ " evaluations)";
+		}
+	}
+
+	/**
+	 * Counts the evaluations of an integrand.
+	 */
+	private static final class Counter {
+		private final Integrand integrand;
+		private int evaluations = 0;
+
+		Counter(Integrand integrand) {
+			this.integrand = integrand;
+		}
+
+		double evaluate(double x) throws Throwable {
+			evaluations++;
+			return integrand.evaluate(x);
+		}
+
+		boolean exhausted(int needed) {
+			return evaluations + needed > MAX_EVALUATIONS;
+		}
+	}
+
+	/**
+	 * Creates a quadrature of the given method.
+	 *
+	 * @param method
+	 *            The method
+	 * @param rectangles
+	 *            Number of rectangles, only used by the rectangle method
+	 * @return The quadrature.
+	 */
+	public static Quadrature create(Method method, int rectangles) {
+		switch (method) {
+		case RECTANGLE:
+			return rectangle(rectangles);
+		case SIMPSON:
+			return simpson();
+		case GAUSS_LEGENDRE:
+			return gaussLegendre();
+		default:
+			return gaussKronrod();
+		}
+	}
+
+	/**
+	 * Creates the rectangle method with a fixed number of rectangles, using
+	 * the value at the left end of each rectangle like the rectangle function
+	 * in Scheme. The tolerance is not used, the error is estimated by
+	 * comparing with every second rectangle when there is an even number of
+	 * them.
+	 *
+	 * @param rectangles
+	 *            Number of rectangles
+	 * @return The quadrature.
+	 */
+	public static Quadrature rectangle(int rectangles) {
+		if (rectangles < 1) {
+			throw new IllegalArgumentException(
+					"At least one rectangle is needed, got " + rectangles);
+		}
+		return new Rectangle(rectangles);
+	}
+
+	/**
+	 * Creates the adaptive Simpson's method, which halves the intervals where
+	 * Simpson's rule on the interval and on its two halves differ by more than
+	 * the tolerance.
+	 *
+	 * @return The quadrature.
+	 */
+	public static Quadrature simpson() {
+		return new Simpson();
+	}
+
+	/**
+	 * Creates the composite five point Gauss-Legendre rule, which doubles the
+	 * number of panels until two successive approximations agree.
+	 *
+	 * @return The quadrature.
+	 */
+	public static Quadrature gaussLegendre() {
+		return new GaussLegendre();
+	}
+
+	/**
+	 * Creates the adaptive 7-15 point Gauss-Kronrod method, which keeps
+	 * splitting the interval with the largest error estimate until the total
+	 * error estimate is below the tolerance.
+	 *
+	 * @return The quadrature.
+	 */
+	public static Quadrature gaussKronrod() {
+		return new GaussKronrod();
+	}
+
+	/**
+	 * Approximates the integral of a function on the span from a to b.
+	 *
+	 * @param integrand
+	 *            The function to integrate
+	 * @param a
+	 *            The value we are integrating from
+	 * @param b
+	 *            The value we are integrating to, it may be less than a
+	 * @param tolerance
+	 *            The wanted absolute error
+	 * @return The approximated integral.
+	 * @throws Throwable
+	 *             If the function cannot be evaluated.
+	 */
+	public Result integrate(Integrand integrand, double a, double b,
+			double tolerance) throws Throwable {
+		if (a == b) {
+			return new Result(0, 0, 0);
+		}
+		Counter counter = new Counter(integrand);
+		if (a > b) {
+			double[] valueAndError = integrate(counter, b, a, tolerance);
+			return new Result(-valueAndError[0], valueAndError[1],
+					counter.evaluations);
+		}
+		double[] valueAndError = integrate(counter, a, b, tolerance);
+		return new Result(valueAndError[0], valueAndError[1],
+				counter.evaluations);
+	}
+
+	/**
+	 * Approximates the integral on the span from a to b, where a is less than
+	 * b.
+	 * 
+	 * @return The approximated integral at index 0 and its error estimate at
+	 *         index 1.
+	 */
+	abstract double[] integrate(Counter counter, double a, double b,
+			double tolerance) throws Throwable;
+
+	private static final class Rectangle extends Quadrature {
+		private final int rectangles;
+
+		Rectangle(int rectangles) {
+			this.rectangles = rectangles;
+		}
+
+		@Override
+		double[] integrate(Counter counter, double a, double b,
+				double tolerance) throws Throwable {
+			double h = (b - a) / rectangles;
+			double sum = 0;
+			double evenSum = 0;
+			for (int k = 0; k < rectangles; k++) {
+				double y = counter.evaluate(a + k * h);
+				sum += y;
+				if (k % 2 == 0) {
+					evenSum += y;
+				}
+			}
+			double value = h * sum;
+			double error = rectangles % 2 == 0 ? Math.abs(value - 2 * h
+					* evenSum) : Double.NaN;
+			return new double[] { value, error };
+		}
+	}
+
+	private static final class Simpson extends Quadrature {
+		private static final int MAX_DEPTH = 50;
+
+		@Override
+		double[] integrate(Counter counter, double a, double b,
+				double tolerance) throws Throwable {
+			double fa = counter.evaluate(a);
+			double fb = counter.evaluate(b);
+			double m = (a + b) / 2;
+			double fm = counter.evaluate(m);
+			double whole = (b - a) / 6 * (fa + 4 * fm + fb);
+			double[] result = new double[2];
+			refine(counter, a, b, fa, fm, fb, whole, tolerance, MAX_DEPTH,
+					result);
+			return result;
+		}
+
+		/**
+		 * Adds the integral from a to b and its error estimate to result.
+		 */
+		private void refine(Counter counter, double a, double b, double fa,
+				double fm, double fb, double whole, double tolerance,
+				int depth, double[] result) throws Throwable {
+			double m = (a + b) / 2;
+			double lm = (a + m) / 2;
+			double rm = (m + b) / 2;
+			double flm = counter.evaluate(lm);
+			double frm = counter.evaluate(rm);
+			double left = (m - a) / 6 * (fa + 4 * flm + fm);
+			double right = (b - m) / 6 * (fm + 4 * frm + fb);
+			double difference = left + right - whole;
+
+			if (depth <= 0 || Math.abs(difference) <= 15 * tolerance
+					|| counter.exhausted(4) || !(m > a && m < b)) {
+				// Richardson extrapolation
+				result[0] += left + right + difference / 15;
+				result[1] += Math.abs(difference) / 15;
+			} else {
+				refine(counter, a, m, fa, flm, fm, left, tolerance / 2,
+						depth - 1, result);
+				refine(counter, m, b, fm, frm, fb, right, tolerance / 2,
+						depth - 1, result);
+			}
+		}
+	}
+
+	private static final class GaussLegendre extends Quadrature {
+		private static final double[] NODES = { -0.906179845938663992797627,
+				-0.538469310105683091036314, 0.0, 0.538469310105683091036314,
+				0.906179845938663992797627 };
+		private static final double[] WEIGHTS = { 0.236926885056189087514264,
+				0.478628670499366468041292, 0.568888888888888888888889,
+				0.478628670499366468041292, 0.236926885056189087514264 };
+
+		@Override
+		double[] integrate(Counter counter, double a, double b,
+				double tolerance) throws Throwable {
+			int panels = 1;
+			double previous = panels(counter, a, b, panels);
+			double error = Double.POSITIVE_INFINITY;
+			while (error > tolerance
+					&& !counter.exhausted(2 * panels * NODES.length)) {
+				panels *= 2;
+				double value = panels(counter, a, b, panels);
+				error = Math.abs(value - previous);
+				previous = value;
+			}
+			return new double[] { previous, error };
+		}
+
+		private double panels(Counter counter, double a, double b, int panels)
+				throws Throwable {
+			double width = (b - a) / panels;
+			double halfWidth = width / 2;
+			double sum = 0;
+			for (int p = 0; p < panels; p++) {
+				double center = a + (p + 0.5) * width;
+				for (int i = 0; i < NODES.length; i++) {
+					sum += WEIGHTS[i]
+							* counter.evaluate(center + halfWidth * NODES[i]);
+				}
+			}
+			return halfWidth * sum;
+		}
+	}
+
+	private static final class GaussKronrod extends Quadrature {
+		// the non-negative abscissae of the 15 point Kronrod rule on [-1, 1],
+		// each used with both signs, those at odd indices are the abscissae
+		// of the 7 point Gauss rule
+		private static final double[] NODES = { 0.991455371120812639206854697526329,
+				0.949107912342758524526189684047851,
+				0.864864423359769072789712788640926,
+				0.741531185599394439863864773280788,
+				0.586087235467691130294144845693013,
+				0.405845151377397166906606412076961,
+				0.207784955007898467600689403773245, 0.0 };
+		private static final double[] KRONROD_WEIGHTS = {
+				0.022935322010529224963732008058970,
+				0.063092092629978553290700663189204,
+				0.104790010322250183839876322541518,
+				0.140653259715525918745189590510238,
+				0.169004726639267902826583426598550,
+				0.190350578064785409913256402421014,
+				0.204432940075298892414161999234649,
+				0.209482141084727828012999174891714 };
+		private static final double[] GAUSS_WEIGHTS = {
+				0.129484966168869693270611432679082,
+				0.279705391489276667901467771423780,
+				0.381830050505118944950369775488975,
+				0.417959183673469387755102040816327 };
+
+		private static final int MAX_SEGMENTS = 10000;
+
+		/**
+		 * An interval with its Kronrod approximation and error estimate.
+		 */
+		private static final class Segment implements Comparable<Segment> {
+			final double a;
+			final double b;
+			double value;
+			double error;
+
+			Segment(double a, double b) {
+				this.a = a;
+				this.b = b;
+			}
+
+			@Override
+			public int compareTo(Segment other) {
+				// the largest error first
+				return Double.compare(other.error, error);
+			}
+		}
+
+		@Override
+		double[] integrate(Counter counter, double a, double b,
+				double tolerance) throws Throwable {
+			PriorityQueue<Segment> segments = new PriorityQueue<Segment>();
+			Segment whole = evaluate(counter, new Segment(a, b));
+			segments.add(whole);
+			double value = whole.value;
+			double error = whole.error;
+
+			while (error > tolerance && segments.size() < MAX_SEGMENTS
+					&& !counter.exhausted(2 * 15)) {
+				Segment worst = segments.poll();
+				double m = (worst.a + worst.b) / 2;
+				if (!(m > worst.a && m < worst.b)) {
+					// cannot be split further
+					segments.add(worst);
+					break;
+				}
+				Segment left = evaluate(counter, new Segment(worst.a, m));
+				Segment right = evaluate(counter, new Segment(m, worst.b));
+				value += left.value + right.value - worst.value;
+				error += left.error + right.error - worst.error;
+				segments.add(left);
+				segments.add(right);
+			}
+
+			// add up again to avoid the rounding errors of the updates
+			value = 0;
+			error = 0;
+			for (Segment segment : segments) {
+				value += segment.value;
+				error += segment.error;
+			}
+			return new double[] { value, error };
+		}
+
+		private Segment evaluate(Counter counter, Segment segment)
+				throws Throwable {
+			double center = (segment.a + segment.b) / 2;
+			double halfWidth = (segment.b - segment.a) / 2;
+			double fc = counter.evaluate(center);
+			double kronrod = KRONROD_WEIGHTS[7] * fc;
+			double gauss = GAUSS_WEIGHTS[3] * fc;
+			for (int i = 0; i < 7; i++) {
+				double dx = halfWidth * NODES[i];
+				double sum = counter.evaluate(center - dx)
+						+ counter.evaluate(center + dx);
+				kronrod += KRONROD_WEIGHTS[i] * sum;
+				if (i % 2 == 1) {
+					gauss += GAUSS_WEIGHTS[i / 2] * sum;
+				}
+			}
+			segment.value = halfWidth * kronrod;
+			segment.error = Math.abs(halfWidth * (kronrod - gauss));
+			return segment;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Approximates an integral with the rectangle method for very large numbers of
+ * rectangles. The rectangles are split into ranges that are summed on all
+ * cores, a chunk of x-values at a time, and the sums are accumulated with
+ * Neumaier's compensated summation so the rounding error does not grow with
+ * the number of rectangles. The progress can be followed with a listener, and
+ * the integration can be cancelled from any thread.
+ *
+ * An integrator is used for one integration only.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public final class RectangleIntegrator {
+
+	/**
+	 * Is told how many rectangles have been summed.
+	 */
+	public interface ProgressListener {
+		/**
+		 * Called from the threads doing the integration.
+		 *
+		 * @param done
+		 *            Number of rectangles summed so far
+		 * @param total
+		 *            Number of rectangles in all
+		 */
+		void progress(long done, long total);
+	}
+
+	// ranges are split until they are about this many times the number of
+	// threads, so that all cores are kept busy until the end
+	private static final int RANGES_PER_THREAD = 16;
+
+	private final ParallelEvaluator.ChunkEvaluator evaluator;
+	private final double a;
+	private final double h;
+	private final long rectangles;
+	private final boolean parallel;
+
+	private final AtomicLong done = new AtomicLong();
+	private volatile boolean cancelled = false;
+	private volatile ProgressListener listener;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param evaluator
+	 *            Evaluates the function, it is called from several threads at
+	 *            once if parallel is true
+	 * @param a
+	 *            The value we are integrating from
+	 * @param b
+	 *            The value we are integrating to
+	 * @param rectangles
+	 *            Number of rectangles
+	 * @param parallel
+	 *            If the rectangles are summed on all cores
+	 */
+	RectangleIntegrator(ParallelEvaluator.ChunkEvaluator evaluator, double a,
+			double b, long rectangles, boolean parallel) {
+		if (rectangles < 1) {
+			throw new IllegalArgumentException(
+					"At least one rectangle is needed, got " + rectangles);
+		}
+		this.evaluator = evaluator;
+		this.a = a;
+		this.h = (b - a) / rectangles;
+		this.rectangles = rectangles;
+		this.parallel = parallel;
+	}
+
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Stops the integration as soon as the chunks being evaluated are done.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public long getRectangles() {
+		return rectangles;
+	}
+
+	/**
+	 * Sums the rectangles. The error is estimated by comparing with the sum of
+	 * every second rectangle when there is an even number of rectangles.
+	 *
+	 * @return The approximated integral.
+	 * @throws CancellationException
+	 *             If the integration was cancelled.
+	 * @throws Throwable
+	 *             If the function cannot be evaluated.
+	 */
+	public Quadrature.Result integrate() throws Throwable {
+		Range range = new Range(0, rectangles, parallel ? Math.max(
+				ParallelEvaluator.CHUNK_SIZE, rectangles
+						/ (RANGES_PER_THREAD * ParallelEvaluator.POOL
+								.getParallelism())) : rectangles);
+		Sums sums;
+		if (parallel) {
+			try {
+				sums = ParallelEvaluator.POOL.invoke(range);
+			} catch (RangeFailure e) {
+				throw e.getCause();
+			}
+		} else {
+			sums = range.sum();
+		}
+		if (cancelled) {
+			throw new CancellationException();
+		}
+
+		double value = h * sums.all.total();
+		double error = rectangles % 2 == 0 ? Math.abs(value - 2 * h
+				* sums.even.total()) : Double.NaN;
+		return new Quadrature.Result(value, error, rectangles);
+	}
+
+	/**
+	 * Neumaier's compensated sum.
+	 */
+	private static final class Sum {
+		double sum = 0;
+		double compensation = 0;
+
+		void add(double value) {
+			double t = sum + value;
+			if (Math.abs(sum) >= Math.abs(value)) {
+				compensation += (sum - t) + value;
+			} else {
+				compensation += (value - t) + sum;
+			}
+			sum = t;
+		}
+
+		void add(Sum other) {
+			add(other.sum);
+			add(other.compensation);
+		}
+
+		double total() {
+			return sum + compensation;
+		}
+	}
+
+	/**
+	 * The sum of all rectangles in a range and of the rectangles with an even
+	 * index.
+	 */
+	private static final class Sums {
+		final Sum all = new Sum();
+		final Sum even = new Sum();
+
+		void add(Sums other) {
+			all.add(other.all);
+			even.add(other.even);
+		}
+	}
+
+	/**
+	 * Sums the rectangles with index from (inclusive) to to (exclusive),
+	 * splitting the range in halves until it is no longer than the range size.
+	 */
+	private final class Range extends RecursiveTask<Sums> {
+		private static final long serialVersionUID = 1L;
+
+		private final long from;
+		private final long to;
+		private final long rangeSize;
+
+		Range(long from, long to, long rangeSize) {
+			this.from = from;
+			this.to = to;
+			this.rangeSize = rangeSize;
+		}
+
+		@Override
+		protected Sums compute() {
+			if (to - from <= rangeSize) {
+				try {
+					return sum();
+				} catch (Throwable e) {
+					throw new RangeFailure(e);
+				}
+			}
+			long middle = (from + to) >>> 1;
+			Range right = new Range(middle, to, rangeSize);
+			right.fork();
+			Sums sums = new Range(from, middle, rangeSize).compute();
+			sums.add(right.join());
+			return sums;
+		}
+
+		Sums sum() throws Throwable {
+			Sums sums = new Sums();
+			int chunk = (int) Math.min(ParallelEvaluator.CHUNK_SIZE, to - from);
+			double[] xvalues = new double[chunk];
+			double[] yvalues = new double[chunk];
+
+			for (long k = from; k < to && !cancelled; k += chunk) {
+				int n = (int) Math.min(chunk, to - k);
+				for (int i = 0; i < n; i++) {
+					xvalues[i] = a + (k + i) * h;
+				}
+				evaluator.evaluate(xvalues, yvalues, 0, n);
+				for (int i = 0; i < n; i++) {
+					sums.all.add(yvalues[i]);
+					if (((k + i) & 1) == 0) {
+						sums.even.add(yvalues[i]);
+					}
+				}
+
+				long total = done.addAndGet(n);
+				ProgressListener current = listener;
+				if (current != null) {
+					current.progress(total, rectangles);
+				}
+			}
+			return sums;
+		}
+	}
+
+	/**
+	 * Carries the failure of a range out of the fork-join pool.
+	 */
+	private static final class RangeFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		RangeFailure(Throwable cause) {
+			super(cause);
+		}
+	}
+}
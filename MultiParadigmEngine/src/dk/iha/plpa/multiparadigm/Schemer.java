@@ -0,0 +1,1115 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import gnu.lists.F64Vector;
+import gnu.mapping.Environment;
+import gnu.mapping.Procedure;
+import gnu.math.DFloNum;
+import gnu.math.IntNum;
+import kawa.standard.Scheme;
+
+/**
+ * Contains all methods for calculations done in the Schemer graphing tool.
+ * 
+ * @author Tommy, Mikkel and Olafur
+ * 
+ */
+public class Schemer {
+
+	private Environment environment;
+
+	// compiled procedures for the registered functions, keyed by function id
+	private Map<String, Procedure> procedures = new HashMap<String, Procedure>();
+
+	// expressions of the registered functions and their dependencies
+	private FunctionRegistry registry = new FunctionRegistry();
+
+	// evaluated series, keyed by the fingerprints of the functions
+	private SeriesCache seriesCache = new SeriesCache();
+
+	// samples in x-space tiles for panning and zooming, keyed by the
+	// fingerprints of the functions
+	private TileCache tileCache = new TileCache();
+
+	// ids of all functions registered by the user, including failed ones
+	private Set<String> registeredIds = new HashSet<String>();
+
+	// registered functions that could be compiled to plain arithmetic on
+	// doubles, keyed by function id
+	private Map<String, Expr> compiled = new HashMap<String, Expr>();
+
+	// symbolic derivatives of the compiled functions, keyed by function id
+	private Map<String, Expr> compiledDerivatives = new HashMap<String, Expr>();
+
+	// evaluates large arrays on all cores, null for the isolated Schemers
+	// used by its worker threads
+	private ParallelEvaluator parallelEvaluator;
+
+	// errors are only reported for the Schemer used by the user interface
+	private boolean reportErrors;
+
+	// told about functions that fail, null if nobody is
+	private ErrorListener errorListener;
+
+	/**
+	 * Is told when a function cannot be registered or evaluated, like the
+	 * user interface showing an error message for it.
+	 */
+	public interface ErrorListener {
+		/**
+		 * Called on the thread using the Schemer.
+		 * 
+		 * @param functionExpression
+		 *            String representation of the function that failed
+		 */
+		void functionFailed(String functionExpression);
+	}
+
+	/**
+	 * Constructor for Schemer class. Initializes the Scheme environment and
+	 * registers functions used in various calculations. The functions are:
+	 * (derivative f) - returns a procedure that is the approximation of the
+	 * derivative of function f (evaluate-grid f xs) - returns an f64vector
+	 * with f applied to every value of the f64vector xs
+	 * 
+	 */
+	public Schemer() {
+
+		Scheme.registerEnvironment();
+		environment = Environment.getCurrent();
+		parallelEvaluator = new ParallelEvaluator();
+		reportErrors = true;
+		definePrelude();
+	}
+
+	/**
+	 * Constructor for a Schemer using the given environment. Nothing is
+	 * registered in the environment.
+	 * 
+	 * @param environment
+	 *            The Scheme environment to use
+	 */
+	private Schemer(Environment environment) {
+		this.environment = environment;
+	}
+
+	/**
+	 * Creates a Schemer with its own new Scheme environment, that does not
+	 * share any definitions with other instances. It evaluates on the calling
+	 * thread only and does not report errors.
+	 * 
+	 * @return The new Schemer.
+	 */
+	static Schemer newIsolated() {
+		Scheme.registerEnvironment();
+		Schemer schemer = new Schemer(Scheme.getInstance().getNewEnvironment());
+		schemer.definePrelude();
+		return schemer;
+	}
+
+	/**
+	 * Registers the functions described in the constructor in the Scheme
+	 * environment.
+	 */
+	private void definePrelude() {
+
+		// Define the derivative function
+		String derivativeExpression = "(define dx 0.001) "
+				+ "(define derivative (lambda (f)(lambda (x) "
+				+ "(/ (- (f (+ x dx)) (f x)) dx))))";
+		Scheme.eval(derivativeExpression, environment);
+
+
+		// define the function evaluating a function over a whole grid
+		String evaluateGrid = "(define evaluate-grid (lambda (f xs) "
+				+ "(let* ((n (f64vector-length xs)) (ys (make-f64vector n))) "
+				+ "(do ((i 0 (+ i 1))) ((= i n) ys) "
+				+ "(f64vector-set! ys i (exact->inexact (f (f64vector-ref xs i))))))))";
+		Scheme.eval(evaluateGrid, environment);
+	}
+
+	/**
+	 * Registers a Scheme function in the current scheme environment for this
+	 * instance of Schemer. Takes in a function id which is the name given to
+	 * the function in the scheme environment. The function is compiled once
+	 * and the resulting procedure is cached, so it can be applied directly to
+	 * each x value without building and parsing a new expression. If the
+	 * function only uses plain arithmetic it is also compiled to an Expr,
+	 * which is used instead of Kawa when evaluating it, and its derivative is
+	 * found symbolically and compiled as well. Registering the same
+	 * expression again for a function id does nothing.
+	 * 
+	 * @param functionExpression
+	 *            String representation of the scheme function
+	 * @param functionId
+	 *            The id used for this function in the current Scheme
+	 *            environment.
+	 * @return The compiled procedure if registration was successful else
+	 *         null.
+	 */
+	public Procedure registerFunction(String functionExpression,
+			String functionId) {
+		Procedure registered = procedures.get(functionId);
+		if (registered != null
+				&& registry.isRegistered(functionId, functionExpression)) {
+			return registered;
+		}
+
+		registeredIds.add(functionId);
+		try {
+			Scheme.eval("(define " + functionId + "  (lambda (x) "
+					+ functionExpression + "))", environment);
+			Procedure procedure = (Procedure) Scheme.eval(functionId,
+					environment);
+			procedures.put(functionId, procedure);
+			registry.update(functionId, functionExpression);
+			if (parallelEvaluator != null) {
+				parallelEvaluator.define(functionId, functionExpression);
+			}
+
+			Expr expr = ExpressionCompiler.compile(functionExpression);
+			if (expr != null) {
+				compiled.put(functionId, expr);
+				compiledDerivatives.put(functionId,
+						Differentiator.derive(expr));
+			} else {
+				compiled.remove(functionId);
+				compiledDerivatives.remove(functionId);
+			}
+			return procedure;
+		} catch (Exception e) {
+			procedures.remove(functionId);
+			registry.remove(functionId);
+			compiled.remove(functionId);
+			compiledDerivatives.remove(functionId);
+			if (parallelEvaluator != null) {
+				parallelEvaluator.define(functionId, null);
+			}
+			reportError(functionExpression);
+			return null;
+		}
+	}
+
+	/**
+	 * Removes all functions registered with registerFunction, so only the
+	 * functions defined in the constructor are left. The ids are bound to #f
+	 * in the Scheme environment, since Scheme cannot remove a definition.
+	 */
+	void reset() {
+		for (String functionId : registeredIds) {
+			Scheme.eval("(define " + functionId + " #f)", environment);
+			if (parallelEvaluator != null) {
+				parallelEvaluator.define(functionId, null);
+			}
+		}
+		registeredIds.clear();
+		procedures.clear();
+		registry.clear();
+		compiled.clear();
+		compiledDerivatives.clear();
+	}
+
+	/**
+	 * Removes a function registered with registerFunction. The id is bound to
+	 * #f in the Scheme environment like in reset, so functions calling it fail
+	 * instead of using the removed definition.
+	 * 
+	 * @param functionId
+	 *            The id used for the function in the Scheme environment
+	 */
+	public void unregisterFunction(String functionId) {
+		if (!registeredIds.remove(functionId)) {
+			return;
+		}
+		Scheme.eval("(define " + functionId + " #f)", environment);
+		if (parallelEvaluator != null) {
+			parallelEvaluator.define(functionId, null);
+		}
+		procedures.remove(functionId);
+		registry.remove(functionId);
+		compiled.remove(functionId);
+		compiledDerivatives.remove(functionId);
+	}
+
+	/**
+	 * Looks up the compiled procedure with the given name. Procedures of
+	 * registered functions are cached, other names (like the ones defined in
+	 * the constructor) are looked up in the Scheme environment.
+	 * 
+	 * @param name
+	 *            The name of the procedure in the Scheme environment
+	 * @return The procedure bound to the name
+	 */
+	private Procedure getProcedure(String name) {
+		Procedure procedure = procedures.get(name);
+		if (procedure == null) {
+			procedure = (Procedure) Scheme.eval(name, environment);
+		}
+		return procedure;
+	}
+
+	/**
+	 * Calls a procedure in the Scheme environment with the given arguments.
+	 * The arguments are passed to the procedure as Scheme values without
+	 * going through Scheme source text: doubles are passed as DFloNum,
+	 * integers and longs as IntNum and arrays of doubles as F64Vector. Other
+	 * arguments, like procedures, are passed as they are.
+	 * 
+	 * @param name
+	 *            The name of the procedure in the Scheme environment
+	 * @param arguments
+	 *            The arguments of the procedure
+	 * @return The value returned by the procedure.
+	 * @throws Throwable
+	 *             If the procedure fails.
+	 */
+	public Object invoke(String name, Object... arguments) throws Throwable {
+		return apply(getProcedure(name), arguments);
+	}
+
+	/**
+	 * Calls a procedure returning a number and converts the number to a
+	 * double.
+	 * 
+	 * @param name
+	 *            The name of the procedure in the Scheme environment
+	 * @param arguments
+	 *            The arguments of the procedure, converted like in invoke
+	 * @return The value returned by the procedure as a double.
+	 * @throws Throwable
+	 *             If the procedure fails or does not return a number.
+	 */
+	public double invokeDouble(String name, Object... arguments)
+			throws Throwable {
+		return toDouble(invoke(name, arguments));
+	}
+
+	/**
+	 * Calls a procedure with the given arguments, converted like in invoke.
+	 */
+	private static Object apply(Procedure procedure, Object... arguments)
+			throws Throwable {
+		Object[] values = new Object[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			values[i] = toScheme(arguments[i]);
+		}
+		switch (values.length) {
+		case 0:
+			return procedure.apply0();
+		case 1:
+			return procedure.apply1(values[0]);
+		case 2:
+			return procedure.apply2(values[0], values[1]);
+		case 3:
+			return procedure.apply3(values[0], values[1], values[2]);
+		case 4:
+			return procedure.apply4(values[0], values[1], values[2],
+					values[3]);
+		default:
+			return procedure.applyN(values);
+		}
+	}
+
+	/**
+	 * Converts a Java value to the Scheme value passed to procedures.
+	 * 
+	 * @param value
+	 *            The Java value
+	 * @return The Scheme value.
+	 */
+	static Object toScheme(Object value) {
+		if (value instanceof Double || value instanceof Float) {
+			return new DFloNum(((Number) value).doubleValue());
+		} else if (value instanceof Integer || value instanceof Short
+				|| value instanceof Byte) {
+			return IntNum.make(((Number) value).intValue());
+		} else if (value instanceof Long) {
+			return IntNum.make(((Long) value).longValue());
+		} else if (value instanceof double[]) {
+			return new F64Vector((double[]) value);
+		}
+		return value;
+	}
+
+	/**
+	 * Converts a number returned from Scheme to a double. All Scheme numbers
+	 * are Java Numbers, so this is the one conversion used for all values
+	 * returned from Scheme.
+	 * 
+	 * @param value
+	 *            The value returned from Scheme
+	 * @return The value as a double
+	 * @throws ClassCastException
+	 *             If the value is not a number.
+	 */
+	static double toDouble(Object value) {
+		return ((Number) value).doubleValue();
+	}
+
+	/**
+	 * Approximates an integral of functionId registered in the Scheme
+	 * environment to the given tolerance. Compiled functions are integrated on
+	 * doubles, other functions are evaluated point by point by Kawa.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param a
+	 *            The value we are calculating from
+	 * @param b
+	 *            The value we are calculating to.
+	 * @param derivative
+	 *            Tells if we are calculating the area for a derivative
+	 *            function.
+	 * @param logarithmic
+	 *            Tells if we are integrating the 10-base logarithm of the
+	 *            absolute value of the function, like it is plotted on the
+	 *            logarithmic scale
+	 * @param quadrature
+	 *            The method used
+	 * @param tolerance
+	 *            The wanted absolute error
+	 * @return The approximated integral, or null if the function could not be
+	 *         integrated.
+	 */
+	public Quadrature.Result integrate(String functionId, double a, double b,
+			boolean derivative, boolean logarithmic, Quadrature quadrature,
+			double tolerance) {
+		try {
+			return quadrature.integrate(
+					integrand(functionId, derivative, logarithmic), a, b,
+					tolerance);
+		} catch (Throwable e) {
+			reportError(expressionOf(functionId));
+			return null;
+		}
+	}
+
+	/**
+	 * Creates an integrator summing rectangles for a registered function or
+	 * its derivative. Compiled functions and functions registered in the
+	 * Schemer used by the user interface are summed on all cores, and the
+	 * integrator may be run on any thread, since it does not use this
+	 * Schemer's environment.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param a
+	 *            The value we are calculating from
+	 * @param b
+	 *            The value we are calculating to.
+	 * @param rectangles
+	 *            No. of rectangles used in the calculation.
+	 * @param derivative
+	 *            Tells if we are calculating the area for a derivative
+	 *            function.
+	 * @param logarithmic
+	 *            Tells if we are integrating the 10-base logarithm of the
+	 *            absolute value of the function
+	 * @return The integrator, which has not been started.
+	 */
+	public RectangleIntegrator rectangleIntegrator(final String functionId,
+			double a, double b, long rectangles, boolean derivative,
+			boolean logarithmic) {
+		final int order = derivative ? 1 : 0;
+		Expr expr = derivative ? compiledDerivatives.get(functionId)
+				: compiled.get(functionId);
+		ParallelEvaluator.ChunkEvaluator evaluator;
+		boolean parallel = true;
+		if (expr != null) {
+			evaluator = compiledEvaluator(expr);
+		} else if (parallelEvaluator != null) {
+			evaluator = parallelEvaluator.scheme(functionId, order);
+		} else {
+			evaluator = new ParallelEvaluator.ChunkEvaluator() {
+				@Override
+				public void evaluate(double[] xvalues, double[] yvalues,
+						int from, int to) throws Throwable {
+					double[] result = evaluateBatch(
+							curveProcedure(functionId, order),
+							Arrays.copyOfRange(xvalues, from, to));
+					System.arraycopy(result, 0, yvalues, from, result.length);
+				}
+			};
+			parallel = false;
+		}
+		return new RectangleIntegrator(transformed(evaluator,
+				Transform.forScale(logarithmic)), a, b, rectangles, parallel);
+	}
+
+	/**
+	 * Creates a chunk evaluator applying a transform to the chunks evaluated
+	 * by another one. The transform must work on each value by itself, like
+	 * the transform of a scale.
+	 */
+	private static ParallelEvaluator.ChunkEvaluator transformed(
+			final ParallelEvaluator.ChunkEvaluator evaluator,
+			final Transform transform) {
+		if (transform.isIdentity()) {
+			return evaluator;
+		}
+		return new ParallelEvaluator.ChunkEvaluator() {
+			@Override
+			public void evaluate(double[] xvalues, double[] yvalues,
+					int from, int to) throws Throwable {
+				evaluator.evaluate(xvalues, yvalues, from, to);
+				transform.applyInPlace(yvalues, from, to);
+			}
+		};
+	}
+
+	/**
+	 * Creates the integrand for a registered function or its derivative.
+	 */
+	private Quadrature.Integrand integrand(String functionId,
+			boolean derivative, final boolean logarithmic) throws Throwable {
+		final Expr expr = derivative ? compiledDerivatives.get(functionId)
+				: compiled.get(functionId);
+		if (expr != null) {
+			return new Quadrature.Integrand() {
+				@Override
+				public double evaluate(double x) {
+					double y = expr.eval(x);
+					return logarithmic ? Math.log10(Math.abs(y)) : y;
+				}
+			};
+		}
+
+		final Procedure function = curveProcedure(functionId, derivative ? 1
+				: 0);
+		return new Quadrature.Integrand() {
+			@Override
+			public double evaluate(double x) throws Throwable {
+				double y = toDouble(function.apply1(new DFloNum(x)));
+				return logarithmic ? Math.log10(Math.abs(y)) : y;
+			}
+		};
+	}
+
+	/**
+	 * Generates the extremes of the Y scale when using logarithmic scales.
+	 * 
+	 * @param ymin
+	 *            Minimum values of Y
+	 * @param ymax
+	 *            Maximum values of Y
+	 * @return Array of extremes of Y for logarithmic scale
+	 */
+	public double[] getLogExtremes(Double ymin, Double ymax) {
+		return new double[] { Math.pow(10, ymin), Math.pow(10, ymax) };
+	}
+
+	/**
+	 * Evaluates a registered function with functionId in the current scheme
+	 * environment, over the array x-values. Function expression is passed in
+	 * for correct error reporting only.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param functionExpression
+	 *            String representation of the function.
+	 * @param xvalues
+	 *            Array of X values
+	 * @param logarithmicScale
+	 *            Boolean - if we are using the logarithmic scale or not.
+	 * @return An array of evaluated values.
+	 * 
+	 */
+	public double[] evaluateFunction(String functionId,
+			String functionExpression, double[] xvalues,
+			boolean logarithmicScale) {
+
+		double[] yvalues = new double[xvalues.length];
+
+		// Calculate expression
+		try {
+			yvalues = Transform.forScale(logarithmicScale).apply(
+					evaluateCurve(functionId, xvalues, 0));
+		} catch (Throwable e) {
+			reportError(functionExpression);
+		}
+		return yvalues;
+	}
+
+	/**
+	 * Evaluates the derivative of the registered function with functionId in
+	 * the current scheme environment, over the array of xvalues.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param xvalues
+	 *            Array of X values
+	 * @param logarithmicScale
+	 *            Boolean - if we are using the logarithmic scale or not.
+	 * @return an array of evaluated values.
+	 * 
+	 */
+	public double[] evaluateFunctionDerivative(String functionId,
+			double[] xvalues, boolean logarithmicScale) {
+
+		double[] yvalues = new double[xvalues.length];
+
+		// Calculate expression
+		try {
+			yvalues = Transform.forScale(logarithmicScale).apply(
+					evaluateCurve(functionId, xvalues, 1));
+		} catch (Throwable e) {
+			reportError(expressionOf(functionId));
+		}
+
+		return yvalues;
+	}
+
+	/**
+	 * Evaluates a registered function with functionId over a grid. The
+	 * evaluated values are cached, so evaluating the same function over the
+	 * same grid again does not evaluate the function. The returned array may
+	 * be shared with the cache and must not be modified.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param functionExpression
+	 *            String representation of the function.
+	 * @param grid
+	 *            The grid of X values
+	 * @param logarithmicScale
+	 *            Boolean - if we are using the logarithmic scale or not.
+	 * @return An array of evaluated values.
+	 */
+	public double[] evaluateFunction(String functionId,
+			String functionExpression, Grid grid, boolean logarithmicScale) {
+		return evaluateFunction(functionId, functionExpression, grid,
+				Transform.forScale(logarithmicScale));
+	}
+
+	/**
+	 * Evaluates a registered function with functionId over a grid and applies
+	 * a transform to the values. The values are cached before they are
+	 * transformed, so changing the transform does not evaluate the function
+	 * again. The returned array may be shared with the cache and must not be
+	 * modified.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param functionExpression
+	 *            String representation of the function.
+	 * @param grid
+	 *            The grid of X values
+	 * @param transform
+	 *            The transform applied to the evaluated values
+	 * @return An array of evaluated and transformed values.
+	 */
+	public double[] evaluateFunction(String functionId,
+			String functionExpression, Grid grid, Transform transform) {
+		try {
+			return transform.apply(evaluateCached(functionId, grid, 0));
+		} catch (Throwable e) {
+			reportError(functionExpression);
+			return new double[grid.size()];
+		}
+	}
+
+	/**
+	 * Evaluates the derivative of the registered function with functionId
+	 * over a grid. The evaluated values are cached like in evaluateFunction.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param grid
+	 *            The grid of X values
+	 * @param logarithmicScale
+	 *            Boolean - if we are using the logarithmic scale or not.
+	 * @return an array of evaluated values.
+	 */
+	public double[] evaluateFunctionDerivative(String functionId, Grid grid,
+			boolean logarithmicScale) {
+		try {
+			return Transform.forScale(logarithmicScale).apply(
+					evaluateCached(functionId, grid, 1));
+		} catch (Throwable e) {
+			reportError(expressionOf(functionId));
+			return new double[grid.size()];
+		}
+	}
+
+	/**
+	 * Evaluates the registered function with functionId and its derivatives
+	 * up to the given order over a grid, on the chosen scale.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param functionExpression
+	 *            String representation of the function.
+	 * @param grid
+	 *            The grid of X values
+	 * @param order
+	 *            The highest derivative to evaluate
+	 * @param logarithmicScale
+	 *            Boolean - if we are using the logarithmic scale or not.
+	 * @return Array of order + 1 arrays of evaluated values, where the array
+	 *         at index k holds the k-th derivative.
+	 */
+	public double[][] evaluateDerivatives(String functionId,
+			String functionExpression, Grid grid, int order,
+			boolean logarithmicScale) {
+		return evaluateDerivatives(functionId, functionExpression, grid,
+				order, Transform.forScale(logarithmicScale));
+	}
+
+	/**
+	 * Evaluates the registered function with functionId and its derivatives
+	 * up to the given order over a grid. Compiled functions are evaluated
+	 * with automatic differentiation, so the function and all its derivatives
+	 * cost about one evaluation of the function. Other functions evaluate
+	 * each derivative separately with finite differences. The evaluated values
+	 * are cached and transformed like in evaluateFunction.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param functionExpression
+	 *            String representation of the function.
+	 * @param grid
+	 *            The grid of X values
+	 * @param order
+	 *            The highest derivative to evaluate
+	 * @param transform
+	 *            The transform applied to the evaluated values
+	 * @return Array of order + 1 arrays of evaluated values, where the array
+	 *         at index k holds the k-th derivative.
+	 */
+	public double[][] evaluateDerivatives(String functionId,
+			String functionExpression, Grid grid, int order,
+			Transform transform) {
+		double[][] result = new double[order + 1][];
+		String fingerprint = registry.fingerprint(functionId);
+		Expr expr = compiled.get(functionId);
+
+		try {
+			boolean cached = fingerprint != null;
+			for (int k = 0; k <= order && cached; k++) {
+				result[k] = seriesCache.get(new SeriesCache.Key(fingerprint,
+						grid, k));
+				cached = result[k] != null;
+			}
+
+			if (cached) {
+				// nothing to evaluate
+			} else if (expr == null) {
+				for (int k = 0; k <= order; k++) {
+					result[k] = evaluateCached(functionId, grid, k);
+				}
+			} else {
+				result = evaluateTaylor(expr, grid.toArray(), order);
+				if (fingerprint != null) {
+					for (int k = 0; k <= order; k++) {
+						seriesCache.put(new SeriesCache.Key(fingerprint, grid,
+								k), result[k]);
+					}
+				}
+			}
+
+			for (int k = 0; k <= order; k++) {
+				result[k] = transform.apply(result[k]);
+			}
+		} catch (Throwable e) {
+			reportError(functionExpression);
+			for (int k = 0; k <= order; k++) {
+				result[k] = new double[grid.size()];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates the registered function with functionId and its derivatives
+	 * up to the given order over an array of x-values, like
+	 * evaluateDerivatives over a grid but without the cache. Used for the
+	 * samples of a level when plotting coarse to fine.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param functionExpression
+	 *            String representation of the function.
+	 * @param xvalues
+	 *            Array of X values
+	 * @param order
+	 *            The highest derivative to evaluate
+	 * @return Array of order + 1 arrays of evaluated values, where the array
+	 *         at index k holds the k-th derivative, or null if the function
+	 *         cannot be evaluated.
+	 */
+	public double[][] evaluateDerivatives(String functionId,
+			String functionExpression, double[] xvalues, int order) {
+		try {
+			Expr expr = compiled.get(functionId);
+			if (expr != null) {
+				return evaluateTaylor(expr, xvalues, order);
+			}
+			double[][] result = new double[order + 1][];
+			for (int k = 0; k <= order; k++) {
+				result[k] = evaluateCurve(functionId, xvalues, k);
+			}
+			return result;
+		} catch (Throwable e) {
+			reportError(functionExpression);
+			return null;
+		}
+	}
+
+	/**
+	 * Evaluates the registered function with functionId and its derivatives
+	 * up to the given order at least datapoints + 1 equally spaced x values
+	 * from xmin to xmax, for a view of the plot that is panned or zoomed. The
+	 * samples are assembled from the tiles of the TileCache, so only the
+	 * tiles not evaluated before at the resolution of the view are evaluated.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param functionExpression
+	 *            String representation of the function.
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param datapoints
+	 *            Minimum number of intervals between xmin and xmax
+	 * @param order
+	 *            The highest derivative to evaluate
+	 * @return The samples, or null if the function cannot be evaluated.
+	 */
+	public AdaptiveSampler.Result evaluateView(final String functionId,
+			final String functionExpression, double xmin, double xmax,
+			int datapoints, final int order) {
+		String fingerprint = registry.fingerprint(functionId);
+		try {
+			return tileCache.sample(fingerprint != null ? fingerprint
+					: functionExpression, order, xmin, xmax, datapoints,
+					new AdaptiveSampler.Function() {
+						@Override
+						public double[][] evaluate(double[] xvalues) {
+							return evaluateDerivatives(functionId,
+									functionExpression, xvalues, order);
+						}
+					});
+		} catch (Throwable e) {
+			reportError(functionExpression);
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if the registered function with functionId and its derivatives
+	 * up to the given order are all cached for a grid.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param grid
+	 *            The grid of X values
+	 * @param order
+	 *            The highest derivative
+	 * @return true if evaluateDerivatives over the grid does not evaluate the
+	 *         function.
+	 */
+	public boolean isCached(String functionId, Grid grid, int order) {
+		String fingerprint = registry.fingerprint(functionId);
+		if (fingerprint == null) {
+			return false;
+		}
+		for (int k = 0; k <= order; k++) {
+			if (!seriesCache.contains(new SeriesCache.Key(fingerprint, grid,
+					k))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Caches the values of the registered function with functionId and its
+	 * derivatives that were evaluated over a grid some other way, like level
+	 * by level when plotting coarse to fine. The arrays are shared with the
+	 * cache and must not be modified afterwards.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param grid
+	 *            The grid of X values
+	 * @param values
+	 *            Array of arrays of evaluated values, where the array at
+	 *            index k holds the k-th derivative
+	 */
+	public void cacheDerivatives(String functionId, Grid grid,
+			double[][] values) {
+		String fingerprint = registry.fingerprint(functionId);
+		if (fingerprint == null) {
+			return;
+		}
+		for (int k = 0; k < values.length; k++) {
+			seriesCache.put(new SeriesCache.Key(fingerprint, grid, k),
+					values[k]);
+		}
+	}
+
+	/**
+	 * Looks up an evaluated series in the cache, evaluating and caching it if
+	 * it is not there. Series are cached by the fingerprint of the function,
+	 * so a series is evaluated again when the function or any function it
+	 * calls has changed.
+	 */
+	private double[] evaluateCached(String functionId, Grid grid, int order)
+			throws Throwable {
+		String fingerprint = registry.fingerprint(functionId);
+		SeriesCache.Key key = null;
+		if (fingerprint != null) {
+			key = new SeriesCache.Key(fingerprint, grid, order);
+			double[] cached = seriesCache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		double[] yvalues = evaluateCurve(functionId, grid.toArray(), order);
+		if (key != null) {
+			seriesCache.put(key, yvalues);
+		}
+		return yvalues;
+	}
+
+	/**
+	 * @return The registry of the registered functions and their
+	 *         dependencies.
+	 */
+	public FunctionRegistry getFunctionRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @return The cache of evaluated series, with its hit and miss counters.
+	 */
+	public SeriesCache getSeriesCache() {
+		return seriesCache;
+	}
+
+	/**
+	 * @return The cache of evaluated tiles, with its hit and miss counters.
+	 */
+	public TileCache getTileCache() {
+		return tileCache;
+	}
+
+	/**
+	 * Evaluates a registered function or one of its derivatives over the
+	 * array of x-values. Compiled functions and their derivatives are
+	 * evaluated on doubles by a TaylorEvaluator, other functions by Kawa.
+	 * Large arrays are evaluated on all cores.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param xvalues
+	 *            Array of X values
+	 * @param order
+	 *            The derivative to evaluate, 0 for the function itself
+	 * @return An array of evaluated values.
+	 * @throws Throwable
+	 *             If the function fails for any of the x-values.
+	 */
+	private double[] evaluateCurve(String functionId, double[] xvalues,
+			int order) throws Throwable {
+		Expr expr = compiled.get(functionId);
+		if (expr != null) {
+			// like in evaluateDerivatives, so a cached series has the same
+			// values whichever of them evaluated it
+			return evaluateTaylor(expr, xvalues, order)[order];
+		}
+
+		if (parallelEvaluator != null
+				&& xvalues.length >= ParallelEvaluator.PARALLEL_THRESHOLD) {
+			return parallelEvaluator.evaluate(xvalues,
+					parallelEvaluator.scheme(functionId, order));
+		}
+		return evaluateBatch(curveProcedure(functionId, order), xvalues);
+	}
+
+	/**
+	 * Evaluates a compiled function and its derivatives up to the given order
+	 * over the array of x-values in one pass. Large arrays are evaluated on
+	 * all cores, with a TaylorEvaluator for each chunk.
+	 * 
+	 * @param expr
+	 *            The compiled function
+	 * @param xvalues
+	 *            Array of X values
+	 * @param order
+	 *            The highest derivative to evaluate
+	 * @return Array of order + 1 arrays of evaluated values, where the array
+	 *         at index k holds the k-th derivative.
+	 * @throws Throwable
+	 *             If the evaluation fails.
+	 */
+	private double[][] evaluateTaylor(final Expr expr, double[] xvalues,
+			final int order) throws Throwable {
+		final double[][] result = new double[order + 1][xvalues.length];
+		ParallelEvaluator.ChunkEvaluator evaluator = new ParallelEvaluator.ChunkEvaluator() {
+			@Override
+			public void evaluate(double[] xvalues, double[] yvalues,
+					int from, int to) {
+				new TaylorEvaluator(expr, order).evaluate(xvalues, result,
+						from, to);
+			}
+		};
+
+		if (parallelEvaluator != null
+				&& xvalues.length >= ParallelEvaluator.PARALLEL_THRESHOLD) {
+			parallelEvaluator.evaluateInto(xvalues, result[0], evaluator);
+		} else {
+			evaluator.evaluate(xvalues, result[0], 0, xvalues.length);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a chunk evaluator for a compiled function. Compiled functions
+	 * are immutable, so the evaluator can be used from any thread.
+	 * 
+	 * @param expr
+	 *            The compiled function, or its compiled derivative
+	 * @return The chunk evaluator.
+	 */
+	private static ParallelEvaluator.ChunkEvaluator compiledEvaluator(
+			final Expr expr) {
+		return new ParallelEvaluator.ChunkEvaluator() {
+			@Override
+			public void evaluate(double[] xvalues, double[] yvalues,
+					int from, int to) {
+				for (int i = from; i < to; i++) {
+					yvalues[i] = expr.eval(xvalues[i]);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the procedure evaluating a registered function, or one of its
+	 * derivatives.
+	 * 
+	 * @param functionId
+	 *            The id of the registered scheme function
+	 * @param order
+	 *            The derivative the procedure should evaluate, 0 for the
+	 *            function itself
+	 * @return The procedure.
+	 * @throws Throwable
+	 *             If the function is not registered.
+	 */
+	Procedure curveProcedure(String functionId, int order) throws Throwable {
+		Procedure function = getProcedure(functionId);
+		for (int k = 0; k < order; k++) {
+			function = (Procedure) invoke("derivative", function);
+		}
+		return function;
+	}
+
+	/**
+	 * Evaluates a procedure over the array of x-values with a single call into
+	 * Scheme. The x-values are handed over as one f64vector and the results
+	 * are returned the same way, so the Java/Scheme boundary is crossed once
+	 * per curve instead of once per point.
+	 * 
+	 * @param function
+	 *            The procedure to evaluate
+	 * @param xvalues
+	 *            Array of X values
+	 * @return An array of evaluated values.
+	 * @throws Throwable
+	 *             If the procedure fails for any of the x-values.
+	 */
+	public double[] evaluateBatch(Procedure function, double[] xvalues)
+			throws Throwable {
+		F64Vector result = (F64Vector) invoke("evaluate-grid", function,
+				xvalues);
+
+		double[] yvalues = new double[result.size()];
+		for (int i = 0; i < yvalues.length; i++) {
+			yvalues[i] = result.doubleAt(i);
+		}
+		return yvalues;
+	}
+
+	/**
+	 * Generates an array of values ranging from xmin to xmax with the number of
+	 * datapoints used to find the length of the interval between the points.
+	 * The values are in ascending order.
+	 * 
+	 * @param datapoints
+	 *            Number of datapoints to calculate from
+	 * @param xmax
+	 *            Maximum X value
+	 * @param xmin
+	 *            Minimum X value
+	 * @return An array of double values on the x number line, or null if
+	 *         there are no such values.
+	 * 
+	 */
+	public double[] generateXPoints(int datapoints, Double xmax, Double xmin) {
+		try {
+			return Grid.uniform(datapoints, xmin, xmax).toArray();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Tells the error listener about a function that failed, unless errors
+	 * are not reported.
+	 * 
+	 * @param functionExpression
+	 *            The function that failed
+	 */
+	private void reportError(String functionExpression) {
+		if (reportErrors && errorListener != null) {
+			errorListener.functionFailed(functionExpression);
+		}
+	}
+
+	/**
+	 * @return The registered expression of a function for error messages, or
+	 *         its id if it is not registered.
+	 */
+	private String expressionOf(String functionId) {
+		String expression = registry.getExpression(functionId);
+		return expression != null ? expression : functionId;
+	}
+
+	/**
+	 * Sets the listener told about functions that fail.
+	 * 
+	 * @param errorListener
+	 *            The listener, or null for none
+	 */
+	public void setErrorListener(ErrorListener errorListener) {
+		this.errorListener = errorListener;
+	}
+
+	/**
+	 * Turns error reports for invalid functions on or off. They are turned
+	 * off while the user is typing, where most functions are incomplete.
+	 * 
+	 * @param reportErrors
+	 *            If errors are reported to the error listener
+	 */
+	public void setReportErrors(boolean reportErrors) {
+		this.reportErrors = reportErrors;
+	}
+
+	/**
+	 * @return The Scheme environment used by this instance of Schemer.
+	 */
+	Environment getEnvironment() {
+		return environment;
+	}
+
+}
@@ -0,0 +1,71 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A pool of Schemers with isolated environments that already have the
+ * functions from the constructor of Schemer defined. Creating a Schemer is
+ * expensive, so a request that needs its own environment borrows one from the
+ * pool and releases it when done. Functions registered while a Schemer was
+ * borrowed are removed when it is released, so the next borrower starts from a
+ * clean environment.
+ * 
+ * A Schemer must only be used by the thread that borrowed it until it is
+ * released. The pool itself can be used from any thread.
+ * 
+ * @author Tommy, Mikkel and Olafur
+ * 
+ */
+public class SchemerPool {
+
+	private final BlockingQueue<Schemer> idle;
+
+	/**
+	 * Constructor. Creates the given number of Schemers up front.
+	 * 
+	 * @param size
+	 *            Maximum number of idle Schemers kept in the pool
+	 * @param prewarmed
+	 *            Number of Schemers to create now
+	 */
+	public SchemerPool(int size, int prewarmed) {
+		idle = new LinkedBlockingQueue<Schemer>(size);
+		for (int i = 0; i < prewarmed && i < size; i++) {
+			idle.offer(Schemer.newIsolated());
+		}
+	}
+
+	/**
+	 * Takes an idle Schemer from the pool, or creates a new one if none is
+	 * idle.
+	 * 
+	 * @return A Schemer with no functions registered.
+	 */
+	public Schemer borrow() {
+		Schemer schemer = idle.poll();
+		if (schemer == null) {
+			schemer = Schemer.newIsolated();
+		}
+		return schemer;
+	}
+
+	/**
+	 * Returns a borrowed Schemer to the pool. Its registered functions are
+	 * removed. If the pool is full the Schemer is dropped.
+	 * 
+	 * @param schemer
+	 *            The Schemer to return
+	 */
+	public void release(Schemer schemer) {
+		schemer.reset();
+		idle.offer(schemer);
+	}
+
+	/**
+	 * @return The number of idle Schemers in the pool.
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+}
@@ -0,0 +1,209 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of evaluated series. A series is identified by the normalized
+ * expression or fingerprint of the function, the grid it was evaluated over
+ * and which derivative it is. The series are cached as evaluated, before any
+ * Transform like the logarithmic scale is applied, so the same series serves
+ * every scale. When the cached series take up more than the maximum number of
+ * bytes, the least recently used series are evicted.
+ *
+ * The arrays in the cache are shared with the callers, so they must not be
+ * modified.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public class SeriesCache {
+
+	public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	// rough size of a cache entry besides its values
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final long maxBytes;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	private final LinkedHashMap<Key, double[]> entries = new LinkedHashMap<Key, double[]>(
+			16, 0.75f, true);
+
+	/**
+	 * Identifies an evaluated series.
+	 */
+	public static final class Key {
+		private final String expression;
+		private final Grid grid;
+		private final int order;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param expression
+		 *            String representation or fingerprint of the function, it
+		 *            is normalized so that differences in whitespace do not
+		 *            matter
+		 * @param grid
+		 *            The grid the function is evaluated over
+		 * @param order
+		 *            Which derivative of the function the series is, 0 for
+		 *            the function itself
+		 */
+		public Key(String expression, Grid grid, int order) {
+			this.expression = normalize(expression);
+			this.grid = grid;
+			this.order = order;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return expression.equals(other.expression)
+					&& grid.equals(other.grid)
+					&& order == other.order;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = expression.hashCode();
+			hash = 31 * hash + grid.hashCode();
+			hash = 31 * hash + order;
+			return hash;
+		}
+
+		private int byteSize() {
+			return ENTRY_OVERHEAD_BYTES + 2 * expression.length();
+		}
+	}
+
+	/**
+	 * Constructor for a cache of DEFAULT_MAX_BYTES.
+	 */
+	public SeriesCache() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxBytes
+	 *            Maximum number of bytes used by the cached series
+	 */
+	public SeriesCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Normalizes a Scheme expression by collapsing all whitespace to single
+	 * spaces and removing whitespace next to parentheses.
+	 *
+	 * @param expression
+	 *            The expression to normalize
+	 * @return The normalized expression.
+	 */
+	public static String normalize(String expression) {
+		return expression.trim().replaceAll("\\s+", " ")
+				.replaceAll("\\( ", "(").replaceAll(" \\)", ")");
+	}
+
+	/**
+	 * Looks up a series and counts the lookup as a hit or a miss.
+	 *
+	 * @param key
+	 *            The key of the series
+	 * @return The cached values, or null if the series is not cached.
+	 */
+	public synchronized double[] get(Key key) {
+		double[] values = entries.get(key);
+		if (values != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return values;
+	}
+
+	/**
+	 * Checks if a series is cached, without counting it as a lookup or
+	 * marking the series as recently used.
+	 *
+	 * @param key
+	 *            The key of the series
+	 * @return true if the series is cached.
+	 */
+	public synchronized boolean contains(Key key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * Adds a series to the cache, evicting the least recently used series if
+	 * the cache gets too big. Series bigger than the whole cache are not
+	 * added.
+	 *
+	 * @param key
+	 *            The key of the series
+	 * @param values
+	 *            The evaluated values
+	 */
+	public synchronized void put(Key key, double[] values) {
+		long size = byteSize(key, values);
+		if (size > maxBytes) {
+			return;
+		}
+		double[] previous = entries.put(key, values);
+		if (previous != null) {
+			bytes -= byteSize(key, previous);
+		}
+		bytes += size;
+
+		Iterator<Map.Entry<Key, double[]>> eldest = entries.entrySet()
+				.iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<Key, double[]> entry = eldest.next();
+			bytes -= byteSize(entry.getKey(), entry.getValue());
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Removes all series from the cache. The hit and miss counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	private static long byteSize(Key key, double[] values) {
+		return key.byteSize() + 8L * values.length;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SeriesCache[" + entries.size() + " series, " + bytes
+				+ " bytes, " + hits + " hits, " + misses + " misses]";
+	}
+}
@@ -0,0 +1,449 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates a compiled expression together with its derivatives up to a given
+ * order in one pass, using forward mode automatic differentiation on
+ * truncated Taylor series. Every node of the expression holds the Taylor
+ * coefficients of its value around x, and the coefficients of a node are
+ * found from the coefficients of its arguments with the usual recurrences for
+ * products, quotients and the elementary functions. The k-th derivative is the
+ * k-th coefficient times k factorial.
+ *
+ * The coefficient arrays are allocated once, so evaluating does not allocate
+ * anything, but an evaluator must only be used by one thread at a time.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+final class TaylorEvaluator {
+
+	private static final int CONSTANT = 0;
+	private static final int VARIABLE = 1;
+	private static final int ADD = 2;
+	private static final int SUBTRACT = 3;
+	private static final int MULTIPLY = 4;
+	private static final int DIVIDE = 5;
+	private static final int POWER = 6;
+	private static final int NEGATE = 7;
+	private static final int SIN = 8;
+	private static final int COS = 9;
+	private static final int TAN = 10;
+	private static final int EXP = 11;
+	private static final int LOG = 12;
+	private static final int SQRT = 13;
+	private static final int ABS = 14;
+	private static final int SIGNUM = 15;
+
+	// integer exponents up to this are evaluated by repeated multiplication,
+	// which also works where the base is zero
+	private static final int MAX_INTEGER_POWER = 64;
+
+	private final int order;
+
+	// the nodes of the expression, every node comes after its arguments
+	private final int[] operation;
+	private final int[] left;
+	private final int[] right;
+	private final double[] constant;
+	private final double[][] coefficients;
+
+	// scratch series for the nodes that need them
+	private final double[] scratchA;
+	private final double[] scratchB;
+	private final double[] scratchC;
+
+	private final double[] factorials;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param expr
+	 *            The compiled expression
+	 * @param order
+	 *            The highest derivative to evaluate
+	 */
+	TaylorEvaluator(Expr expr, int order) {
+		if (order < 0) {
+			throw new IllegalArgumentException("Order must not be negative");
+		}
+		this.order = order;
+
+		List<Expr> nodes = new ArrayList<Expr>();
+		flatten(expr, nodes);
+		int count = nodes.size();
+		operation = new int[count];
+		left = new int[count];
+		right = new int[count];
+		constant = new double[count];
+		coefficients = new double[count][order + 1];
+		for (int i = 0; i < count; i++) {
+			describe(nodes, i);
+		}
+
+		scratchA = new double[order + 1];
+		scratchB = new double[order + 1];
+		scratchC = new double[order + 1];
+
+		factorials = new double[order + 1];
+		factorials[0] = 1;
+		for (int k = 1; k <= order; k++) {
+			factorials[k] = factorials[k - 1] * k;
+		}
+	}
+
+	/**
+	 * @return The highest derivative evaluated.
+	 */
+	int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Evaluates the expression and its derivatives at x.
+	 *
+	 * @param x
+	 *            The value of the variable x
+	 * @param derivatives
+	 *            Array of at least order + 1 values, the k-th derivative is
+	 *            written to index k
+	 */
+	void evaluate(double x, double[] derivatives) {
+		for (int i = 0; i < operation.length; i++) {
+			evaluateNode(i, x);
+		}
+		double[] result = coefficients[operation.length - 1];
+		for (int k = 0; k <= order; k++) {
+			derivatives[k] = result[k] * factorials[k];
+		}
+	}
+
+	/**
+	 * Evaluates the expression and its derivatives for the x-values with
+	 * index from (inclusive) to to (exclusive).
+	 *
+	 * @param xvalues
+	 *            Array of X values
+	 * @param result
+	 *            Array of order + 1 arrays, the k-th derivative at xvalues[i]
+	 *            is written to result[k][i]
+	 * @param from
+	 *            First index
+	 * @param to
+	 *            Index after the last one
+	 */
+	void evaluate(double[] xvalues, double[][] result, int from, int to) {
+		double[] root;
+		for (int i = from; i < to; i++) {
+			for (int node = 0; node < operation.length; node++) {
+				evaluateNode(node, xvalues[i]);
+			}
+			root = coefficients[operation.length - 1];
+			for (int k = 0; k <= order; k++) {
+				result[k][i] = root[k] * factorials[k];
+			}
+		}
+	}
+
+	private void flatten(Expr expr, List<Expr> nodes) {
+		if (expr instanceof Expr.Binary) {
+			flatten(((Expr.Binary) expr).left, nodes);
+			flatten(((Expr.Binary) expr).right, nodes);
+		} else if (expr instanceof Expr.Unary) {
+			flatten(((Expr.Unary) expr).argument, nodes);
+		}
+		nodes.add(expr);
+	}
+
+	/**
+	 * Fills in the operation and arguments of node i. The arguments of a node
+	 * are found by walking back over the nodes of its right argument.
+	 */
+	private void describe(List<Expr> nodes, int i) {
+		Expr expr = nodes.get(i);
+		if (expr instanceof Expr.Constant) {
+			operation[i] = CONSTANT;
+			constant[i] = ((Expr.Constant) expr).value;
+		} else if (expr instanceof Expr.Variable) {
+			operation[i] = VARIABLE;
+		} else if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			right[i] = i - 1;
+			left[i] = i - 1 - size(binary.right);
+			switch (binary.operator) {
+			case ADD:
+				operation[i] = ADD;
+				break;
+			case SUBTRACT:
+				operation[i] = SUBTRACT;
+				break;
+			case MULTIPLY:
+				operation[i] = MULTIPLY;
+				break;
+			case DIVIDE:
+				operation[i] = DIVIDE;
+				break;
+			default:
+				operation[i] = POWER;
+				if (binary.right instanceof Expr.Constant) {
+					constant[i] = ((Expr.Constant) binary.right).value;
+				} else {
+					constant[i] = Double.NaN;
+				}
+			}
+		} else {
+			Expr.Unary unary = (Expr.Unary) expr;
+			left[i] = i - 1;
+			switch (unary.function) {
+			case NEGATE:
+				operation[i] = NEGATE;
+				break;
+			case SIN:
+				operation[i] = SIN;
+				break;
+			case COS:
+				operation[i] = COS;
+				break;
+			case TAN:
+				operation[i] = TAN;
+				break;
+			case EXP:
+				operation[i] = EXP;
+				break;
+			case LOG:
+				operation[i] = LOG;
+				break;
+			case SQRT:
+				operation[i] = SQRT;
+				break;
+			case SIGNUM:
+				operation[i] = SIGNUM;
+				break;
+			default:
+				operation[i] = ABS;
+			}
+		}
+	}
+
+	private static int size(Expr expr) {
+		if (expr instanceof Expr.Binary) {
+			return 1 + size(((Expr.Binary) expr).left)
+					+ size(((Expr.Binary) expr).right);
+		} else if (expr instanceof Expr.Unary) {
+			return 1 + size(((Expr.Unary) expr).argument);
+		}
+		return 1;
+	}
+
+	private void evaluateNode(int i, double x) {
+		double[] c = coefficients[i];
+		double[] a = coefficients[left[i]];
+		double[] b = coefficients[right[i]];
+
+		switch (operation[i]) {
+		case CONSTANT:
+			c[0] = constant[i];
+			for (int k = 1; k <= order; k++) {
+				c[k] = 0;
+			}
+			break;
+		case VARIABLE:
+			c[0] = x;
+			for (int k = 1; k <= order; k++) {
+				c[k] = k == 1 ? 1 : 0;
+			}
+			break;
+		case ADD:
+			for (int k = 0; k <= order; k++) {
+				c[k] = a[k] + b[k];
+			}
+			break;
+		case SUBTRACT:
+			for (int k = 0; k <= order; k++) {
+				c[k] = a[k] - b[k];
+			}
+			break;
+		case NEGATE:
+			for (int k = 0; k <= order; k++) {
+				c[k] = -a[k];
+			}
+			break;
+		case MULTIPLY:
+			multiply(a, b, c);
+			break;
+		case DIVIDE:
+			divide(a, b, c);
+			break;
+		case POWER:
+			power(a, b, constant[i], c);
+			break;
+		case SIN:
+			sinCos(a, c, scratchA);
+			break;
+		case COS:
+			sinCos(a, scratchA, c);
+			break;
+		case TAN:
+			sinCos(a, scratchA, scratchB);
+			divide(scratchA, scratchB, c);
+			break;
+		case EXP:
+			exp(a, c);
+			break;
+		case LOG:
+			log(a, c);
+			break;
+		case SQRT:
+			sqrt(a, c);
+			break;
+		case SIGNUM:
+			// constant except where a is zero
+			c[0] = Math.signum(a[0]);
+			for (int k = 1; k <= order; k++) {
+				c[k] = 0;
+			}
+			break;
+		default:
+			double sign = Math.signum(a[0]);
+			for (int k = 0; k <= order; k++) {
+				c[k] = sign * a[k];
+			}
+		}
+	}
+
+	private void multiply(double[] a, double[] b, double[] c) {
+		for (int k = order; k >= 0; k--) {
+			double sum = 0;
+			for (int j = 0; j <= k; j++) {
+				sum += a[j] * b[k - j];
+			}
+			c[k] = sum;
+		}
+	}
+
+	private void divide(double[] a, double[] b, double[] c) {
+		for (int k = 0; k <= order; k++) {
+			double sum = a[k];
+			for (int j = 1; j <= k; j++) {
+				sum -= b[j] * c[k - j];
+			}
+			c[k] = sum / b[0];
+		}
+	}
+
+	private void exp(double[] a, double[] c) {
+		c[0] = Math.exp(a[0]);
+		for (int k = 1; k <= order; k++) {
+			double sum = 0;
+			for (int j = 1; j <= k; j++) {
+				sum += j * a[j] * c[k - j];
+			}
+			c[k] = sum / k;
+		}
+	}
+
+	private void log(double[] a, double[] c) {
+		c[0] = Math.log(a[0]);
+		for (int k = 1; k <= order; k++) {
+			double sum = 0;
+			for (int j = 1; j < k; j++) {
+				sum += j * c[j] * a[k - j];
+			}
+			c[k] = (a[k] - sum / k) / a[0];
+		}
+	}
+
+	private void sqrt(double[] a, double[] c) {
+		c[0] = Math.sqrt(a[0]);
+		for (int k = 1; k <= order; k++) {
+			double sum = 0;
+			for (int j = 1; j < k; j++) {
+				sum += c[j] * c[k - j];
+			}
+			c[k] = (a[k] - sum) / (2 * c[0]);
+		}
+	}
+
+	private void sinCos(double[] a, double[] s, double[] c) {
+		s[0] = Math.sin(a[0]);
+		c[0] = Math.cos(a[0]);
+		for (int k = 1; k <= order; k++) {
+			double sinSum = 0;
+			double cosSum = 0;
+			for (int j = 1; j <= k; j++) {
+				sinSum += j * a[j] * c[k - j];
+				cosSum += j * a[j] * s[k - j];
+			}
+			s[k] = sinSum / k;
+			c[k] = -cosSum / k;
+		}
+	}
+
+	/**
+	 * Raises a to the power b. The exponent is NaN when b is not a constant.
+	 */
+	private void power(double[] a, double[] b, double exponent, double[] c) {
+		if (Double.isNaN(exponent) && !Double.isNaN(b[0]) && isConstant(b)) {
+			// an exponent like (+ 1 1) that does not depend on x, which
+			// works for a negative base like a constant exponent
+			power(a, b, b[0], c);
+		} else if (Double.isNaN(exponent)) {
+			// a^b = exp(b * log(a)), which is only defined for a positive
+			// base, but the value itself is Math.pow like in Expr
+			log(a, scratchA);
+			multiply(b, scratchA, scratchB);
+			exp(scratchB, c);
+			c[0] = Math.pow(a[0], b[0]);
+		} else if (exponent >= 0 && exponent <= MAX_INTEGER_POWER
+				&& exponent == Math.rint(exponent)) {
+			integerPower(a, (int) exponent, c);
+		} else {
+			c[0] = Math.pow(a[0], exponent);
+			for (int k = 1; k <= order; k++) {
+				double sum = 0;
+				for (int j = 1; j <= k; j++) {
+					sum += (exponent * j - (k - j)) * a[j] * c[k - j];
+				}
+				c[k] = sum / (k * a[0]);
+			}
+		}
+	}
+
+	/**
+	 * @return true if all coefficients of a but the value are zero.
+	 */
+	private boolean isConstant(double[] a) {
+		for (int k = 1; k <= order; k++) {
+			if (a[k] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Raises a to a non-negative integer power by repeated squaring.
+	 */
+	private void integerPower(double[] a, int n, double[] c) {
+		double[] base = scratchA;
+		double[] product = scratchB;
+		System.arraycopy(a, 0, base, 0, order + 1);
+		c[0] = 1;
+		for (int k = 1; k <= order; k++) {
+			c[k] = 0;
+		}
+		while (n > 0) {
+			if ((n & 1) == 1) {
+				multiply(c, base, product);
+				System.arraycopy(product, 0, c, 0, order + 1);
+			}
+			n >>= 1;
+			if (n > 0) {
+				multiply(base, base, scratchC);
+				System.arraycopy(scratchC, 0, base, 0, order + 1);
+			}
+		}
+	}
+}
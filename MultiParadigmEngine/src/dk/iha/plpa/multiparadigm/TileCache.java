@@ -0,0 +1,438 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of evaluated samples in x-space tiles, like the tiles of a map
+ * server. At resolution level L the samples lie on the multiples of 2^-L, and
+ * a tile holds TILE_SAMPLES consecutive samples of a level. A tile is
+ * identified by the normalized expression or fingerprint of the function, the
+ * highest derivative evaluated, the level and the index of the tile.
+ *
+ * A view from xmin to xmax with some number of datapoints is sampled at the
+ * finest level whose spacing is not wider than the spacing of the datapoints,
+ * so it gets between datapoints + 1 and about twice that many samples. The
+ * samples are assembled from the tiles covering the view, and only the tiles
+ * that are missing are evaluated. As the samples of a level are every other
+ * sample of the next finer level, a missing tile is taken from the finer
+ * tiles covering it if they are cached, and otherwise only the samples that
+ * are not in a coarser tile covering it are evaluated. So panning back,
+ * revisiting a region or zooming back out does not evaluate anything, and
+ * zooming in to the next level evaluates every other sample.
+ *
+ * When the cached tiles take up more than the maximum number of bytes, the
+ * least recently used tiles are evicted. The arrays in the cache are never
+ * returned to the callers.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public class TileCache {
+
+	public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	/**
+	 * Number of samples of a tile.
+	 */
+	public static final int TILE_SAMPLES = 256;
+
+	// number of finer or coarser levels looked at for the samples of a
+	// missing tile
+	private static final int MAX_LEVELS_APART = 4;
+
+	// sample indexes must be exact in a double, views too narrow for their
+	// position are evaluated without tiles
+	private static final double MAX_INDEX = 1L << 52;
+
+	// rough size of a cache entry besides its values
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final long maxBytes;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	private final LinkedHashMap<Key, double[][]> entries = new LinkedHashMap<Key, double[][]>(
+			16, 0.75f, true);
+
+	/**
+	 * Identifies a tile.
+	 */
+	public static final class Key {
+		private final String expression;
+		private final int order;
+		private final int level;
+		private final long tile;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param expression
+		 *            String representation or fingerprint of the function, it
+		 *            is normalized so that differences in whitespace do not
+		 *            matter
+		 * @param order
+		 *            The highest derivative in the tile, 0 for only the
+		 *            function itself
+		 * @param level
+		 *            The resolution level, samples lie on the multiples of
+		 *            2^-level
+		 * @param tile
+		 *            Index of the tile in its level
+		 */
+		public Key(String expression, int order, int level, long tile) {
+			this.expression = SeriesCache.normalize(expression);
+			this.order = order;
+			this.level = level;
+			this.tile = tile;
+		}
+
+		/**
+		 * Constructor for another tile of the same function.
+		 */
+		private Key(Key key, int level, long tile) {
+			this.expression = key.expression;
+			this.order = key.order;
+			this.level = level;
+			this.tile = tile;
+		}
+
+		/**
+		 * @return The key of another tile of the same function.
+		 */
+		private Key at(int level, long tile) {
+			return new Key(this, level, tile);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return expression.equals(other.expression)
+					&& order == other.order && level == other.level
+					&& tile == other.tile;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = expression.hashCode();
+			hash = 31 * hash + order;
+			hash = 31 * hash + level;
+			hash = 31 * hash + (int) (tile ^ (tile >>> 32));
+			return hash;
+		}
+
+		private int byteSize() {
+			return ENTRY_OVERHEAD_BYTES + 2 * expression.length();
+		}
+	}
+
+	/**
+	 * Constructor for a cache of DEFAULT_MAX_BYTES.
+	 */
+	public TileCache() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxBytes
+	 *            Maximum number of bytes used by the cached tiles
+	 */
+	public TileCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Samples a function and its derivatives from xmin to xmax, at least
+	 * datapoints + 1 times, assembling the samples from the cached tiles and
+	 * evaluating only what is missing in one call of the function.
+	 *
+	 * @param expression
+	 *            String representation or fingerprint of the function
+	 * @param order
+	 *            The highest derivative evaluated by the function
+	 * @param xmin
+	 *            Minimum X value
+	 * @param xmax
+	 *            Maximum X value
+	 * @param datapoints
+	 *            Minimum number of intervals between xmin and xmax
+	 * @param function
+	 *            Evaluates the samples that are not cached
+	 * @return The samples from xmin to xmax, where the number of evaluations
+	 *         is the number of samples evaluated, or null if the function
+	 *         stopped the sampling.
+	 * @throws Throwable
+	 *             If the function cannot be evaluated.
+	 */
+	public AdaptiveSampler.Result sample(String expression, int order,
+			double xmin, double xmax, int datapoints,
+			AdaptiveSampler.Function function) throws Throwable {
+		if (!(xmax > xmin) || datapoints < 1) {
+			throw new IllegalArgumentException("Invalid view from " + xmin
+					+ " to " + xmax + " with " + datapoints + " datapoints");
+		}
+		int level = level(xmax - xmin, datapoints);
+		double spacing = Math.scalb(1.0, -level);
+		double firstIndex = Math.ceil(xmin / spacing);
+		double lastIndex = Math.floor(xmax / spacing);
+		if (Math.abs(firstIndex) >= MAX_INDEX
+				|| Math.abs(lastIndex) >= MAX_INDEX) {
+			return sampleUncached(xmin, xmax, datapoints, function);
+		}
+		long first = (long) firstIndex;
+		long last = (long) lastIndex;
+
+		Key key = new Key(expression, order, level, 0);
+		long firstTile = floorDiv(first, TILE_SAMPLES);
+		long lastTile = floorDiv(last, TILE_SAMPLES);
+		int tileCount = (int) (lastTile - firstTile + 1);
+
+		// look up the tiles, and collect the samples of the missing ones
+		double[][][] tiles = new double[tileCount][][];
+		boolean[][] known = new boolean[tileCount][];
+		List<Integer> missingTiles = new ArrayList<Integer>();
+		int missing = 0;
+		for (int t = 0; t < tileCount; t++) {
+			Key tileKey = key.at(level, firstTile + t);
+			tiles[t] = lookup(tileKey);
+			if (tiles[t] == null) {
+				tiles[t] = fromFiner(tileKey, MAX_LEVELS_APART);
+			}
+			if (tiles[t] == null) {
+				tiles[t] = new double[order + 1][TILE_SAMPLES];
+				known[t] = fromCoarser(tileKey, tiles[t]);
+				missingTiles.add(t);
+				for (int j = 0; j < TILE_SAMPLES; j++) {
+					if (!known[t][j]) {
+						missing++;
+					}
+				}
+			}
+		}
+
+		if (missing > 0) {
+			double[] newX = new double[missing];
+			int m = 0;
+			for (int t : missingTiles) {
+				long start = (firstTile + t) * TILE_SAMPLES;
+				for (int j = 0; j < TILE_SAMPLES; j++) {
+					if (!known[t][j]) {
+						newX[m++] = (start + j) * spacing;
+					}
+				}
+			}
+			double[][] newY = function.evaluate(newX);
+			if (newY == null) {
+				return null;
+			}
+			m = 0;
+			for (int t : missingTiles) {
+				for (int j = 0; j < TILE_SAMPLES; j++) {
+					if (!known[t][j]) {
+						for (int k = 0; k <= order; k++) {
+							tiles[t][k][j] = newY[k][m];
+						}
+						m++;
+					}
+				}
+				put(key.at(level, firstTile + t), tiles[t]);
+			}
+		}
+
+		int count = (int) (last - first + 1);
+		double[] resultX = new double[count];
+		double[][] resultY = new double[order + 1][count];
+		for (int i = 0; i < count; i++) {
+			long index = first + i;
+			long tile = floorDiv(index, TILE_SAMPLES);
+			int j = (int) (index - tile * TILE_SAMPLES);
+			double[][] values = tiles[(int) (tile - firstTile)];
+			resultX[i] = index * spacing;
+			for (int k = 0; k <= order; k++) {
+				resultY[k][i] = values[k][j];
+			}
+		}
+		return new AdaptiveSampler.Result(resultX, resultY, missing);
+	}
+
+	/**
+	 * @return The finest level whose spacing is not wider than the spacing of
+	 *         datapoints intervals over the span.
+	 */
+	static int level(double span, int datapoints) {
+		int level = -Math.getExponent(span / datapoints);
+		while (Math.scalb(1.0, -level) > span / datapoints) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Evaluates a view that cannot be split into tiles at equally spaced x
+	 * values.
+	 */
+	private static AdaptiveSampler.Result sampleUncached(double xmin,
+			double xmax, int datapoints, AdaptiveSampler.Function function)
+			throws Throwable {
+		double[] xvalues = Grid.uniform(datapoints, xmin, xmax).toArray();
+		double[][] yvalues = function.evaluate(xvalues);
+		if (yvalues == null) {
+			return null;
+		}
+		return new AdaptiveSampler.Result(xvalues, yvalues, xvalues.length);
+	}
+
+	/**
+	 * Assembles a tile from every other sample of the two finer tiles
+	 * covering it, if they are cached or can be assembled the same way.
+	 *
+	 * @return The tile, or null if not all the finer tiles are there.
+	 */
+	private double[][] fromFiner(Key key, int levels) {
+		if (levels == 0) {
+			return null;
+		}
+		double[][] tile = new double[key.order + 1][TILE_SAMPLES];
+		for (int half = 0; half < 2; half++) {
+			Key finerKey = key.at(key.level + 1, 2 * key.tile + half);
+			double[][] finer = peek(finerKey);
+			if (finer == null) {
+				finer = fromFiner(finerKey, levels - 1);
+			}
+			if (finer == null) {
+				return null;
+			}
+			for (int k = 0; k <= key.order; k++) {
+				for (int j = 0; j < TILE_SAMPLES / 2; j++) {
+					tile[k][half * TILE_SAMPLES / 2 + j] = finer[k][2 * j];
+				}
+			}
+		}
+		put(key, tile);
+		return tile;
+	}
+
+	/**
+	 * Fills in the samples of a tile that are samples of the nearest coarser
+	 * tile covering it that is cached.
+	 *
+	 * @return For each sample of the tile, if it was filled in.
+	 */
+	private boolean[] fromCoarser(Key key, double[][] tile) {
+		boolean[] filled = new boolean[TILE_SAMPLES];
+		for (int levels = 1; levels <= MAX_LEVELS_APART; levels++) {
+			int stride = 1 << levels;
+			long coarserTile = floorDiv(key.tile, stride);
+			double[][] coarser = peek(key.at(key.level - levels, coarserTile));
+			if (coarser == null) {
+				continue;
+			}
+			// the samples of the coarser tile start at this tile's offset
+			int offset = (int) (key.tile - stride * coarserTile)
+					* (TILE_SAMPLES / stride);
+			for (int j = 0; j < TILE_SAMPLES; j += stride) {
+				for (int k = 0; k <= key.order; k++) {
+					tile[k][j] = coarser[k][offset + j / stride];
+				}
+				filled[j] = true;
+			}
+			break;
+		}
+		return filled;
+	}
+
+	/**
+	 * Looks up a tile and counts the lookup as a hit or a miss.
+	 */
+	private synchronized double[][] lookup(Key key) {
+		double[][] tile = entries.get(key);
+		if (tile != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return tile;
+	}
+
+	/**
+	 * Looks up a tile without counting the lookup.
+	 */
+	private synchronized double[][] peek(Key key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Adds a tile to the cache, evicting the least recently used tiles if the
+	 * cache gets too big.
+	 */
+	private synchronized void put(Key key, double[][] tile) {
+		long size = byteSize(key, tile);
+		if (size > maxBytes) {
+			return;
+		}
+		double[][] previous = entries.put(key, tile);
+		if (previous != null) {
+			bytes -= byteSize(key, previous);
+		}
+		bytes += size;
+
+		Iterator<Map.Entry<Key, double[][]>> eldest = entries.entrySet()
+				.iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<Key, double[][]> entry = eldest.next();
+			bytes -= byteSize(entry.getKey(), entry.getValue());
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Removes all tiles from the cache. The hit and miss counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	private static long byteSize(Key key, double[][] tile) {
+		return key.byteSize() + 8L * tile.length * TILE_SAMPLES;
+	}
+
+	/**
+	 * @return The largest integer not greater than a / b, for b > 0.
+	 */
+	private static long floorDiv(long a, long b) {
+		long quotient = a / b;
+		return a % b < 0 ? quotient - 1 : quotient;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TileCache[" + entries.size() + " tiles, " + bytes
+				+ " bytes, " + hits + " hits, " + misses + " misses]";
+	}
+}
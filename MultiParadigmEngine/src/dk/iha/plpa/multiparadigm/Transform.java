@@ -0,0 +1,316 @@
+package dk.iha.plpa.multiparadigm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A post-processing stage applied to evaluated values, like taking the
+ * logarithm for the logarithmic scale. The stages run as plain loops over
+ * arrays of doubles after the function has been evaluated, and can be chained
+ * into a pipeline with then(). Since the evaluated values are cached before
+ * any stage is applied, changing the stages only reprocesses the cached values
+ * and does not evaluate the function again.
+ *
+ * Transforms are immutable and can be used from any thread. Two transforms are
+ * equal if they have the same stages with the same settings.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public abstract class Transform {
+
+	/**
+	 * The transform leaving the values as they are.
+	 */
+	public static final Transform IDENTITY = new Pipeline(
+			Collections.<Transform> emptyList());
+
+	private final String description;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param description
+	 *            Name and settings of the stage, transforms with the same
+	 *            description are equal
+	 */
+	protected Transform(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * Creates the stage replacing every value with its absolute value.
+	 *
+	 * @return The transform.
+	 */
+	public static Transform abs() {
+		return new Transform("abs") {
+			@Override
+			public void applyInPlace(double[] values, int from, int to) {
+				for (int i = from; i < to; i++) {
+					values[i] = Math.abs(values[i]);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates the stage replacing every value with its 10-base logarithm.
+	 *
+	 * @return The transform.
+	 */
+	public static Transform log10() {
+		return new Transform("log10") {
+			@Override
+			public void applyInPlace(double[] values, int from, int to) {
+				for (int i = from; i < to; i++) {
+					values[i] = Math.log10(values[i]);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates the stage limiting the values to the span from min to max. NaN
+	 * values are left as they are.
+	 *
+	 * @param min
+	 *            The smallest value kept
+	 * @param max
+	 *            The largest value kept
+	 * @return The transform.
+	 */
+	public static Transform clamp(final double min, final double max) {
+		if (!(min <= max)) {
+			throw new IllegalArgumentException("min (" + min
+					+ ") must not be greater than max (" + max + ")");
+		}
+		return new Transform("clamp " + min + " " + max) {
+			@Override
+			public void applyInPlace(double[] values, int from, int to) {
+				for (int i = from; i < to; i++) {
+					if (values[i] < min) {
+						values[i] = min;
+					} else if (values[i] > max) {
+						values[i] = max;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates the stage scaling the values linearly so that the smallest
+	 * finite value becomes 0 and the largest becomes 1. If all finite values
+	 * are equal they become 0.
+	 *
+	 * @return The transform.
+	 */
+	public static Transform normalize() {
+		return new Transform("normalize") {
+			@Override
+			public void applyInPlace(double[] values, int from, int to) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int i = from; i < to; i++) {
+					double value = values[i];
+					if (value < min && value != Double.NEGATIVE_INFINITY) {
+						min = value;
+					}
+					if (value > max && value != Double.POSITIVE_INFINITY) {
+						max = value;
+					}
+				}
+				if (min > max) {
+					// no finite values
+					return;
+				}
+				double scale = max > min ? 1 / (max - min) : 0;
+				for (int i = from; i < to; i++) {
+					values[i] = (values[i] - min) * scale;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates the stage replacing every value with the average of the values
+	 * within radius of it. The averages are found with a running sum, so the
+	 * radius does not change the cost. Values that are not finite are left
+	 * out of the averages.
+	 *
+	 * @param radius
+	 *            Number of values on each side to average with
+	 * @return The transform.
+	 */
+	public static Transform movingAverage(final int radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException(
+					"The radius must not be negative, got " + radius);
+		}
+		return new Transform("movingAverage " + radius) {
+			@Override
+			public void applyInPlace(double[] values, int from, int to) {
+				if (radius == 0 || to - from < 2) {
+					return;
+				}
+				double[] original = new double[to - from];
+				System.arraycopy(values, from, original, 0, original.length);
+
+				double sum = 0;
+				int count = 0;
+				int n = original.length;
+				for (int j = 0; j < Math.min(radius, n); j++) {
+					if (isFinite(original[j])) {
+						sum += original[j];
+						count++;
+					}
+				}
+				for (int i = 0; i < n; i++) {
+					int entering = i + radius;
+					if (entering < n && isFinite(original[entering])) {
+						sum += original[entering];
+						count++;
+					}
+					int leaving = i - radius - 1;
+					if (leaving >= 0 && isFinite(original[leaving])) {
+						sum -= original[leaving];
+						count--;
+					}
+					if (isFinite(original[i])) {
+						values[from + i] = sum / count;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates the stages used for a scale of the plot.
+	 *
+	 * @param logarithmicScale
+	 *            If the logarithmic scale is used, which plots the 10-base
+	 *            logarithm of the absolute values
+	 * @return The transform.
+	 */
+	public static Transform forScale(boolean logarithmicScale) {
+		return logarithmicScale ? abs().then(log10()) : IDENTITY;
+	}
+
+	/**
+	 * Chains another transform after this one.
+	 *
+	 * @param next
+	 *            The transform applied to the result of this one
+	 * @return The pipeline of both transforms.
+	 */
+	public Transform then(Transform next) {
+		List<Transform> stages = new ArrayList<Transform>();
+		stages.addAll(getStages());
+		stages.addAll(next.getStages());
+		return stages.size() == 1 ? stages.get(0) : new Pipeline(stages);
+	}
+
+	/**
+	 * Transforms the values with index from (inclusive) to to (exclusive).
+	 *
+	 * @param values
+	 *            The values to transform
+	 * @param from
+	 *            First index
+	 * @param to
+	 *            Index after the last one
+	 */
+	public abstract void applyInPlace(double[] values, int from, int to);
+
+	/**
+	 * Transforms a copy of the values. The values themselves are not changed,
+	 * so cached values can be transformed.
+	 *
+	 * @param values
+	 *            The values to transform
+	 * @return The transformed values, or the values themselves if this is the
+	 *         identity.
+	 */
+	public double[] apply(double[] values) {
+		if (isIdentity()) {
+			return values;
+		}
+		double[] result = values.clone();
+		applyInPlace(result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * @return true if this transform leaves all values as they are.
+	 */
+	public boolean isIdentity() {
+		return getStages().isEmpty();
+	}
+
+	/**
+	 * @return The stages of this transform, in the order they are applied.
+	 */
+	public List<Transform> getStages() {
+		return Collections.singletonList(this);
+	}
+
+	private static boolean isFinite(double value) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Transform)) {
+			return false;
+		}
+		return toString().equals(obj.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+	/**
+	 * A chain of stages.
+	 */
+	private static final class Pipeline extends Transform {
+		private final List<Transform> stages;
+
+		Pipeline(List<Transform> stages) {
+			super(describe(stages));
+			this.stages = Collections.unmodifiableList(stages);
+		}
+
+		private static String describe(List<Transform> stages) {
+			StringBuilder description = new StringBuilder();
+			for (Transform stage : stages) {
+				if (description.length() > 0) {
+					description.append(" | ");
+				}
+				description.append(stage);
+			}
+			return description.length() == 0 ? "identity" : description
+					.toString();
+		}
+
+		@Override
+		public void applyInPlace(double[] values, int from, int to) {
+			for (Transform stage : stages) {
+				stage.applyInPlace(values, from, to);
+			}
+		}
+
+		@Override
+		public List<Transform> getStages() {
+			return stages;
+		}
+	}
+}
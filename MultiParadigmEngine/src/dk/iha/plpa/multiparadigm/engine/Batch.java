@@ -0,0 +1,183 @@
+package dk.iha.plpa.multiparadigm.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import dk.iha.plpa.multiparadigm.Quadrature;
+
+/**
+ * Runs a job file without a user interface and writes the results to disk:
+ *
+ * <pre>
+ * java dk.iha.plpa.multiparadigm.engine.Batch [-binary | -float] job-file [output-directory]
+ * </pre>
+ *
+ * The values of each function are written to id.csv in the output directory,
+ * with a column for x, the function and each derivative. With -binary the
+ * values of all functions are written to series.bin by SeriesWriter instead,
+ * as doubles, and with -float as floats. The status and the integrals of all
+ * functions are written to results.csv. The output directory is the
+ * directory of the job file if none is given.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public final class Batch {
+
+	private static final String SEPARATOR = ",";
+	private static final String NEWLINE = "\n";
+
+	// the values of all functions written with -binary or -float
+	private static final String SERIES_FILE = "series.bin";
+
+	private Batch() {
+	}
+
+	/**
+	 * @param args
+	 *            The job file and optionally the output directory
+	 */
+	public static void main(String[] args) {
+		SeriesWriter.Precision binary = null;
+		int first = 0;
+		if (args.length > 0 && args[0].equals("-binary")) {
+			binary = SeriesWriter.Precision.DOUBLE;
+			first++;
+		} else if (args.length > 0 && args[0].equals("-float")) {
+			binary = SeriesWriter.Precision.FLOAT;
+			first++;
+		}
+		if (args.length - first < 1 || args.length - first > 2) {
+			System.err.println("Usage: Batch [-binary | -float] job-file "
+					+ "[output-directory]");
+			System.exit(2);
+		}
+
+		File jobFile = new File(args[first]);
+		File directory = args.length - first > 1 ? new File(args[first + 1])
+				: jobFile.getAbsoluteFile().getParentFile();
+		try {
+			Job job = Job.read(jobFile);
+			long start = System.nanoTime();
+			List<FunctionResult> results = new Engine().run(job);
+			long time = (System.nanoTime() - start) / 1000000;
+			write(results, directory, binary == null);
+			if (binary != null) {
+				SeriesWriter.of(job, results).write(
+						new File(directory, SERIES_FILE), binary);
+			}
+
+			int failures = 0;
+			for (FunctionResult result : results) {
+				if (!result.isValid()) {
+					failures++;
+				}
+			}
+			System.out.println(results.size() + " functions evaluated in "
+					+ time + " ms, " + failures + " failed. Results written to "
+					+ directory);
+			System.exit(failures == 0 ? 0 : 1);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(jobFile + ": " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Writes the results of a job to a directory.
+	 *
+	 * @param results
+	 *            The results
+	 * @param directory
+	 *            The directory, which is created if it does not exist
+	 * @param values
+	 *            If the values of each function are written to id.csv, and
+	 *            not only the status and integrals to results.csv
+	 * @throws IOException
+	 *             If a file cannot be written
+	 */
+	public static void write(List<FunctionResult> results, File directory,
+			boolean values) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+
+		Writer summary = open(new File(directory, "results.csv"));
+		try {
+			summary.write("id,expression,error,area,area error,evaluations,"
+					+ "area f',area f' error,evaluations f'" + NEWLINE);
+			for (FunctionResult result : results) {
+				summary.write(result.getId() + SEPARATOR
+						+ quote(result.getExpression()) + SEPARATOR
+						+ quote(result.getError()) + SEPARATOR
+						+ integral(result.getIntegral(0)) + SEPARATOR
+						+ integral(result.getIntegral(1)) + NEWLINE);
+				if (values && result.isValid()) {
+					writeValues(result, directory);
+				}
+			}
+		} finally {
+			summary.close();
+		}
+	}
+
+	/**
+	 * Writes the values of a function and its derivatives to id.csv.
+	 */
+	private static void writeValues(FunctionResult result, File directory)
+			throws IOException {
+		Writer writer = open(new File(directory, result.getId() + ".csv"));
+		try {
+			StringBuilder line = new StringBuilder("x");
+			String name = result.getId();
+			for (int k = 0; k <= result.getOrder(); k++) {
+				line.append(SEPARATOR).append(name);
+				name += "'";
+			}
+			writer.write(line.append(NEWLINE).toString());
+
+			double[] x = result.getX();
+			for (int i = 0; i < x.length; i++) {
+				line.setLength(0);
+				line.append(x[i]);
+				for (int k = 0; k <= result.getOrder(); k++) {
+					line.append(SEPARATOR).append(result.getValues(k)[i]);
+				}
+				writer.write(line.append(NEWLINE).toString());
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static Writer open(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+				file), "UTF-8"));
+	}
+
+	/**
+	 * @return The columns of an integral, empty if there is none.
+	 */
+	private static String integral(Quadrature.Result integral) {
+		if (integral == null) {
+			return SEPARATOR + SEPARATOR;
+		}
+		return integral.getValue() + SEPARATOR + integral.getError()
+				+ SEPARATOR + integral.getEvaluations();
+	}
+
+	/**
+	 * @return The text quoted as a CSV field, empty for null.
+	 */
+	private static String quote(String text) {
+		if (text == null) {
+			return "";
+		}
+		return "\"" + text.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,137 @@
+package dk.iha.plpa.multiparadigm.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dk.iha.plpa.multiparadigm.Grid;
+import dk.iha.plpa.multiparadigm.Quadrature;
+import dk.iha.plpa.multiparadigm.Schemer;
+import dk.iha.plpa.multiparadigm.Transform;
+
+/**
+ * Evaluates and integrates functions without a user interface, like on a
+ * headless server. Functions that fail are reported in their results instead
+ * of showing error messages.
+ *
+ * An Engine keeps its Scheme environment and caches between jobs, so jobs
+ * repeating functions are cheaper. It must only be used by one thread at a
+ * time.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public class Engine {
+
+	private final Schemer scm = new Schemer();
+
+	// set by the Schemer when the function being handled fails
+	private boolean failed;
+
+	// number of functions of the job run last, registered as f0 and up
+	private int registered;
+
+	/**
+	 * Constructor
+	 */
+	public Engine() {
+		scm.setErrorListener(new Schemer.ErrorListener() {
+			@Override
+			public void functionFailed(String functionExpression) {
+				failed = true;
+			}
+		});
+	}
+
+	/**
+	 * Evaluates the functions of a job, and integrates them and their first
+	 * derivatives if the job has a span to integrate over. All functions are
+	 * registered before any is evaluated, so they can call each other, and
+	 * functions of earlier jobs that this job does not have are removed.
+	 *
+	 * @param job
+	 *            The job
+	 * @return One result per function of the job, in the order of the job.
+	 */
+	public List<FunctionResult> run(Job job) {
+		List<String> functions = job.getFunctions();
+		for (int i = functions.size(); i < registered; i++) {
+			scm.unregisterFunction(id(i));
+		}
+		registered = functions.size();
+
+		boolean[] valid = new boolean[functions.size()];
+		for (int i = 0; i < functions.size(); i++) {
+			valid[i] = scm.registerFunction(functions.get(i), id(i)) != null;
+			if (!valid[i]) {
+				// not left defined as the function of an earlier job
+				scm.unregisterFunction(id(i));
+			}
+		}
+
+		Grid grid = job.createGrid();
+		double[] x = grid.toArray();
+		Transform transform = Transform.forScale(job.isLogarithmic());
+		List<FunctionResult> results = new ArrayList<FunctionResult>();
+		for (int i = 0; i < functions.size(); i++) {
+			String expression = functions.get(i);
+			if (!valid[i]) {
+				results.add(new FunctionResult(id(i), expression,
+						"Invalid Scheme function"));
+				continue;
+			}
+
+			failed = false;
+			double[][] values = scm.evaluateDerivatives(id(i), expression,
+					grid, job.getDerivatives(), transform);
+			if (failed) {
+				results.add(new FunctionResult(id(i), expression,
+						"Cannot be evaluated"));
+				continue;
+			}
+
+			Quadrature.Result[] integrals = null;
+			if (job.isIntegrated()) {
+				integrals = new Quadrature.Result[2];
+				for (int k = 0; k < integrals.length; k++) {
+					integrals[k] = integrate(id(i), k == 1, job);
+				}
+			}
+			results.add(new FunctionResult(id(i), expression, x, values,
+					integrals));
+		}
+		return results;
+	}
+
+	/**
+	 * Integrates a registered function or its derivative with the settings of
+	 * a job.
+	 *
+	 * @return The integral, or null if it could not be calculated.
+	 */
+	private Quadrature.Result integrate(String functionId,
+			boolean derivative, Job job) {
+		if (job.getMethod() == Quadrature.Method.RECTANGLE) {
+			// summed on all cores like in the user interface
+			try {
+				return scm.rectangleIntegrator(functionId, job.getA(),
+						job.getB(), job.getRectangles(), derivative,
+						job.isLogarithmic()).integrate();
+			} catch (Throwable e) {
+				return null;
+			}
+		}
+		return scm.integrate(functionId, job.getA(), job.getB(), derivative,
+				job.isLogarithmic(),
+				Quadrature.create(job.getMethod(), job.getRectangles()),
+				job.getTolerance());
+	}
+
+	/**
+	 * @param index
+	 *            Index of a function of a job
+	 * @return The id the function is registered with.
+	 */
+	public static String id(int index) {
+		return "f" + index;
+	}
+}
@@ -0,0 +1,125 @@
+package dk.iha.plpa.multiparadigm.engine;
+
+import dk.iha.plpa.multiparadigm.Quadrature;
+
+/**
+ * The result of evaluating one function of a Job: the values of the function
+ * and its derivatives over the grid of the job, and the integrals of the
+ * function and its first derivative if the job integrates them.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public final class FunctionResult {
+
+	private final String id;
+	private final String expression;
+	private final double[] x;
+	private final double[][] values;
+	private final Quadrature.Result[] integrals;
+	private final String error;
+
+	/**
+	 * Constructor for a function that was evaluated.
+	 *
+	 * @param id
+	 *            The id the function was registered with
+	 * @param expression
+	 *            String representation of the function
+	 * @param x
+	 *            The x values of the grid
+	 * @param values
+	 *            The values, where the array at index k holds the k-th
+	 *            derivative
+	 * @param integrals
+	 *            The integrals, where index k holds the integral of the k-th
+	 *            derivative, or null if not integrated
+	 */
+	FunctionResult(String id, String expression, double[] x,
+			double[][] values, Quadrature.Result[] integrals) {
+		this.id = id;
+		this.expression = expression;
+		this.x = x;
+		this.values = values;
+		this.integrals = integrals;
+		this.error = null;
+	}
+
+	/**
+	 * Constructor for a function that failed.
+	 *
+	 * @param id
+	 *            The id the function was registered with
+	 * @param expression
+	 *            String representation of the function
+	 * @param error
+	 *            Why the function failed
+	 */
+	FunctionResult(String id, String expression, String error) {
+		this.id = id;
+		this.expression = expression;
+		this.x = new double[0];
+		this.values = new double[0][];
+		this.integrals = null;
+		this.error = error;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @return true if the function was evaluated.
+	 */
+	public boolean isValid() {
+		return error == null;
+	}
+
+	/**
+	 * @return Why the function failed, or null if it was evaluated.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * @return The x values, empty if the function failed.
+	 */
+	public double[] getX() {
+		return x;
+	}
+
+	/**
+	 * @return The highest derivative evaluated, -1 if the function failed.
+	 */
+	public int getOrder() {
+		return values.length - 1;
+	}
+
+	/**
+	 * @param k
+	 *            The derivative, 0 for the function itself
+	 * @return The values of the k-th derivative at the x values.
+	 */
+	public double[] getValues(int k) {
+		return values[k];
+	}
+
+	/**
+	 * @param k
+	 *            The derivative, 0 for the function itself and 1 for its
+	 *            first derivative
+	 * @return The integral of the k-th derivative, or null if it was not
+	 *         integrated or could not be integrated.
+	 */
+	public Quadrature.Result getIntegral(int k) {
+		if (integrals == null || k >= integrals.length) {
+			return null;
+		}
+		return integrals[k];
+	}
+}
@@ -0,0 +1,317 @@
+package dk.iha.plpa.multiparadigm.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import dk.iha.plpa.multiparadigm.Grid;
+import dk.iha.plpa.multiparadigm.Quadrature;
+
+/**
+ * The functions to evaluate by the Engine, with the grid they are evaluated
+ * over and the span they are integrated over. A job can be read from a job
+ * file with one setting per line, like:
+ *
+ * <pre>
+ * # lines starting with # are comments
+ * function = (* x x)
+ * function = (+ (f0 x) 1)
+ * xmin = -5
+ * xmax = 5
+ * datapoints = 1000
+ * spacing = uniform
+ * scale = linear
+ * derivatives = 1
+ * integrate = -1 1
+ * method = gauss_kronrod
+ * rectangles = 1000
+ * tolerance = 1e-6
+ * </pre>
+ *
+ * Every function line adds a function. Function i is registered as f + i,
+ * like in the user interface. All other settings are optional.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public class Job {
+
+	/**
+	 * How the x values of the grid are spread from xmin to xmax.
+	 */
+	public enum Spacing {
+		UNIFORM, LOGARITHMIC, CHEBYSHEV
+	}
+
+	private List<String> functions = new ArrayList<String>();
+
+	private double xmin = -5;
+	private double xmax = 5;
+	private int datapoints = 10;
+	private Spacing spacing = Spacing.UNIFORM;
+	private boolean logarithmic = false;
+	private int derivatives = 0;
+
+	// the span integrated over, not integrated if integrated is false
+	private boolean integrated = false;
+	private double a;
+	private double b;
+	private Quadrature.Method method = Quadrature.Method.GAUSS_KRONROD;
+	private int rectangles = 1000;
+	private double tolerance = Quadrature.DEFAULT_TOLERANCE;
+
+	/**
+	 * Adds a function to evaluate.
+	 *
+	 * @param functionExpression
+	 *            String representation of the function, the body of a
+	 *            lambda of x
+	 */
+	public void addFunction(String functionExpression) {
+		functions.add(functionExpression);
+	}
+
+	/**
+	 * @return The functions to evaluate, function i being registered as f + i.
+	 */
+	public List<String> getFunctions() {
+		return Collections.unmodifiableList(functions);
+	}
+
+	/**
+	 * @return The grid the functions are evaluated over.
+	 */
+	public Grid createGrid() {
+		switch (spacing) {
+		case LOGARITHMIC:
+			return Grid.logarithmic(datapoints, xmin, xmax);
+		case CHEBYSHEV:
+			return Grid.chebyshev(datapoints, xmin, xmax);
+		default:
+			return Grid.uniform(datapoints, xmin, xmax);
+		}
+	}
+
+	/**
+	 * Sets the span the functions and their first derivatives are integrated
+	 * over.
+	 *
+	 * @param a
+	 *            The value we are calculating from
+	 * @param b
+	 *            The value we are calculating to
+	 */
+	public void setIntegration(double a, double b) {
+		this.integrated = true;
+		this.a = a;
+		this.b = b;
+	}
+
+	/**
+	 * Reads a job file.
+	 *
+	 * @param file
+	 *            The job file
+	 * @return The job.
+	 * @throws IOException
+	 *             If the file cannot be read
+	 * @throws IllegalArgumentException
+	 *             If a line of the file is not a valid setting
+	 */
+	public static Job read(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			return read(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads a job in the format of a job file.
+	 *
+	 * @param reader
+	 *            Reader of the job
+	 * @return The job.
+	 * @throws IOException
+	 *             If the job cannot be read
+	 * @throws IllegalArgumentException
+	 *             If a line is not a valid setting
+	 */
+	public static Job read(BufferedReader reader) throws IOException {
+		Job job = new Job();
+		int lineNumber = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int equals = line.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Line " + lineNumber
+						+ ": expected key = value, got " + line);
+			}
+			String key = line.substring(0, equals).trim()
+					.toLowerCase(Locale.ROOT);
+			String value = line.substring(equals + 1).trim();
+			try {
+				job.set(key, value);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Line " + lineNumber + ": "
+						+ e.getMessage(), e);
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * Sets a setting read from a job file.
+	 */
+	private void set(String key, String value) {
+		switch (key) {
+		case "function":
+			addFunction(value);
+			break;
+		case "xmin":
+			xmin = Double.parseDouble(value);
+			break;
+		case "xmax":
+			xmax = Double.parseDouble(value);
+			break;
+		case "datapoints":
+			datapoints = Integer.parseInt(value);
+			break;
+		case "spacing":
+			spacing = Spacing.valueOf(value.toUpperCase(Locale.ROOT));
+			break;
+		case "scale":
+			if (value.equalsIgnoreCase("logarithmic")) {
+				logarithmic = true;
+			} else if (value.equalsIgnoreCase("linear")) {
+				logarithmic = false;
+			} else {
+				throw new IllegalArgumentException("Unknown scale " + value);
+			}
+			break;
+		case "derivatives":
+			derivatives = Integer.parseInt(value);
+			break;
+		case "integrate":
+			String[] span = value.split("\\s+");
+			if (span.length != 2) {
+				throw new IllegalArgumentException(
+						"integrate needs two values, a and b");
+			}
+			setIntegration(Double.parseDouble(span[0]),
+					Double.parseDouble(span[1]));
+			break;
+		case "method":
+			method = Quadrature.Method.valueOf(value.toUpperCase(Locale.ROOT));
+			break;
+		case "rectangles":
+			rectangles = Integer.parseInt(value);
+			break;
+		case "tolerance":
+			tolerance = Double.parseDouble(value);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown setting " + key);
+		}
+	}
+
+	public double getXMin() {
+		return xmin;
+	}
+
+	public void setXMin(double xmin) {
+		this.xmin = xmin;
+	}
+
+	public double getXMax() {
+		return xmax;
+	}
+
+	public void setXMax(double xmax) {
+		this.xmax = xmax;
+	}
+
+	public int getDatapoints() {
+		return datapoints;
+	}
+
+	public void setDatapoints(int datapoints) {
+		this.datapoints = datapoints;
+	}
+
+	public Spacing getSpacing() {
+		return spacing;
+	}
+
+	public void setSpacing(Spacing spacing) {
+		this.spacing = spacing;
+	}
+
+	public boolean isLogarithmic() {
+		return logarithmic;
+	}
+
+	public void setLogarithmic(boolean logarithmic) {
+		this.logarithmic = logarithmic;
+	}
+
+	/**
+	 * @return The highest derivative evaluated, 0 for only the functions.
+	 */
+	public int getDerivatives() {
+		return derivatives;
+	}
+
+	public void setDerivatives(int derivatives) {
+		this.derivatives = derivatives;
+	}
+
+	public boolean isIntegrated() {
+		return integrated;
+	}
+
+	public double getA() {
+		return a;
+	}
+
+	public double getB() {
+		return b;
+	}
+
+	public Quadrature.Method getMethod() {
+		return method;
+	}
+
+	public void setMethod(Quadrature.Method method) {
+		this.method = method;
+	}
+
+	public int getRectangles() {
+		return rectangles;
+	}
+
+	public void setRectangles(int rectangles) {
+		this.rectangles = rectangles;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+}
@@ -0,0 +1,282 @@
+package dk.iha.plpa.multiparadigm.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a file written by SeriesWriter by mapping it into memory, so the
+ * columns are read straight from the file without being copied or parsed.
+ * The format is described in SeriesWriter.
+ *
+ * The mapped columns stay valid after the reader is no longer used, until
+ * they are garbage collected.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public final class SeriesReader {
+
+	private final SeriesWriter.Precision precision;
+	private final boolean logarithmic;
+	private final String sampling;
+	private final String[] ids;
+	private final String[] expressions;
+	private final int[] points;
+	private final int[] columns;
+
+	// the columns of each series, little-endian
+	private final ByteBuffer[] data;
+
+	private SeriesReader(SeriesWriter.Precision precision,
+			boolean logarithmic, String sampling, int series) {
+		this.precision = precision;
+		this.logarithmic = logarithmic;
+		this.sampling = sampling;
+		this.ids = new String[series];
+		this.expressions = new String[series];
+		this.points = new int[series];
+		this.columns = new int[series];
+		this.data = new ByteBuffer[series];
+	}
+
+	/**
+	 * Maps a series file into memory.
+	 *
+	 * @param file
+	 *            The file
+	 * @return The reader of the file.
+	 * @throws IOException
+	 *             If the file cannot be read, or is not a valid series file
+	 */
+	public static SeriesReader map(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			int start = SeriesWriter.MAGIC.length + 4 + 4;
+			if (size < start) {
+				throw new IOException(file + " is not a series file");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					start).order(ByteOrder.LITTLE_ENDIAN);
+			byte[] magic = new byte[SeriesWriter.MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, SeriesWriter.MAGIC)) {
+				throw new IOException(file + " is not a series file");
+			}
+			int version = header.getInt();
+			if (version != SeriesWriter.VERSION) {
+				throw new IOException(file + " has version " + version
+						+ ", only version " + SeriesWriter.VERSION
+						+ " can be read");
+			}
+			int headerSize = header.getInt();
+			if (headerSize < start || headerSize > size) {
+				throw new IOException(file + " has a broken header");
+			}
+
+			header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			header.position(start);
+			try {
+				return read(channel, header, size, file);
+			} catch (BufferUnderflowException | NegativeArraySizeException e) {
+				throw new IOException(file + " has a broken header", e);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the header after the size of the header, and maps the columns.
+	 */
+	private static SeriesReader read(FileChannel channel, ByteBuffer header,
+			long size, File file) throws IOException {
+		int bytes = header.getInt();
+		SeriesWriter.Precision precision;
+		if (bytes == SeriesWriter.Precision.DOUBLE.getBytes()) {
+			precision = SeriesWriter.Precision.DOUBLE;
+		} else if (bytes == SeriesWriter.Precision.FLOAT.getBytes()) {
+			precision = SeriesWriter.Precision.FLOAT;
+		} else {
+			throw new IOException(file + " has values of " + bytes + " bytes");
+		}
+		boolean logarithmic = header.getInt() != 0;
+		String sampling = getString(header);
+		int series = header.getInt();
+		if (series < 0) {
+			throw new IOException(file + " has a broken header");
+		}
+
+		SeriesReader reader = new SeriesReader(precision, logarithmic,
+				sampling, series);
+		for (int i = 0; i < series; i++) {
+			reader.ids[i] = getString(header);
+			reader.expressions[i] = getString(header);
+			reader.points[i] = header.getInt();
+			reader.columns[i] = header.getInt();
+			long offset = header.getLong();
+			long length = (long) reader.points[i] * reader.columns[i] * bytes;
+			if (reader.points[i] < 0 || reader.columns[i] < 0 || offset < 0
+					|| length > Integer.MAX_VALUE || offset + length > size) {
+				throw new IOException(file + " is truncated or broken at "
+						+ "series " + reader.ids[i]);
+			}
+			reader.data[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					offset, length);
+		}
+		return reader;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public SeriesWriter.Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return true if the values are on the logarithmic scale.
+	 */
+	public boolean isLogarithmic() {
+		return logarithmic;
+	}
+
+	/**
+	 * @return How the x values were chosen, like the grid.
+	 */
+	public String getSampling() {
+		return sampling;
+	}
+
+	/**
+	 * @return The number of series in the file.
+	 */
+	public int getSeriesCount() {
+		return ids.length;
+	}
+
+	/**
+	 * @param id
+	 *            The id of a function, like f0
+	 * @return The index of the series of the function, or -1 if there is
+	 *         none.
+	 */
+	public int indexOf(String id) {
+		return Arrays.asList(ids).indexOf(id);
+	}
+
+	public String getId(int series) {
+		return ids[series];
+	}
+
+	public String getExpression(int series) {
+		return expressions[series];
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @return The number of values in each column of the series.
+	 */
+	public int getPoints(int series) {
+		return points[series];
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @return The number of columns of the series: x, the function and each
+	 *         derivative.
+	 */
+	public int getColumns(int series) {
+		return columns[series];
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @param column
+	 *            0 for x, 1 for the function and k + 1 for the k-th
+	 *            derivative
+	 * @return The mapped column of a file of doubles.
+	 * @throws IllegalStateException
+	 *             If the file holds floats
+	 */
+	public DoubleBuffer doubles(int series, int column) {
+		if (precision != SeriesWriter.Precision.DOUBLE) {
+			throw new IllegalStateException("The file holds " + precision
+					+ " values");
+		}
+		return column(series, column).asDoubleBuffer();
+	}
+
+	/**
+	 * @param series
+	 *            Index of the series
+	 * @param column
+	 *            0 for x, 1 for the function and k + 1 for the k-th
+	 *            derivative
+	 * @return The mapped column of a file of floats.
+	 * @throws IllegalStateException
+	 *             If the file holds doubles
+	 */
+	public FloatBuffer floats(int series, int column) {
+		if (precision != SeriesWriter.Precision.FLOAT) {
+			throw new IllegalStateException("The file holds " + precision
+					+ " values");
+		}
+		return column(series, column).asFloatBuffer();
+	}
+
+	/**
+	 * Copies a column into an array, whatever the precision of the file.
+	 *
+	 * @param series
+	 *            Index of the series
+	 * @param column
+	 *            0 for x, 1 for the function and k + 1 for the k-th
+	 *            derivative
+	 * @return The values of the column.
+	 */
+	public double[] toArray(int series, int column) {
+		double[] values = new double[points[series]];
+		if (precision == SeriesWriter.Precision.DOUBLE) {
+			doubles(series, column).get(values);
+		} else {
+			FloatBuffer floats = floats(series, column);
+			for (int i = 0; i < values.length; i++) {
+				values[i] = floats.get(i);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return The bytes of a column, little-endian.
+	 */
+	private ByteBuffer column(int series, int column) {
+		if (column < 0 || column >= columns[series]) {
+			throw new IndexOutOfBoundsException("Series " + ids[series]
+					+ " has no column " + column);
+		}
+		int length = points[series] * precision.getBytes();
+		ByteBuffer bytes = data[series].duplicate();
+		bytes.position(column * length);
+		bytes.limit(column * length + length);
+		return bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,271 @@
+package dk.iha.plpa.multiparadigm.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes sampled series to a compact binary file with one column of values
+ * per series, which SeriesReader maps back into memory. Loading a series is
+ * then as fast as the disk, where parsing the same values from CSV takes
+ * seconds for millions of points.
+ *
+ * All numbers are little-endian. A file starts with a header:
+ *
+ * <pre>
+ * magic        8 bytes   MPSERIES
+ * version      int32     1
+ * header size  int32     bytes from the start of the file to the first column
+ * precision    int32     4 for float columns, 8 for double columns
+ * scale        int32     0 for the linear scale, 1 for the logarithmic scale
+ * sampling     string    how the x values were chosen, like uniform[-5.0, 5.0; 10]
+ * series       int32     number of series
+ * for each series:
+ *   id         string    like f0
+ *   expression string    the Scheme function
+ *   points     int32     number of values in each column of the series
+ *   columns    int32     x, the function and each derivative
+ *   offset     int64     bytes from the start of the file to the first column
+ * </pre>
+ *
+ * A string is an int32 length followed by that many bytes of UTF-8. The
+ * header is padded to a multiple of 8 bytes, and the columns of each series
+ * follow it one after the other.
+ *
+ * @author Tommy, Mikkel and Olafur
+ *
+ */
+public class SeriesWriter {
+
+	/**
+	 * The type the values are written as.
+	 */
+	public enum Precision {
+		FLOAT(4), DOUBLE(8);
+
+		private final int bytes;
+
+		private Precision(int bytes) {
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return The bytes per value.
+		 */
+		public int getBytes() {
+			return bytes;
+		}
+	}
+
+	static final byte[] MAGIC = "MPSERIES".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+
+	// bytes of the direct buffer the columns are written through
+	private static final int BUFFER_BYTES = 1 << 20;
+
+	private final String sampling;
+	private final boolean logarithmic;
+	private final List<Series> series = new ArrayList<Series>();
+
+	/**
+	 * A function and its derivatives sampled at the same x values.
+	 */
+	private static final class Series {
+		final String id;
+		final String expression;
+		final double[][] columns;
+
+		Series(String id, String expression, double[][] columns) {
+			this.id = id;
+			this.expression = expression;
+			this.columns = columns;
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param sampling
+	 *            How the x values were chosen, like the grid
+	 * @param logarithmic
+	 *            If the values are on the logarithmic scale
+	 */
+	public SeriesWriter(String sampling, boolean logarithmic) {
+		this.sampling = sampling;
+		this.logarithmic = logarithmic;
+	}
+
+	/**
+	 * Creates a writer of the functions of a job that were evaluated.
+	 *
+	 * @param job
+	 *            The job
+	 * @param results
+	 *            The results of running the job
+	 * @return The writer.
+	 */
+	public static SeriesWriter of(Job job, List<FunctionResult> results) {
+		SeriesWriter writer = new SeriesWriter(job.createGrid().toString(),
+				job.isLogarithmic());
+		for (FunctionResult result : results) {
+			if (result.isValid()) {
+				double[][] values = new double[result.getOrder() + 1][];
+				for (int k = 0; k < values.length; k++) {
+					values[k] = result.getValues(k);
+				}
+				writer.add(result.getId(), result.getExpression(),
+						result.getX(), values);
+			}
+		}
+		return writer;
+	}
+
+	/**
+	 * Adds a series. The arrays are not copied.
+	 *
+	 * @param id
+	 *            The id of the function
+	 * @param expression
+	 *            String representation of the function
+	 * @param x
+	 *            The x values
+	 * @param values
+	 *            The values at the x values, where the array at index k holds
+	 *            the k-th derivative
+	 */
+	public void add(String id, String expression, double[] x, double[][] values) {
+		double[][] columns = new double[values.length + 1][];
+		columns[0] = x;
+		for (int k = 0; k < values.length; k++) {
+			if (values[k].length != x.length) {
+				throw new IllegalArgumentException("Series " + id + " has "
+						+ x.length + " x values but " + values[k].length
+						+ " values of derivative " + k);
+			}
+			columns[k + 1] = values[k];
+		}
+		series.add(new Series(id, expression, columns));
+	}
+
+	/**
+	 * @return true if no series has been added.
+	 */
+	public boolean isEmpty() {
+		return series.isEmpty();
+	}
+
+	/**
+	 * Writes the series to a file, replacing the file if it exists.
+	 *
+	 * @param file
+	 *            The file
+	 * @param precision
+	 *            The type the values are written as
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public void write(File file, Precision precision) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer header = header(precision);
+			writeFully(channel, header);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(
+					ByteOrder.LITTLE_ENDIAN);
+			for (Series s : series) {
+				for (double[] column : s.columns) {
+					writeColumn(channel, buffer, column, precision);
+				}
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return The header, ready to be written.
+	 */
+	private ByteBuffer header(Precision precision) {
+		byte[] samplingBytes = bytes(sampling);
+		byte[][] idBytes = new byte[series.size()][];
+		byte[][] expressionBytes = new byte[series.size()][];
+		int size = MAGIC.length + 4 * 4 + 4 + samplingBytes.length + 4;
+		for (int i = 0; i < series.size(); i++) {
+			idBytes[i] = bytes(series.get(i).id);
+			expressionBytes[i] = bytes(series.get(i).expression);
+			size += 4 + idBytes[i].length + 4 + expressionBytes[i].length + 4
+					+ 4 + 8;
+		}
+		size = (size + 7) & ~7;
+
+		ByteBuffer header = ByteBuffer.allocateDirect(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(size);
+		header.putInt(precision.bytes);
+		header.putInt(logarithmic ? 1 : 0);
+		putString(header, samplingBytes);
+		header.putInt(series.size());
+		long offset = size;
+		for (int i = 0; i < series.size(); i++) {
+			Series s = series.get(i);
+			int points = s.columns[0].length;
+			putString(header, idBytes[i]);
+			putString(header, expressionBytes[i]);
+			header.putInt(points);
+			header.putInt(s.columns.length);
+			header.putLong(offset);
+			offset += (long) points * s.columns.length * precision.bytes;
+		}
+		header.clear();
+		return header;
+	}
+
+	/**
+	 * Writes a column through the direct buffer, a buffer full at a time.
+	 */
+	private static void writeColumn(FileChannel channel, ByteBuffer buffer,
+			double[] values, Precision precision) throws IOException {
+		int perBuffer = buffer.capacity() / precision.bytes;
+		for (int from = 0; from < values.length; from += perBuffer) {
+			int count = Math.min(perBuffer, values.length - from);
+			buffer.clear();
+			if (precision == Precision.DOUBLE) {
+				buffer.asDoubleBuffer().put(values, from, count);
+			} else {
+				FloatBuffer floats = buffer.asFloatBuffer();
+				for (int i = from; i < from + count; i++) {
+					floats.put((float) values[i]);
+				}
+			}
+			buffer.limit(count * precision.bytes);
+			writeFully(channel, buffer);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] bytes) {
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+}